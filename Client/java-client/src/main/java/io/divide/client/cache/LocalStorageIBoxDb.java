@@ -22,11 +22,17 @@ import iBoxDB.LocalServer.DB;
 import iBoxDB.LocalServer.E.CommitExpection;
 import iBoxDB.LocalServer.IFunction;
 import io.divide.client.Config;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.Cursors;
 import io.divide.shared.server.DAO;
 import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Aggregation;
 import io.divide.shared.transitory.query.Clause;
+import io.divide.shared.transitory.query.KeyLookup;
 import io.divide.shared.transitory.query.OPERAND;
+import io.divide.shared.transitory.query.Projection;
 import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.Sorting;
 import io.divide.shared.util.ObjectUtils;
 
 import java.io.File;
@@ -122,6 +128,14 @@ public class LocalStorageIBoxDb<T1 extends TransientObject,T2 extends TransientO
 
     @Override
     public <B extends T2> List<B> query(Query query) {
+        if(Aggregation.isAggregate(query)){
+            List<B> objects = query(Aggregation.source(query));
+            try{
+                return (List) Aggregation.fold(query, objects.iterator());
+            } catch (IllegalArgumentException e){
+                throw new DAOException(400, e.getMessage());
+            }
+        }
 
         Class<B> type = null;
         try {
@@ -130,6 +144,16 @@ public class LocalStorageIBoxDb<T1 extends TransientObject,T2 extends TransientO
             e.printStackTrace();
         }
 
+        // selects by object key probe the Key/Table index instead of testing every object of the table
+        List<String> keys = KeyLookup.keysOf(query);
+        if(keys != null){
+            List<B> objects = new ArrayList<B>(keys.size());
+            for(Wrapper w : internalGet(query.getFrom(), keys.toArray(new String[keys.size()]))){
+                objects.add(w.toObject(type));
+            }
+            return KeyLookup.finish(query, objects);
+        }
+
         String table = query.getFrom();
         Map<Integer,Clause> where = query.getWhere();
 
@@ -154,7 +178,13 @@ public class LocalStorageIBoxDb<T1 extends TransientObject,T2 extends TransientO
                 }
                 else
                     sb.append(" [").append(c.getBefore()).append("]");
-                args.add(new QueryArray(c.getOperand(),c.getAfter()));
+                // meta data is stored as strings
+                boolean meta = c.getBefore().startsWith(TransientObject.META_DATA + ".");
+                if(OPERAND.from(c.getOperand()).isMultiValued()){
+                    args.add(new QueryArray(c.getOperand(), meta ? new ArrayList<Object>(c.getAfterValues()) : c.getValues()));
+                } else {
+                    args.add(new QueryArray(c.getOperand(), meta ? c.getAfter() : c.getValue()));
+                }
             }
 
 //            for(Clause c : where.values()){
@@ -171,7 +201,9 @@ public class LocalStorageIBoxDb<T1 extends TransientObject,T2 extends TransientO
 
             sb.append(')');
         }
-        if(query.getLimit() != null){
+        // iBox can not order on the flattened wrapper fields, ordered queries keep the best limit objects in a heap
+        boolean ordered = !query.getOrderBy().isEmpty();
+        if(query.getLimit() != null && !ordered){
             sb.append(" limit " + "0," + query.getLimit());
         }
 
@@ -180,12 +212,47 @@ public class LocalStorageIBoxDb<T1 extends TransientObject,T2 extends TransientO
 
         Iterable<Wrapper> list = box.select(Wrapper.class,sb.toString(),args.toArray());
 //        System.out.println("Found: " + list);
+        final List<String> fields = Projection.fieldsOf(query);
+        if(ordered){
+            final Iterator<Wrapper> wrappers = list.iterator();
+            final Class<B> objectType = type;
+            List<B> sorted = Sorting.sort(new Iterator<B>() {
+                @Override
+                public boolean hasNext() {
+                    return wrappers.hasNext();
+                }
+
+                @Override
+                public B next() {
+                    return wrappers.next().toObject(objectType);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            }, query.getOrderBy(), query.getLimit());
+            return project(sorted, fields);
+        }
+
         List<B> bList = new ArrayList<B>();
         for(Wrapper w : list){
 //            System.out.println(w);
             bList.add(w.toObject(type));
         }
-        return bList;
+        return project(bList, fields);
+    }
+
+    private static <B extends TransientObject> List<B> project(List<B> objects, List<String> fields){
+        if(!fields.isEmpty()){
+            for(B b : objects) Projection.project(b, fields);
+        }
+        return objects;
+    }
+
+    @Override
+    public <B extends T2> Cursor<B> stream(Query query) throws DAOException {
+        return Cursors.<T2,B>query(this, query);
     }
 
     @Override
@@ -207,18 +274,13 @@ public class LocalStorageIBoxDb<T1 extends TransientObject,T2 extends TransientO
         return list;
     }
 
+    // one probe of the Key/Table index per key, rather than a single select over a chain of Key==? terms
     private Iterable<Wrapper> internalGet(String type, String... keys){
-        StringBuilder query = new StringBuilder();
-        query.append("from Wrapper where Table==? && (");
-        List<String> args = new ArrayList<String>(); args.add(type);
-        for(int x=0;x<keys.length;x++){
-            args.add(keys[x]);
-            query.append("Key==?");
-            if(x<keys.length - 1) query.append(" || ");
+        List<Wrapper> x = new ArrayList<Wrapper>(keys.length);
+        for(String key : new LinkedHashSet<String>(Arrays.asList(keys))){
+            Wrapper w = iBoxUtils.GetFrist(box.select(Wrapper.class, "from Wrapper where Key==? && Table==?", key, type));
+            if(w != null) x.add(w);
         }
-        query.append(')');
-
-        Iterable<Wrapper> x = box.select(Wrapper.class, query.toString(), args.toArray());
         return x;
     }
 
@@ -235,12 +297,25 @@ public class LocalStorageIBoxDb<T1 extends TransientObject,T2 extends TransientO
 
     public static class QueryArray implements IFunction {
         private OPERAND operand;
-        private String match;
+        private Object match;
 
-        public QueryArray(String operand, String match) {
+        private Set<Object> members; // IN
+
+        public QueryArray(String operand, Object match) {
             this.operand = OPERAND.from(operand);
 //            System.out.println("Operand: " + operand);
             this.match = match;
+            if(OPERAND.IN.equals(this.operand)){
+                members = new HashSet<Object>();
+                for(Object o : (Collection<?>) match) members.add(memberOf(o));
+            }
+        }
+
+        // strings match case insensitive and numbers by value, whether they were read back as long or double
+        private static Object memberOf(Object value){
+            if(value instanceof String) return ((String) value).toLowerCase();
+            if(value instanceof Number) return ((Number) value).doubleValue();
+            return value;
         }
 
         public Object execute(int argCount, Object[] args) {
@@ -260,19 +335,38 @@ public class LocalStorageIBoxDb<T1 extends TransientObject,T2 extends TransientO
         }
 
         private boolean compare(Object one){
-            int result = match.compareToIgnoreCase(String.valueOf(one));
+            if(members != null){
+                return one != null && members.contains(memberOf(one));
+            }
+            if(OPERAND.BETWEEN.equals(operand)){
+                List<?> bounds = (List<?>) match;
+                return compare(one, bounds.get(0)) >= 0 && compare(one, bounds.get(1)) <= 0;
+            }
+            int result = compare(one, match);
 //            System.out.println(one + " " + operand + " " + match + ": " + result);
             switch (operand){
                 case CONTAINS:
                 case EQ: return result == 0;
-                case GREATER_THAN: return result < 0;
-                case GREATER_THAN_EQ: return (result < 0 || result == 0);
-                case LESS_THAN: return result > 0;
-                case LESS_THAN_EQ: return (result > 0 || result == 0);
+                case NOT_EQ: return result != 0;
+                case GREATER_THAN: return result > 0;
+                case GREATER_THAN_EQ: return result >= 0;
+                case LESS_THAN: return result < 0;
+                case LESS_THAN_EQ: return result <= 0;
             }
             return false;
         }
 
+        private static int compare(Object one, Object match){
+            // strings keep comparing case insensitive, typed values compare by value so 10 > 9
+            int result;
+            if(match instanceof String){
+                result = one == null ? -1 : String.valueOf(one).compareToIgnoreCase((String) match);
+            } else {
+                result = Sorting.compareValues(one, match);
+            }
+            return result;
+        }
+
 //        public Object execute(int argCount, Object[] args) {
 //            return recursiveCheck(args,match);
 //        }
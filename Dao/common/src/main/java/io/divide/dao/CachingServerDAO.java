@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao;
+
+import io.divide.shared.server.AsyncDAO;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.DeferredFuture;
+import io.divide.shared.server.SequenceAllocator;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import io.divide.shared.util.ConcurrentLruCache;
+import io.divide.shared.util.ReflectionUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.security.KeyPair;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Read through cache of single objects in front of any {@link ServerDAO}, keyed by object type and object key.
+ * {@link #get(String, String...)} answers cached keys from memory and loads only the missing ones, saves write the
+ * new version through and deletes evict it. Entries are bounded by count, by an estimate of their size and by a time
+ * to live, which also bounds how long changes made around this cache, for instance by another server, stay hidden.
+ * <p>
+ * Objects are copied on the way in and out of the cache, callers may modify what they get back. Queries are not
+ * cached, a DELETE query empties the cache as the deleted keys are unknown.
+ * <p>
+ * Sequences and async calls are forwarded to the backend when it supports them, see {@link #supports(Class)}. Async
+ * writes evict their keys when they are issued and once they completed.
+ */
+public class CachingServerDAO implements ServerDAO, ThreadSafeDAO, DelegatingDAO, SequenceAllocator,
+        AsyncDAO<TransientObject,TransientObject>, Closeable {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+    public static final long DEFAULT_TTL_SECONDS = 300;
+
+    private static final int STRIPES = 64;
+
+    private final ServerDAO serverDao;
+    private final ConcurrentLruCache<String,TransientObject> cache;
+
+    // bumped on every write of a key in the stripe, a load only fills the cache if its stripe did not change meanwhile.
+    // Generation checks and cache writes of a stripe happen under its lock.
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final Object[] locks = new Object[STRIPES];
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    public CachingServerDAO(ServerDAO serverDao){
+        this(serverDao, DEFAULT_MAX_SIZE, DEFAULT_MAX_WEIGHT, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param serverDao backend the objects are read from and written to.
+     * @param maxSize maximum number of cached objects.
+     * @param maxWeight maximum estimated size in bytes of all cached objects.
+     * @param ttl time a cached object is served after it was loaded or written, 0 or less to never expire.
+     * @param unit unit of ttl.
+     */
+    public CachingServerDAO(ServerDAO serverDao, int maxSize, long maxWeight, long ttl, TimeUnit unit){
+        this.serverDao = serverDao;
+        for(int x=0;x<STRIPES;x++) locks[x] = new Object();
+        this.cache = new ConcurrentLruCache<String, TransientObject>(maxSize, maxWeight, new ConcurrentLruCache.Weigher<TransientObject>() {
+            @Override
+            public long weigh(TransientObject value) {
+                return weightOf(value);
+            }
+        }, ttl, unit, ConcurrentLruCache.DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    @Override
+    public <O extends TransientObject> Collection<O> get(String type, String... keys) throws DAOException {
+        Load<O> load = new Load<O>(type, keys);
+        if(load.missing.isEmpty()) return load.found;
+
+        long start = System.nanoTime();
+        Collection<O> loaded = serverDao.get(type, load.missing.toArray(new String[load.missing.size()]));
+        loadNanos.addAndGet(System.nanoTime() - start);
+        loads.incrementAndGet();
+        return load.fill(loaded);
+    }
+
+    @Override
+    public void save(TransientObject... objects) throws DAOException {
+        invalidate(objects);
+        serverDao.save(objects);
+        saved(objects);
+    }
+
+    private void saved(TransientObject... objects){
+        for(TransientObject o : objects){
+            String key = cacheKey(o.getObjectType(), o.getObjectKey());
+            int stripe = stripeOf(key);
+            TransientObject copy = copy(o);
+            synchronized (locks[stripe]){
+                generations.incrementAndGet(stripe); // loads which started before the save must not overwrite it
+                cache.put(key, copy);
+            }
+        }
+    }
+
+    @Override
+    public void delete(TransientObject... objects) throws DAOException {
+        try{
+            serverDao.delete(objects);
+        } finally {
+            invalidate(objects);
+        }
+    }
+
+    @Override
+    public boolean exists(TransientObject... objects) {
+        for(TransientObject o : objects){
+            if(cache.get(cacheKey(o.getObjectType(), o.getObjectKey())) == null){
+                return serverDao.exists(objects);
+            }
+        }
+        return objects.length > 0;
+    }
+
+    @Override
+    public <O extends TransientObject> List<O> query(Query query) throws DAOException {
+        if(QueryBuilder.QueryAction.DELETE.equals(query.getAction())){
+            try{
+                return serverDao.query(query);
+            } finally {
+                invalidateAll();
+            }
+        }
+        return serverDao.query(query);
+    }
+
+    @Override
+    public <O extends TransientObject> Cursor<O> stream(Query query) throws DAOException {
+        return serverDao.stream(query);
+    }
+
+    @Override
+    public int count(String objectType) {
+        return serverDao.count(objectType);
+    }
+
+    @Override
+    public KeyPair keys(KeyPair keys) {
+        return serverDao.keys(keys);
+    }
+
+    @Override
+    public long allocate(String sequence, int size, long initialValue) throws DAOException {
+        return backend(SequenceAllocator.class).allocate(sequence, size, initialValue);
+    }
+
+    @Override
+    public <O extends TransientObject> Future<Collection<O>> getAsync(String type, String... keys) throws DAOException {
+        final Load<O> load = new Load<O>(type, keys);
+        if(load.missing.isEmpty()) return DeferredFuture.<Collection<O>>of(load.found);
+
+        final long start = System.nanoTime();
+        final Future<Collection<O>> pending = asyncBackend().getAsync(type, load.missing.toArray(new String[load.missing.size()]));
+        return new DeferredFuture<Collection<O>>() {
+            @Override
+            protected Collection<O> complete() throws Exception {
+                Collection<O> loaded = unwrap(pending);
+                loadNanos.addAndGet(System.nanoTime() - start);
+                loads.incrementAndGet();
+                return load.fill(loaded);
+            }
+        };
+    }
+
+    @Override
+    public Future<Void> saveAsync(TransientObject... objects) throws DAOException {
+        final TransientObject[] copies = new TransientObject[objects.length];
+        for(int x=0;x<objects.length;x++) copies[x] = copy(objects[x]);
+        invalidate(objects);
+        final Future<Void> pending = asyncBackend().saveAsync(objects);
+        return new DeferredFuture<Void>() {
+            @Override
+            protected Void complete() throws Exception {
+                try{
+                    unwrap(pending);
+                } catch (Exception e){
+                    invalidate(copies);
+                    throw e;
+                }
+                saved(copies);
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public Future<Void> deleteAsync(final TransientObject... objects) throws DAOException {
+        invalidate(objects);
+        final Future<Void> pending = asyncBackend().deleteAsync(objects);
+        return new DeferredFuture<Void>() {
+            @Override
+            protected Void complete() throws Exception {
+                try{
+                    return unwrap(pending);
+                } finally {
+                    invalidate(objects);
+                }
+            }
+        };
+    }
+
+    @Override
+    public <O extends TransientObject> Future<List<O>> queryAsync(Query query) throws DAOException {
+        if(!QueryBuilder.QueryAction.DELETE.equals(query.getAction())) return asyncBackend().queryAsync(query);
+
+        invalidateAll();
+        final Future<List<O>> pending = asyncBackend().queryAsync(query);
+        return new DeferredFuture<List<O>>() {
+            @Override
+            protected List<O> complete() throws Exception {
+                try{
+                    return unwrap(pending);
+                } finally {
+                    invalidateAll();
+                }
+            }
+        };
+    }
+
+    @Override
+    public Future<Integer> countAsync(String objectType) throws DAOException {
+        return asyncBackend().countAsync(objectType);
+    }
+
+    @Override
+    public boolean supports(Class<?> capability){
+        return capability.isInstance(serverDao) &&
+                (!(serverDao instanceof DelegatingDAO) || ((DelegatingDAO) serverDao).supports(capability));
+    }
+
+    /**
+     * Closes the backend if it is {@link Closeable}.
+     */
+    @Override
+    public void close() throws IOException {
+        invalidateAll();
+        if(serverDao instanceof Closeable) ((Closeable) serverDao).close();
+    }
+
+    // the cache itself is, calls reach the backend from as many threads as call this dao
+    @Override
+    public boolean isThreadSafe(){
+        return serverDao instanceof ThreadSafeDAO && ((ThreadSafeDAO) serverDao).isThreadSafe();
+    }
+
+    public void invalidateAll(){
+        for(int x=0;x<STRIPES;x++){
+            synchronized (locks[x]){
+                generations.incrementAndGet(x);
+            }
+        }
+        cache.clear();
+    }
+
+    public int size(){
+        return cache.size();
+    }
+
+    /**
+     * @return estimated size in bytes of the cached objects.
+     */
+    public long weight(){
+        return cache.weight();
+    }
+
+    public double hitRatio(){
+        return cache.hitRatio();
+    }
+
+    public long hitCount(){
+        return cache.hitCount();
+    }
+
+    public long missCount(){
+        return cache.missCount();
+    }
+
+    public long evictionCount(){
+        return cache.evictionCount();
+    }
+
+    /**
+     * @return number of backend gets made for keys which were not cached.
+     */
+    public long loadCount(){
+        return loads.get();
+    }
+
+    /**
+     * @return mean time in milliseconds of a backend get, 0 before the first one.
+     */
+    public double averageLoadMillis(){
+        long count = loads.get();
+        return (count == 0) ? 0 : loadNanos.get() / (count * 1000000d);
+    }
+
+    private <C> C backend(Class<C> capability){
+        if(!supports(capability)){
+            throw new DAOException(501, serverDao.getClass().getSimpleName() + " is not a " + capability.getSimpleName());
+        }
+        return capability.cast(serverDao);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AsyncDAO<TransientObject,TransientObject> asyncBackend(){
+        return backend(AsyncDAO.class);
+    }
+
+    private static <T> T unwrap(Future<T> future) throws Exception {
+        try{
+            return future.get();
+        } catch (ExecutionException e){
+            if(e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Cached objects of a get, and the generations of the missing keys' stripes before they are loaded.
+     */
+    private class Load<O extends TransientObject> {
+        final String type;
+        final List<O> found;
+        final List<String> missing = new ArrayList<String>();
+        final Map<String,Long> generationOf = new HashMap<String, Long>();
+
+        Load(String type, String... keys){
+            this.type = type;
+            this.found = new ArrayList<O>(keys.length);
+            for(String key : new LinkedHashSet<String>(Arrays.asList(keys))){
+                TransientObject cached = cache.get(cacheKey(type, key));
+                if(cached != null){
+                    found.add((O) copy(cached));
+                } else {
+                    missing.add(key);
+                    generationOf.put(key, generations.get(stripeOf(cacheKey(type, key))));
+                }
+            }
+        }
+
+        // caches what was loaded unless its stripe was written meanwhile
+        List<O> fill(Collection<O> loaded){
+            for(O o : loaded){
+                String key = cacheKey(type, o.getObjectKey());
+                Long generation = generationOf.get(o.getObjectKey());
+                int stripe = stripeOf(key);
+                if(generation != null){
+                    TransientObject copy = copy(o);
+                    synchronized (locks[stripe]){
+                        if(generations.get(stripe) == generation) cache.put(key, copy);
+                    }
+                }
+                found.add(o);
+            }
+            return found;
+        }
+    }
+
+    private void invalidate(TransientObject... objects){
+        for(TransientObject o : objects){
+            String key = cacheKey(o.getObjectType(), o.getObjectKey());
+            int stripe = stripeOf(key);
+            synchronized (locks[stripe]){
+                generations.incrementAndGet(stripe);
+                cache.remove(key);
+            }
+        }
+    }
+
+    private static String cacheKey(String type, String key){
+        return type + '|' + key;
+    }
+
+    private static int stripeOf(String cacheKey){
+        int h = cacheKey.hashCode();
+        h ^= (h >>> 16);
+        return h & (STRIPES - 1);
+    }
+
+    /**
+     * @return a copy of o of the same class whose maps, lists and arrays are not shared with o.
+     */
+    public static TransientObject copy(TransientObject o){
+        try {
+            Constructor<? extends TransientObject> constructor = o.getClass().getDeclaredConstructor();
+            constructor.setAccessible(true);
+            TransientObject copy = constructor.newInstance();
+            ReflectionUtils.setObjectField(copy, TransientObject.USER_DATA, deepCopy(o.getUserData()));
+            ReflectionUtils.setObjectField(copy, TransientObject.META_DATA, deepCopy(o.getMetaData()));
+            return copy;
+        } catch (Exception e) {
+            throw new DAOException(e);
+        }
+    }
+
+    private static <T> T deepCopy(T value){
+        if(value instanceof Map){
+            Map<Object,Object> map = new LinkedHashMap<Object, Object>();
+            for(Map.Entry<?,?> e : ((Map<?,?>) value).entrySet()){
+                map.put(e.getKey(), deepCopy(e.getValue()));
+            }
+            return (T) map;
+        }
+        if(value instanceof Collection){
+            List<Object> list = new ArrayList<Object>(((Collection<?>) value).size());
+            for(Object o : (Collection<?>) value){
+                list.add(deepCopy(o));
+            }
+            return (T) list;
+        }
+        if(value instanceof Object[]){
+            Object[] array = ((Object[]) value).clone();
+            for(int x=0;x<array.length;x++){
+                array[x] = deepCopy(array[x]);
+            }
+            return (T) array;
+        }
+        return value;
+    }
+
+    /**
+     * @return rough size in bytes of the data of o, strings count two bytes per character.
+     */
+    static long weightOf(TransientObject o){
+        return 64 + weightOf(o.getUserData()) + weightOf(o.getMetaData());
+    }
+
+    private static long weightOf(Object value){
+        if(value == null) return 8;
+        if(value instanceof String) return 40 + 2L * ((String) value).length();
+        if(value instanceof Map){
+            long weight = 48;
+            for(Map.Entry<?,?> e : ((Map<?,?>) value).entrySet()){
+                weight += 32 + weightOf(e.getKey()) + weightOf(e.getValue());
+            }
+            return weight;
+        }
+        if(value instanceof Collection){
+            long weight = 40;
+            for(Object o : (Collection<?>) value) weight += 8 + weightOf(o);
+            return weight;
+        }
+        if(value instanceof Object[]){
+            long weight = 16;
+            for(Object o : (Object[]) value) weight += 8 + weightOf(o);
+            return weight;
+        }
+        return 16;
+    }
+}
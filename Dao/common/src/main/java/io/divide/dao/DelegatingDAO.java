@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.divide.dao;
+
+/**
+ * Implemented by a {@link ServerDAO} wrapping another one. The wrapper implements optional interfaces such as
+ * {@link io.divide.shared.server.SequenceAllocator} and {@link io.divide.shared.server.AsyncDAO} by forwarding to the
+ * dao it wraps, so whether it can serve them depends on that dao. Callers check {@link #supports(Class)} before using
+ * them, and close the wrapper, when it is {@link java.io.Closeable}, to close the whole chain.
+ */
+public interface DelegatingDAO {
+
+    /**
+     * @return true if the wrapped dao, and every dao it wraps in turn, implements capability.
+     */
+    boolean supports(Class<?> capability);
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao;
+
+import io.divide.shared.server.AsyncDAO;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.DeferredFuture;
+import io.divide.shared.server.SequenceAllocator;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Write behind buffer in front of any {@link ServerDAO}. Saves are queued per object type and key, a save of a queued
+ * key replaces the queued version, and the queue is written to the backend in batches once it holds maxBatchSize
+ * objects or flushDelay after the last flush, whichever comes first.
+ * <p>
+ * Saves of {@link Durability#ACK_AFTER_FLUSH} types do not wait for the timer, the first one writes the queue right
+ * away and saves arriving while that write runs are written together by the next one. They add no delay of their own
+ * but only coalesce and batch under contention, a lone caller gets one backend write per save as without the buffer.
+ * {@link Durability#FIRE_AND_FORGET} types get the full batching in exchange for losing what is queued if a flush fails
+ * or the process dies.
+ * <p>
+ * {@link #get(String, String...)} and {@link #exists(TransientObject...)} answer queued keys from the queue, queries
+ * and counts flush the queue first, so callers always see their own writes. Deletes drop queued saves of their keys and
+ * go straight to the backend, after any flush already running.
+ * <p>
+ * How long a save waits depends on the {@link Durability} of its object type. The queue is bounded by maxPending, a
+ * save finding it full flushes it itself. {@link #shutdown()} writes out whatever is still queued.
+ * <p>
+ * Sequences and async calls are forwarded to the backend when it supports them, see {@link #supports(Class)}. Async
+ * saves are queued like saves and async deletes run on the flush thread, after the flushes before them.
+ */
+public class WriteBehindServerDAO implements ServerDAO, ThreadSafeDAO, DelegatingDAO, SequenceAllocator,
+        AsyncDAO<TransientObject,TransientObject>, Closeable {
+
+    public enum Durability {
+        /** save returns once the object is queued, a failed flush is logged and its objects are lost. */
+        FIRE_AND_FORGET,
+        /** save returns once the batch holding the object was written and throws if writing it failed. The batch is
+         * written right away, together with whatever other saves queued meanwhile. */
+        ACK_AFTER_FLUSH
+    }
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    public static final int DEFAULT_MAX_PENDING = 10000;
+    public static final long DEFAULT_FLUSH_MILLIS = 20;
+
+    private static final Logger logger = Logger.getLogger(WriteBehindServerDAO.class.getName());
+
+    private final ServerDAO serverDao;
+    private final int maxBatchSize;
+    private final int maxPending;
+    private final Durability defaultDurability;
+    private final ConcurrentMap<String,Durability> durabilities = new ConcurrentHashMap<String, Durability>();
+    private final ScheduledExecutorService flusher;
+
+    // pending, flushing, current and the flags are guarded by lock. flushLock is held for the whole of a flush and of a
+    // delete so batches reach the backend in order and a delete can not be overtaken by an earlier save.
+    private final Object lock = new Object();
+    private final Object flushLock = new Object();
+    private Map<String,TransientObject> pending = new LinkedHashMap<String, TransientObject>();
+    private Map<String,TransientObject> flushing = Collections.emptyMap();
+    private Batch current = new Batch();
+    private boolean flushRequested = false;
+    private boolean closed = false;
+
+    private final AtomicLong saves = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Acknowledges saves once written, which batches concurrent saves without delaying any of them.
+     */
+    public WriteBehindServerDAO(ServerDAO serverDao){
+        this(serverDao, Durability.ACK_AFTER_FLUSH, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_PENDING,
+                DEFAULT_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param serverDao backend the objects are read from and written to.
+     * @param defaultDurability durability of object types without one of their own, see
+     *                          {@link #setDurability(Class, Durability)}.
+     * @param maxBatchSize objects written to the backend per save call, a flush starts as soon as this many are queued.
+     * @param maxPending objects which may be queued before saves flush themselves.
+     * @param flushDelay longest time a {@link Durability#FIRE_AND_FORGET} save stays queued while nothing else
+     *                   triggers a flush.
+     * @param unit unit of flushDelay.
+     */
+    public WriteBehindServerDAO(ServerDAO serverDao, Durability defaultDurability, int maxBatchSize, int maxPending,
+                                long flushDelay, TimeUnit unit){
+        this.serverDao = serverDao;
+        this.defaultDurability = defaultDurability;
+        this.maxBatchSize = maxBatchSize;
+        this.maxPending = maxPending;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "write-behind-flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushQuietly();
+            }
+        }, flushDelay, flushDelay, unit);
+    }
+
+    public void setDurability(Class<? extends TransientObject> type, Durability durability){
+        durabilities.put(Query.safeTable(type), durability);
+    }
+
+    public Durability getDurability(String objectType){
+        Durability durability = durabilities.get(objectType);
+        return (durability == null) ? defaultDurability : durability;
+    }
+
+    @Override
+    public void save(TransientObject... objects) throws DAOException {
+        if(objects.length == 0) return;
+
+        Enqueued enqueued = enqueue(objects, false);
+        Batch batch = enqueued.batch;
+        if(batch == null){
+            serverDao.save(objects);
+            return;
+        }
+        if(enqueued.ack){
+            // group commit, the first waiting save writes everything queued so far and the others find it written
+            synchronized (flushLock){
+                if(!batch.isDone()) flush();
+            }
+            batch.await();
+        } else if(enqueued.full){
+            flush();
+        }
+    }
+
+    /**
+     * Queued objects, the batch they are written with, null if this dao is shut down, and whether the caller waits for
+     * it or has to flush a full queue.
+     */
+    private static class Enqueued {
+        Batch batch;
+        boolean ack;
+        boolean full;
+    }
+
+    // queues objects, flushSoon requests a flush on the flush thread when the save is acknowledged or the queue full
+    private Enqueued enqueue(TransientObject[] objects, boolean flushSoon){
+        Enqueued enqueued = new Enqueued();
+        synchronized (lock){
+            if(!closed){
+                for(TransientObject o : objects){
+                    // the caller may keep changing o, the queued version is the one passed now
+                    if(pending.put(keyOf(o), CachingServerDAO.copy(o)) != null) coalesced.incrementAndGet();
+                    enqueued.ack |= getDurability(o.getObjectType()) == Durability.ACK_AFTER_FLUSH;
+                }
+                enqueued.batch = current;
+                enqueued.full = pending.size() >= maxPending;
+                boolean now = flushSoon && (enqueued.ack || enqueued.full);
+                if(!flushRequested && (now || (!enqueued.full && pending.size() >= maxBatchSize))){
+                    flushRequested = true;
+                    requestFlush();
+                }
+            }
+        }
+        saves.addAndGet(objects.length);
+        return enqueued;
+    }
+
+    @Override
+    public void delete(TransientObject... objects) throws DAOException {
+        synchronized (flushLock){
+            synchronized (lock){
+                for(TransientObject o : objects){
+                    pending.remove(keyOf(o));
+                }
+            }
+            serverDao.delete(objects);
+        }
+    }
+
+    @Override
+    public <O extends TransientObject> Collection<O> get(String type, String... keys) throws DAOException {
+        List<O> found = new ArrayList<O>(keys.length);
+        List<String> missing = new ArrayList<String>();
+        for(String key : new LinkedHashSet<String>(Arrays.asList(keys))){
+            TransientObject queued = queued(keyOf(type, key));
+            if(queued != null){
+                found.add((O) CachingServerDAO.copy(queued));
+            } else {
+                missing.add(key);
+            }
+        }
+        if(!missing.isEmpty()){
+            found.addAll(serverDao.<O>get(type, missing.toArray(new String[missing.size()])));
+        }
+        return found;
+    }
+
+    @Override
+    public boolean exists(TransientObject... objects) {
+        List<TransientObject> unqueued = new ArrayList<TransientObject>(objects.length);
+        for(TransientObject o : objects){
+            if(queued(keyOf(o)) == null) unqueued.add(o);
+        }
+        if(unqueued.isEmpty()) return objects.length > 0;
+        return serverDao.exists(unqueued.toArray(new TransientObject[unqueued.size()]));
+    }
+
+    @Override
+    public Future<Void> saveAsync(TransientObject... objects) throws DAOException {
+        if(objects.length == 0) return DeferredFuture.of(null);
+
+        final Enqueued enqueued = enqueue(objects, true);
+        if(enqueued.batch == null) return asyncBackend().saveAsync(objects);
+        if(!enqueued.ack) return DeferredFuture.of(null);
+        return new DeferredFuture<Void>() {
+            @Override
+            protected Void complete() throws Exception {
+                enqueued.batch.await();
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public <O extends TransientObject> Future<Collection<O>> getAsync(String type, String... keys) throws DAOException {
+        final List<O> found = new ArrayList<O>(keys.length);
+        List<String> missing = new ArrayList<String>();
+        for(String key : new LinkedHashSet<String>(Arrays.asList(keys))){
+            TransientObject queued = queued(keyOf(type, key));
+            if(queued != null){
+                found.add((O) CachingServerDAO.copy(queued));
+            } else {
+                missing.add(key);
+            }
+        }
+        if(missing.isEmpty()) return DeferredFuture.<Collection<O>>of(found);
+
+        final Future<Collection<O>> pending = asyncBackend().getAsync(type, missing.toArray(new String[missing.size()]));
+        return new DeferredFuture<Collection<O>>() {
+            @Override
+            protected Collection<O> complete() throws Exception {
+                found.addAll(unwrap(pending));
+                return found;
+            }
+        };
+    }
+
+    @Override
+    public Future<Void> deleteAsync(final TransientObject... objects) throws DAOException {
+        synchronized (lock){
+            for(TransientObject o : objects){
+                pending.remove(keyOf(o));
+            }
+        }
+        try{
+            return flusher.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    delete(objects);
+                    return null;
+                }
+            });
+        } catch (RejectedExecutionException e){
+            // shut down, nothing is queued any more
+            return asyncBackend().deleteAsync(objects);
+        }
+    }
+
+    @Override
+    public <O extends TransientObject> Future<List<O>> queryAsync(Query query) throws DAOException {
+        if(pendingCount() > 0) flush();
+        return asyncBackend().queryAsync(query);
+    }
+
+    @Override
+    public Future<Integer> countAsync(String objectType) throws DAOException {
+        if(pendingCount() > 0) flush();
+        return asyncBackend().countAsync(objectType);
+    }
+
+    @Override
+    public long allocate(String sequence, int size, long initialValue) throws DAOException {
+        return backend(SequenceAllocator.class).allocate(sequence, size, initialValue);
+    }
+
+    @Override
+    public boolean supports(Class<?> capability){
+        return capability.isInstance(serverDao) &&
+                (!(serverDao instanceof DelegatingDAO) || ((DelegatingDAO) serverDao).supports(capability));
+    }
+
+    /**
+     * {@link #shutdown()}, then closes the backend if it is {@link Closeable}.
+     */
+    @Override
+    public void close() throws IOException {
+        shutdown();
+        if(serverDao instanceof Closeable) ((Closeable) serverDao).close();
+    }
+
+    @Override
+    public <O extends TransientObject> List<O> query(Query query) throws DAOException {
+        flush();
+        return serverDao.query(query);
+    }
+
+    @Override
+    public <O extends TransientObject> Cursor<O> stream(Query query) throws DAOException {
+        flush();
+        return serverDao.stream(query);
+    }
+
+    @Override
+    public int count(String objectType) {
+        flush();
+        return serverDao.count(objectType);
+    }
+
+    @Override
+    public KeyPair keys(KeyPair keys) {
+        return serverDao.keys(keys);
+    }
+
+    // the queue itself is, but flushes reach the backend on the flush thread while callers read from it, so the
+    // backend has to be thread safe whether or not callers serialize their calls
+    @Override
+    public boolean isThreadSafe(){
+        return serverDao instanceof ThreadSafeDAO && ((ThreadSafeDAO) serverDao).isThreadSafe();
+    }
+
+    /**
+     * Writes all queued objects to the backend and returns once they are written.
+     * @throws DAOException if the backend failed to save them, the objects are not queued again.
+     */
+    public void flush() throws DAOException {
+        synchronized (flushLock){
+            Map<String,TransientObject> batch;
+            Batch acks;
+            synchronized (lock){
+                flushRequested = false;
+                acks = current;
+                current = new Batch();
+                if(pending.isEmpty()){
+                    // saves waiting on this batch may have had their objects removed by a delete
+                    batch = null;
+                } else {
+                    batch = pending;
+                    pending = new LinkedHashMap<String, TransientObject>();
+                    flushing = batch;
+                }
+            }
+            if(batch == null){
+                acks.done(null);
+                return;
+            }
+
+            RuntimeException failure = null;
+            try{
+                List<TransientObject> objects = new ArrayList<TransientObject>(batch.values());
+                for(int from=0;from<objects.size();from+=maxBatchSize){
+                    List<TransientObject> chunk = objects.subList(from, Math.min(from + maxBatchSize, objects.size()));
+                    serverDao.save(chunk.toArray(new TransientObject[chunk.size()]));
+                }
+                flushes.incrementAndGet();
+            } catch (RuntimeException e){
+                failures.incrementAndGet();
+                failure = e;
+                throw e;
+            } finally {
+                synchronized (lock){
+                    flushing = Collections.emptyMap();
+                }
+                acks.done(failure);
+            }
+        }
+    }
+
+    /**
+     * Stops the timed flushes and writes out what is queued. Later saves are written through.
+     */
+    public void shutdown() throws DAOException {
+        synchronized (lock){
+            closed = true;
+        }
+        flusher.shutdown();
+        flush();
+    }
+
+    /**
+     * @return objects queued and not yet written.
+     */
+    public int pendingCount(){
+        synchronized (lock){
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return objects passed to save.
+     */
+    public long saveCount(){
+        return saves.get();
+    }
+
+    /**
+     * @return saves which replaced a queued version of the same object instead of adding a write.
+     */
+    public long coalescedCount(){
+        return coalesced.get();
+    }
+
+    public long flushCount(){
+        return flushes.get();
+    }
+
+    public long failedFlushCount(){
+        return failures.get();
+    }
+
+    private void requestFlush(){
+        flusher.execute(new Runnable() {
+            @Override
+            public void run() {
+                flushQuietly();
+            }
+        });
+    }
+
+    private void flushQuietly(){
+        try{
+            flush();
+        } catch (RuntimeException e){
+            logger.severe("Write behind flush failed: " + e);
+        }
+    }
+
+    private <C> C backend(Class<C> capability){
+        if(!supports(capability)){
+            throw new DAOException(501, serverDao.getClass().getSimpleName() + " is not a " + capability.getSimpleName());
+        }
+        return capability.cast(serverDao);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AsyncDAO<TransientObject,TransientObject> asyncBackend(){
+        return backend(AsyncDAO.class);
+    }
+
+    private static <T> T unwrap(Future<T> future) throws Exception {
+        try{
+            return future.get();
+        } catch (ExecutionException e){
+            if(e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    private TransientObject queued(String key){
+        synchronized (lock){
+            TransientObject queued = pending.get(key);
+            return (queued != null) ? queued : flushing.get(key);
+        }
+    }
+
+    private static String keyOf(TransientObject o){
+        return keyOf(o.getObjectType(), o.getObjectKey());
+    }
+
+    private static String keyOf(String type, String key){
+        return type + '|' + key;
+    }
+
+    /**
+     * Saves waiting for the same flush.
+     */
+    private static class Batch {
+        private final CountDownLatch flushed = new CountDownLatch(1);
+        private volatile RuntimeException failure;
+
+        void done(RuntimeException failure){
+            this.failure = failure;
+            flushed.countDown();
+        }
+
+        boolean isDone(){
+            return flushed.getCount() == 0;
+        }
+
+        void await() throws DAOException {
+            try {
+                flushed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DAOException(e);
+            }
+            if(failure != null) throw failure;
+        }
+    }
+}
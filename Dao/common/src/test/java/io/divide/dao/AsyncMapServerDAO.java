@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.divide.dao;
+
+import io.divide.shared.server.AsyncDAO;
+import io.divide.shared.server.ExecutorAsyncDAO;
+import io.divide.shared.server.SequenceAllocator;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link MapServerDAO} which also is an async dao, a sequence allocator and closeable, counting the calls made to each.
+ */
+public class AsyncMapServerDAO extends MapServerDAO implements AsyncDAO<TransientObject,TransientObject>,
+        SequenceAllocator, Closeable {
+
+    private final ExecutorAsyncDAO<TransientObject,TransientObject> async =
+            new ExecutorAsyncDAO<TransientObject, TransientObject>(this, 2, 16);
+    private final Map<String,Long> sequences = new HashMap<String, Long>();
+
+    final AtomicInteger asyncCalls = new AtomicInteger();
+    final AtomicInteger allocations = new AtomicInteger();
+    volatile boolean closed = false;
+
+    @Override
+    public <O extends TransientObject> Future<List<O>> queryAsync(Query query) throws DAOException {
+        asyncCalls.incrementAndGet();
+        return async.queryAsync(query);
+    }
+
+    @Override
+    public <O extends TransientObject> Future<Collection<O>> getAsync(String type, String... keys) throws DAOException {
+        asyncCalls.incrementAndGet();
+        return async.getAsync(type, keys);
+    }
+
+    @Override
+    public Future<Void> saveAsync(TransientObject... objects) throws DAOException {
+        asyncCalls.incrementAndGet();
+        return async.saveAsync(objects);
+    }
+
+    @Override
+    public Future<Void> deleteAsync(TransientObject... objects) throws DAOException {
+        asyncCalls.incrementAndGet();
+        return async.deleteAsync(objects);
+    }
+
+    @Override
+    public Future<Integer> countAsync(String objectType) throws DAOException {
+        asyncCalls.incrementAndGet();
+        return async.countAsync(objectType);
+    }
+
+    @Override
+    public synchronized long allocate(String sequence, int size, long initialValue) throws DAOException {
+        allocations.incrementAndGet();
+        Long next = sequences.get(sequence);
+        if(next == null) next = initialValue;
+        sequences.put(sequence, next + size);
+        return next;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        async.shutdown();
+    }
+}
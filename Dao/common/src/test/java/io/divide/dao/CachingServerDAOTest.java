@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao;
+
+import io.divide.shared.server.AsyncDAO;
+import io.divide.shared.server.SequenceAllocator;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.QueryBuilder;
+import io.divide.shared.util.ConcurrentLruCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import static io.divide.shared.server.DAO.DAOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CachingServerDAOTest {
+
+    MapServerDAO backend;
+
+    @Before
+    public void setUp() {
+        backend = new MapServerDAO();
+    }
+
+    @Test
+    public void testReadThrough() throws Exception {
+        CachingServerDAO dao = new CachingServerDAO(backend);
+        TestObject1 object = new TestObject1("key", "first");
+        backend.save(object);
+
+        assertEquals("first", getOne(dao, object).get(String.class, "key"));
+        getOne(dao, object).put("key", "changed by caller");
+        assertEquals("first", getOne(dao, object).get(String.class, "key"));
+
+        assertEquals(1, dao.loadCount());
+        assertEquals(2, dao.hitCount());
+        assertEquals(2 / 3d, dao.hitRatio(), 0.001);
+        assertTrue(dao.exists(object));
+    }
+
+    @Test
+    public void testWriteThrough() throws Exception {
+        CachingServerDAO dao = new CachingServerDAO(backend);
+        TestObject1 object = new TestObject1("key", "first");
+        dao.save(object);
+
+        object.put("key", "second");
+        dao.save(object);
+        assertEquals("second", getOne(dao, object).get(String.class, "key"));
+        assertEquals(0, dao.loadCount());
+
+        dao.delete(object);
+        assertEquals(0, dao.get(object.getObjectType(), object.getObjectKey()).size());
+        assertEquals(1, dao.loadCount());
+
+        dao.save(object);
+        dao.query(new QueryBuilder().delete().from(TestObject1.class).build());
+        assertEquals(0, dao.size());
+        assertEquals(0, dao.get(object.getObjectType(), object.getObjectKey()).size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        TestObject1 a = new TestObject1("key", "a");
+        TestObject1 b = new TestObject1("key", "b");
+        long weight = CachingServerDAO.DEFAULT_MAX_WEIGHT;
+
+        CachingServerDAO bySize = new CachingServerDAO(backend, 1, weight, 0, TimeUnit.SECONDS);
+        bySize.save(a, b);
+        assertEquals(1, bySize.size());
+        assertEquals(1, bySize.evictionCount());
+
+        // every object outweighs its segments share of one byte, each segment keeps only its newest object
+        CachingServerDAO byWeight = new CachingServerDAO(backend, 100, 1, 0, TimeUnit.SECONDS);
+        for(int x=0;x<50;x++){
+            byWeight.save(new TestObject1("key", "value" + x));
+        }
+        assertTrue(byWeight.size() <= ConcurrentLruCache.DEFAULT_CONCURRENCY_LEVEL);
+        assertEquals(50 - byWeight.size(), byWeight.evictionCount());
+
+        CachingServerDAO byTime = new CachingServerDAO(backend, 100, weight, 1, TimeUnit.MILLISECONDS);
+        byTime.save(a);
+        Thread.sleep(5);
+        getOne(byTime, a);
+        assertEquals(1, byTime.loadCount());
+    }
+
+    @Test
+    public void testForwardsToBackend() throws Exception {
+        CachingServerDAO plain = new CachingServerDAO(backend);
+        assertFalse(plain.supports(AsyncDAO.class));
+        assertFalse(plain.supports(SequenceAllocator.class));
+
+        AsyncMapServerDAO async = new AsyncMapServerDAO();
+        CachingServerDAO dao = new CachingServerDAO(async);
+        assertTrue(dao.supports(AsyncDAO.class));
+        assertTrue(dao.supports(SequenceAllocator.class));
+        assertTrue(new CachingServerDAO(dao).supports(AsyncDAO.class));
+        assertFalse(new CachingServerDAO(plain).supports(AsyncDAO.class));
+
+        assertEquals(5, dao.allocate("sequence", 10, 5));
+        assertEquals(15, dao.allocate("sequence", 10, 5));
+        assertEquals(2, async.allocations.get());
+
+        TestObject1 object = new TestObject1("key", "first");
+        async.save(object);
+        assertEquals(1, dao.getAsync(object.getObjectType(), object.getObjectKey()).get().size());
+        assertEquals(1, dao.size());
+        dao.getAsync(object.getObjectType(), object.getObjectKey()).get();
+        assertEquals(1, dao.loadCount());
+
+        object.put("key", "second");
+        dao.saveAsync(object).get();
+        assertEquals("second", getOne(dao, object).get(String.class, "key"));
+        assertEquals("second", getOne(async, object).get(String.class, "key"));
+
+        dao.deleteAsync(object).get();
+        assertEquals(0, dao.getAsync(object.getObjectType(), object.getObjectKey()).get().size());
+        assertEquals(0, (int) dao.countAsync(object.getObjectType()).get());
+
+        dao.close();
+        assertTrue(async.closed);
+    }
+
+    @Test(expected = DAOException.class)
+    public void testUnsupportedCapability() throws Exception {
+        new CachingServerDAO(backend).allocate("sequence", 10, 5);
+    }
+
+    private static TransientObject getOne(ServerDAO dao, TransientObject object){
+        Collection<TransientObject> found = dao.get(object.getObjectType(), object.getObjectKey());
+        assertEquals(1, found.size());
+        return found.iterator().next();
+    }
+}
@@ -18,12 +18,20 @@ package io.divide.dao;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import io.divide.shared.server.AsyncDAO;
+import io.divide.shared.server.Cursor;
 import io.divide.shared.server.DAO;
+import io.divide.shared.server.SequenceAllocator;
 import io.divide.shared.util.ObjectUtils;
 import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Aggregate;
+import io.divide.shared.transitory.query.Count;
 import io.divide.shared.transitory.query.OPERAND;
+import io.divide.shared.transitory.query.OrderBy;
 import io.divide.shared.transitory.query.Query;
 import io.divide.shared.transitory.query.QueryBuilder;
+import io.divide.shared.transitory.query.QueryResult;
+import io.divide.shared.transitory.query.SelectOperation;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -31,7 +39,9 @@ import org.junit.Test;
 import java.nio.CharBuffer;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -75,6 +85,221 @@ public abstract class DAOTest<BaseObject extends Keyable> {
     @After
     public void tearDown(){};
 
+    @Test
+    public void testStream() throws Exception {
+        rawSave(object1,object2,object3,object4);
+
+        Query q = new QueryBuilder().select().from(TestObject1.class).where("key1",OPERAND.EQ,"1").build();
+        Cursor<TransientObject> cursor = dao.stream(q);
+        int count = 0;
+        while(cursor.hasNext()){
+            TransientObject to = cursor.next();
+            assertEquals("1", to.get(String.class, "key1"));
+            count++;
+        }
+        cursor.close();
+        assertEquals("key1=", 2, count);
+
+        q = new QueryBuilder().select().from(TestObject1.class).limit(2).build();
+        cursor = dao.stream(q);
+        assertTrue(cursor.hasNext());
+        cursor.next();
+        cursor.close();
+        assertFalse("closed", cursor.hasNext());
+    }
+
+    @Test
+    public void testQueryAfter() throws Exception {
+        rawSave(object1,object2,object3,object4);
+
+        Query q = new QueryBuilder().select().from(TestObject1.class).limit(2).build();
+        List<TransientObject> page1 = dao.query(q);
+        assertEquals("page1", 2, page1.size());
+        String cursor = QueryResult.nextCursorOf(page1);
+        assertNotNull("cursor", cursor);
+
+        q = new QueryBuilder().select().from(TestObject1.class).after(cursor).limit(2).build();
+        List<TransientObject> page2 = dao.query(q);
+        assertEquals("page2", 1, page2.size());
+        assertNull("last page", QueryResult.nextCursorOf(page2));
+
+        Set<String> keys = new HashSet<String>();
+        for(TransientObject to : page1) keys.add(to.getObjectKey());
+        for(TransientObject to : page2) keys.add(to.getObjectKey());
+        assertEquals("distinct", 3, keys.size());
+
+        Cursor<TransientObject> stream = dao.stream(
+                new QueryBuilder().select().from(TestObject1.class).after(cursor).build());
+        assertEquals("stream", page2.get(0).getObjectKey(), stream.next().getObjectKey());
+        assertFalse("stream", stream.hasNext());
+        stream.close();
+    }
+
+    @Test
+    public void testQueryOrderBy() throws Exception {
+        rawSave(object1,object2,object3,object4);
+
+        Query q = new QueryBuilder().select().from(TestObject1.class)
+                .orderBy("key1", OrderBy.Direction.DESC)
+                .limit(1).build();
+        List<TransientObject> results = dao.query(q);
+        assertEquals("top 1", 1, results.size());
+        assertEquals("top 1", testObject2.getObjectKey(), results.get(0).getObjectKey());
+
+        q = new QueryBuilder().select().from(TestObject1.class)
+                .orderBy("key1", OrderBy.Direction.ASC)
+                .orderBy("key2", OrderBy.Direction.ASC).build();
+        results = dao.query(q);
+        assertEquals("asc", 3, results.size());
+        assertEquals("asc", testObject3.getObjectKey(), results.get(0).getObjectKey());
+        assertEquals("asc", testObject1.getObjectKey(), results.get(1).getObjectKey());
+        assertEquals("asc", testObject2.getObjectKey(), results.get(2).getObjectKey());
+    }
+
+    @Test
+    public void testQueryProjection() throws Exception {
+        rawSave(object1,object2,object3,object4);
+
+        Query q = new QueryBuilder().select("key2").from(TestObject1.class)
+                .where("key1",OPERAND.EQ,"1")
+                .orderBy("key2", OrderBy.Direction.ASC).build();
+        List<TransientObject> results = dao.query(q);
+        assertEquals("projection", 2, results.size());
+        TransientObject to = results.get(0);
+        assertEquals("projection", testObject3.getObjectKey(), to.getObjectKey());
+        assertEquals("projection", testObject3.getObjectType(), to.getObjectType());
+        assertEquals("projection", "2", to.get(String.class, "key2"));
+        assertEquals("projection", 1, to.getUserData().size());
+        assertEquals("projection", 2, to.getMetaData().size());
+
+        q = new QueryBuilder().select("key1").select(TransientObject.MODIFIED_DATE_KEY).from(TestObject1.class)
+                .limit(2).build();
+        results = dao.query(q);
+        assertEquals("paged projection", 2, results.size());
+        assertNotNull("paged projection", results.get(0).getModifiedDate());
+        String cursor = QueryResult.nextCursorOf(results);
+        assertNotNull("paged projection", cursor);
+
+        q = new QueryBuilder().select("key1").from(TestObject1.class).after(cursor).limit(2).build();
+        assertEquals("paged projection", 1, dao.query(q).size());
+    }
+
+    @Test
+    public void testQueryAggregates() throws Exception {
+        TestObject1 a = new TestObject1("cat","x");
+        a.put("amount", 5);
+        TestObject1 b = new TestObject1("cat","x");
+        b.put("amount", 7);
+        TestObject1 c = new TestObject1("cat","y");
+        c.put("amount", 10);
+        dao.save(a,b,c);
+
+        Query q = new QueryBuilder().select(SelectOperation.COUNT).from(TestObject1.class)
+                .where("cat",OPERAND.EQ,"x").build();
+        assertEquals("filtered count", 2, ((Count) aggregate(q)).getCount());
+
+        q = new QueryBuilder().select(SelectOperation.COUNT).from(TestObject1.class)
+                .where("cat",OPERAND.EQ,"z").build();
+        assertEquals("no match", 0, ((Count) aggregate(q)).getCount());
+
+        q = new QueryBuilder().select(SelectOperation.SUM, "amount").from(TestObject1.class).build();
+        assertEquals("sum", 22d, ((Number) ((Aggregate) aggregate(q)).getValue()).doubleValue(), 0);
+
+        q = new QueryBuilder().select(SelectOperation.SUM, "amount").from(TestObject1.class)
+                .where("cat",OPERAND.EQ,"x").build();
+        assertEquals("filtered sum", 12d, ((Number) ((Aggregate) aggregate(q)).getValue()).doubleValue(), 0);
+
+        q = new QueryBuilder().select(SelectOperation.MIN, "amount").from(TestObject1.class).build();
+        assertEquals("min", 5, ((Number) ((Aggregate) aggregate(q)).getValue()).intValue());
+
+        q = new QueryBuilder().select(SelectOperation.MAX, "amount").from(TestObject1.class).build();
+        assertEquals("max", 10, ((Number) ((Aggregate) aggregate(q)).getValue()).intValue());
+
+        q = new QueryBuilder().select(SelectOperation.AVG, "amount").from(TestObject1.class).build();
+        assertEquals("avg", 22d / 3, ((Number) ((Aggregate) aggregate(q)).getValue()).doubleValue(), 0.0001);
+
+        q = new QueryBuilder().select(SelectOperation.SUM, "amount").from(TestObject1.class).groupBy("cat").build();
+        List<TransientObject> results = dao.query(q);
+        assertEquals("grouped sum", 2, results.size());
+        for(TransientObject to : results){
+            Aggregate aggregate = (Aggregate) to;
+            double expected = "x".equals(aggregate.getGroup()) ? 12d : 10d;
+            assertEquals("grouped sum " + aggregate.getGroup(), expected, ((Number) aggregate.getValue()).doubleValue(), 0);
+        }
+
+        q = new QueryBuilder().select(SelectOperation.COUNT).from(TestObject1.class).groupBy("cat").build();
+        results = dao.query(q);
+        assertEquals("grouped count", 2, results.size());
+        for(TransientObject to : results){
+            Count count = (Count) to;
+            assertEquals("grouped count " + count.getGroup(), "x".equals(count.getGroup()) ? 2 : 1, count.getCount());
+        }
+    }
+
+    @Test
+    public void testQueryTypedValues() throws Exception {
+        TestObject1 a = new TestObject1();
+        a.put("amount", 5);
+        a.put("flag", true);
+        TestObject1 b = new TestObject1();
+        b.put("amount", 10);
+        b.put("flag", false);
+        TestObject1 c = new TestObject1();
+        c.put("amount", 9d); // as read from json
+        c.put("flag", true);
+        dao.save(a,b,c);
+
+        Query q = new QueryBuilder().select().from(TestObject1.class).where("amount",OPERAND.GREATER_THAN,8).build();
+        assertEquals("numeric range", 2, dao.query(q).size());
+
+        q = new QueryBuilder().select().from(TestObject1.class).where("amount",OPERAND.LESS_THAN_EQ,9L).build();
+        assertEquals("numeric range", 2, dao.query(q).size());
+
+        q = new QueryBuilder().select().from(TestObject1.class).where("flag",OPERAND.EQ,true).build();
+        assertEquals("boolean", 2, dao.query(q).size());
+    }
+
+    @Test
+    public void testQuerySetAndRange() throws Exception {
+        TestObject1 a = new TestObject1();
+        a.put("name", "a");
+        a.put("amount", 5);
+        TestObject1 b = new TestObject1();
+        b.put("name", "b");
+        b.put("amount", 10);
+        TestObject1 c = new TestObject1();
+        c.put("name", "c");
+        c.put("amount", 9d); // as read from json
+        dao.save(a,b,c);
+
+        Query q = new QueryBuilder().select().from(TestObject1.class).where("name",OPERAND.IN,Arrays.asList("a","c","x")).build();
+        assertEquals("in", 2, dao.query(q).size());
+
+        q = new QueryBuilder().select().from(TestObject1.class).where("amount",OPERAND.IN,Arrays.asList(9,10)).build();
+        assertEquals("numeric in", 2, dao.query(q).size());
+
+        q = new QueryBuilder().select().from(TestObject1.class).where("name",OPERAND.NOT_EQ,"b").build();
+        assertEquals("not equal", 2, dao.query(q).size());
+
+        q = new QueryBuilder().select().from(TestObject1.class).where("amount",OPERAND.BETWEEN,Arrays.asList(6,10)).build();
+        assertEquals("between", 2, dao.query(q).size());
+
+        q = new QueryBuilder().select("name").from(TestObject1.class)
+                .where(TransientObject.OBJECT_KEY,OPERAND.IN,Arrays.asList(a.getObjectKey(),b.getObjectKey(),"missing",a.getObjectKey()))
+                .build();
+        List<TransientObject> results = dao.query(q);
+        assertEquals("key lookup", 2, results.size());
+        for(TransientObject o : results){
+            assertEquals("key lookup projection", 1, o.getUserData().size());
+        }
+    }
+
+    private TransientObject aggregate(Query q){
+        List<TransientObject> results = dao.query(q);
+        assertEquals(String.valueOf(results), 1, results.size());
+        return results.get(0);
+    }
+
     @Test
     public void testQuery() throws Exception {
         rawSave(object1,object2,object3,object4);
@@ -262,6 +487,14 @@ public abstract class DAOTest<BaseObject extends Keyable> {
         exists = dao.exists(testObject3);
         assertEquals(testObject3.getObjectKey(),false,exists);
 
+        assertFalse("nothing", dao.exists());
+
+        // the key of a stored object under another type
+        TransientObject otherType = new TestObject2(){{
+            meta_put(OBJECT_KEY, testObject1.getObjectKey());
+        }};
+        assertFalse("other type", dao.exists(otherType));
+        assertFalse("other type", dao.exists(testObject1, otherType));
     }
 
     @Test
@@ -278,6 +511,88 @@ public abstract class DAOTest<BaseObject extends Keyable> {
         assertEquals(0, count);
     }
 
+    @Test
+    public void testRandom() throws Exception {
+        TestObject1[] objects = new TestObject1[20];
+        for(int x=0;x<objects.length;x++){
+            objects[x] = new TestObject1("key1", String.valueOf(x % 2));
+        }
+        dao.save(objects);
+
+        Query q = new QueryBuilder().select().from(TestObject1.class).random(5).build();
+        List<TransientObject> results = dao.query(q);
+        assertEquals(5, results.size());
+        assertEquals(5, keysOf(results).size());
+
+        q = new QueryBuilder().select().from(TestObject1.class).where("key1", OPERAND.EQ, "1").random(4).build();
+        results = dao.query(q);
+        assertEquals(4, results.size());
+        for(TransientObject to : results){
+            assertEquals("1", to.get(String.class, "key1"));
+        }
+
+        // asking for more than there are returns each object once
+        q = new QueryBuilder().select().from(TestObject1.class).random(50).build();
+        results = dao.query(q);
+        assertEquals(objects.length, results.size());
+        assertEquals(objects.length, keysOf(results).size());
+    }
+
+    private static Set<String> keysOf(List<TransientObject> objects){
+        Set<String> keys = new HashSet<String>();
+        for(TransientObject to : objects){
+            keys.add(to.getObjectKey());
+        }
+        return keys;
+    }
+
+    @Test
+    public void testBatchSaveDelete() throws Exception {
+        TestObject1[] objects = new TestObject1[1201];
+        for(int x=0;x<objects.length;x++){
+            objects[x] = new TestObject1("key1",String.valueOf(x));
+        }
+
+        dao.save(objects);
+        assertEquals(objects.length, dao.count(testObject1Table));
+        assertTrue(dao.exists(objects));
+
+        dao.delete(objects);
+        assertEquals(0, dao.count(testObject1Table));
+        assertFalse(dao.exists(objects[0]));
+    }
+
+    @Test
+    public void testAllocateSequence() throws Exception {
+        if(!(dao instanceof SequenceAllocator)) return;
+        SequenceAllocator allocator = (SequenceAllocator) dao;
+
+        assertEquals(5, allocator.allocate("testSequence", 10, 5));
+        assertEquals(15, allocator.allocate("testSequence", 10, 5));
+        assertEquals(25, allocator.allocate("testSequence", 1, 100));
+        assertEquals(100, allocator.allocate("otherSequence", 1, 100));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        if(!(dao instanceof AsyncDAO)) return;
+        AsyncDAO<TransientObject,TransientObject> async = (AsyncDAO<TransientObject,TransientObject>) dao;
+
+        assertNull(async.saveAsync(testObject1, testObject2).get());
+        assertEquals(2, async.countAsync(testObject1Table).get().intValue());
+
+        Collection<TransientObject> got = async.getAsync(testObject1Table, testObject1.getObjectKey()).get();
+        assertEquals(1, got.size());
+        assertEquals(testObject1.getObjectKey(), got.iterator().next().getObjectKey());
+
+        Query q = new QueryBuilder().select().from(TestObject1.class).build();
+        assertEquals(2, async.queryAsync(q).get().size());
+
+        assertNull(async.deleteAsync(testObject1).get());
+        assertEquals(1, async.countAsync(testObject1Table).get().intValue());
+        assertFalse(dao.exists(testObject1));
+    }
+
     public abstract BaseObject toBaseObject(TransientObject object);
     public abstract void rawSave(List<BaseObject> objects);
 
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.divide.dao;
+
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.Cursors;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In memory ServerDAO for testing the decorating DAOs. Stores copies like a real backend would, queries ignore their
+ * clauses and select or delete every object of the type.
+ */
+public class MapServerDAO implements ServerDAO {
+
+    private final Map<String,TransientObject> objects = new LinkedHashMap<String, TransientObject>();
+
+    @Override
+    public KeyPair keys(KeyPair keys) {
+        return keys;
+    }
+
+    @Override
+    public synchronized <O extends TransientObject> List<O> query(Query query) throws DAOException {
+        List<O> found = new ArrayList<O>();
+        for(Iterator<TransientObject> i = objects.values().iterator();i.hasNext();){
+            TransientObject o = i.next();
+            if(!o.getObjectType().equals(query.getFrom())) continue;
+            if(QueryBuilder.QueryAction.DELETE.equals(query.getAction())){
+                i.remove();
+            } else {
+                found.add((O) CachingServerDAO.copy(o));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public <O extends TransientObject> Cursor<O> stream(Query query) throws DAOException {
+        return Cursors.of(this.<O>query(query));
+    }
+
+    @Override
+    public synchronized <O extends TransientObject> Collection<O> get(String type, String... keys) throws DAOException {
+        List<O> found = new ArrayList<O>();
+        for(String key : keys){
+            TransientObject o = objects.get(type + key);
+            if(o != null) found.add((O) CachingServerDAO.copy(o));
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized void save(TransientObject... toSave) throws DAOException {
+        for(TransientObject o : toSave){
+            objects.put(o.getObjectType() + o.getObjectKey(), CachingServerDAO.copy(o));
+        }
+    }
+
+    @Override
+    public synchronized void delete(TransientObject... toDelete) throws DAOException {
+        for(TransientObject o : toDelete){
+            objects.remove(o.getObjectType() + o.getObjectKey());
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(TransientObject... toCheck) {
+        if(toCheck.length == 0) return false;
+        for(TransientObject o : toCheck){
+            if(!objects.containsKey(o.getObjectType() + o.getObjectKey())) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized int count(String objectType) {
+        int count = 0;
+        for(TransientObject o : objects.values()){
+            if(o.getObjectType().equals(objectType)) count++;
+        }
+        return count;
+    }
+}
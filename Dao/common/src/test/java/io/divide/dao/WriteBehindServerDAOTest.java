@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao;
+
+import io.divide.shared.server.AsyncDAO;
+import io.divide.shared.server.SequenceAllocator;
+import io.divide.shared.transitory.TransientObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.divide.dao.WriteBehindServerDAO.Durability.ACK_AFTER_FLUSH;
+import static io.divide.dao.WriteBehindServerDAO.Durability.FIRE_AND_FORGET;
+import static org.junit.Assert.*;
+
+public class WriteBehindServerDAOTest {
+
+    MapServerDAO backend;
+
+    @Before
+    public void setUp() {
+        backend = new MapServerDAO();
+    }
+
+    @Test
+    public void testCoalescesAndReadsOwnWrites() throws Exception {
+        WriteBehindServerDAO dao = queued(FIRE_AND_FORGET, 100);
+        TestObject1 object = new TestObject1("key", "first");
+        dao.save(object);
+        object.put("key", "second");
+        dao.save(object);
+        object.put("key", "changed after save");
+
+        assertEquals(1, dao.pendingCount());
+        assertEquals(1, dao.coalescedCount());
+        assertEquals("second", getOne(dao, object).get(String.class, "key"));
+        assertTrue(dao.exists(object));
+        assertEquals(0, backend.get(object.getObjectType(), object.getObjectKey()).size());
+
+        assertEquals(1, dao.count(object.getObjectType()));
+        assertEquals("second", getOne(backend, object).get(String.class, "key"));
+        assertEquals(1, dao.flushCount());
+        dao.shutdown();
+    }
+
+    @Test
+    public void testFlushOnSize() throws Exception {
+        WriteBehindServerDAO dao = queued(FIRE_AND_FORGET, 10);
+        for(int x=0;x<25;x++){
+            dao.save(new TestObject1("key", "value" + x));
+        }
+        for(int x=0;x<500 && dao.flushCount() == 0;x++){
+            Thread.sleep(10);
+        }
+        // nothing but the size triggers a flush within the hour
+        assertTrue(dao.flushCount() > 0);
+        dao.shutdown();
+        assertEquals(25, backend.count(new TestObject1().getObjectType()));
+    }
+
+    @Test
+    public void testDurabilityPerType() throws Exception {
+        WriteBehindServerDAO dao = new WriteBehindServerDAO(backend, ACK_AFTER_FLUSH, 100, 1000, 10, TimeUnit.MILLISECONDS);
+        dao.setDurability(TestObject2.class, FIRE_AND_FORGET);
+        assertEquals(FIRE_AND_FORGET, dao.getDurability(new TestObject2().getObjectType()));
+
+        TestObject1 acked = new TestObject1("key", "acked");
+        dao.save(acked);
+        assertEquals(1, backend.get(acked.getObjectType(), acked.getObjectKey()).size());
+
+        TestObject2 forgotten = new TestObject2("key", "forgotten");
+        dao.save(forgotten);
+        for(int x=0;x<500 && dao.pendingCount() > 0;x++){
+            Thread.sleep(10);
+        }
+        assertEquals(1, backend.get(forgotten.getObjectType(), forgotten.getObjectKey()).size());
+        dao.shutdown();
+    }
+
+    @Test
+    public void testAckDoesNotWaitForTimer() throws Exception {
+        WriteBehindServerDAO dao = queued(ACK_AFTER_FLUSH, 100);
+        TestObject1 object = new TestObject1("key", "acked");
+        long start = System.currentTimeMillis();
+        dao.save(object);
+        assertTrue(System.currentTimeMillis() - start < TimeUnit.MINUTES.toMillis(1));
+        assertEquals(1, backend.get(object.getObjectType(), object.getObjectKey()).size());
+        assertEquals(1, dao.flushCount());
+        dao.shutdown();
+    }
+
+    @Test
+    public void testAckBatchesUnderContention() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        backend = new MapServerDAO(){
+            @Override
+            public synchronized void save(TransientObject... toSave) throws DAOException {
+                writing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new DAOException(e);
+                }
+                super.save(toSave);
+            }
+        };
+        final WriteBehindServerDAO dao = queued(ACK_AFTER_FLUSH, 100);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for(int x=0;x<3;x++){
+            final TestObject1 object = new TestObject1("key", "value" + x);
+            threads.add(new Thread(){
+                @Override
+                public void run() {
+                    dao.save(object);
+                }
+            });
+        }
+        threads.get(0).start();
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        threads.get(1).start();
+        threads.get(2).start();
+        for(int x=0;x<500 && dao.pendingCount() < 2;x++){
+            Thread.sleep(10);
+        }
+        assertEquals(2, dao.pendingCount());
+
+        release.countDown();
+        for(Thread thread : threads){
+            thread.join(10000);
+        }
+        // the two saves queued behind the first write share one
+        assertEquals(3, backend.count(new TestObject1().getObjectType()));
+        assertEquals(2, dao.flushCount());
+        dao.shutdown();
+    }
+
+    @Test
+    public void testForwardsToBackend() throws Exception {
+        AsyncMapServerDAO async = new AsyncMapServerDAO();
+        backend = async;
+        WriteBehindServerDAO dao = queued(FIRE_AND_FORGET, 100);
+        dao.setDurability(TestObject2.class, ACK_AFTER_FLUSH);
+        assertTrue(dao.supports(AsyncDAO.class));
+        assertTrue(dao.supports(SequenceAllocator.class));
+        assertEquals(5, dao.allocate("sequence", 10, 5));
+
+        TestObject1 queued = new TestObject1("key", "queued");
+        dao.saveAsync(queued).get();
+        assertEquals(1, dao.pendingCount());
+        assertEquals(1, dao.getAsync(queued.getObjectType(), queued.getObjectKey()).get().size());
+
+        TestObject2 acked = new TestObject2("key", "acked");
+        dao.saveAsync(acked).get();
+        assertEquals(1, async.get(acked.getObjectType(), acked.getObjectKey()).size());
+
+        dao.deleteAsync(acked).get();
+        assertEquals(0, async.get(acked.getObjectType(), acked.getObjectKey()).size());
+        assertEquals(1, (int) dao.countAsync(queued.getObjectType()).get());
+
+        TestObject1 forgotten = new TestObject1("key", "forgotten");
+        dao.saveAsync(forgotten).get();
+        // closed through another decorator, the queue is still written out
+        new CachingServerDAO(dao).close();
+        assertTrue(async.closed);
+        assertEquals(1, async.get(forgotten.getObjectType(), forgotten.getObjectKey()).size());
+    }
+
+    @Test
+    public void testDeleteDropsQueuedSave() throws Exception {
+        WriteBehindServerDAO dao = queued(FIRE_AND_FORGET, 100);
+        TestObject1 object = new TestObject1("key", "deleted");
+        dao.save(object);
+        dao.delete(object);
+
+        assertEquals(0, dao.pendingCount());
+        assertEquals(0, dao.get(object.getObjectType(), object.getObjectKey()).size());
+        dao.shutdown();
+        assertEquals(0, backend.get(object.getObjectType(), object.getObjectKey()).size());
+    }
+
+    @Test
+    public void testShutdownDrains() throws Exception {
+        WriteBehindServerDAO dao = queued(FIRE_AND_FORGET, 100);
+        TestObject1 a = new TestObject1("key", "a");
+        TestObject1 b = new TestObject1("key", "b");
+        dao.save(a, b);
+        dao.shutdown();
+        assertEquals(2, backend.count(a.getObjectType()));
+
+        TestObject1 late = new TestObject1("key", "late");
+        dao.save(late);
+        assertEquals(0, dao.pendingCount());
+        assertEquals(1, backend.get(late.getObjectType(), late.getObjectKey()).size());
+    }
+
+    // flushed only when full, on queries and on shutdown
+    private WriteBehindServerDAO queued(WriteBehindServerDAO.Durability durability, int maxBatchSize){
+        return new WriteBehindServerDAO(backend, durability, maxBatchSize, 1000, 1, TimeUnit.HOURS);
+    }
+
+    private static TransientObject getOne(ServerDAO dao, TransientObject object){
+        Collection<TransientObject> found = dao.get(object.getObjectType(), object.getObjectKey());
+        assertEquals(1, found.size());
+        return found.iterator().next();
+    }
+}
@@ -17,7 +17,11 @@
 package io.divide.dao.appengine;
 
 import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Clause;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public class BackendToOfy{
@@ -25,10 +29,68 @@ public class BackendToOfy{
     private BackendToOfy(){}
 
     public static OfyObject getOfy(TransientObject transientObject) {
-        OfyObject oo = new OfyObject(transientObject.getObjectKey(),transientObject.getUserData(),transientObject.getMetaData());
+        transientObject.getRandomIndex(); // assigned before the meta data is copied
+        Map<String,Object> userData = transientObject.getUserData();
+        for(Map.Entry<String,Object> e : userData.entrySet()){
+            e.setValue(normalize(e.getValue()));
+        }
+        OfyObject oo = new OfyObject(transientObject.getObjectKey(),userData,transientObject.getMetaData());
         return oo;
     }
 
+    /**
+     * The datastore orders integers and floating point numbers as different types, whole numbers are stored as longs
+     * so they match LONG clauses whether they were written by java or arrived as json doubles.
+     */
+    static Object normalize(Object value){
+        if(value instanceof Double || value instanceof Float){
+            double d = ((Number) value).doubleValue();
+            if(d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < (double) Long.MAX_VALUE){
+                return (long) d;
+            }
+        } else if(value instanceof Collection){
+            List<Object> values = new ArrayList<Object>(((Collection<?>) value).size());
+            boolean changed = false;
+            for(Object o : (Collection<?>) value){
+                Object normalized = normalize(o);
+                changed |= normalized != o;
+                values.add(normalized);
+            }
+            return changed ? values : value;
+        }
+        return value;
+    }
+
+    /**
+     * @return the clause value bound with its own type, meta data is stored as strings.
+     */
+    static Object valueOf(Clause clause){
+        if(clause.getBefore().startsWith(TransientObject.META_DATA + ".")){
+            return clause.getAfter();
+        }
+        Object value = clause.getValue();
+        if(Clause.ValueType.DOUBLE.equals(clause.getType())){
+            return normalize(value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the values of an IN or BETWEEN clause, bound like {@link #valueOf(Clause)}.
+     */
+    static List<Object> valuesOf(Clause clause){
+        if(clause.getBefore().startsWith(TransientObject.META_DATA + ".")){
+            return new ArrayList<Object>(clause.getAfterValues());
+        }
+        List<Object> values = clause.getValues();
+        if(Clause.ValueType.DOUBLE.equals(clause.getType())){
+            for(int x=0;x<values.size();x++){
+                values.set(x, normalize(values.get(x)));
+            }
+        }
+        return values;
+    }
+
     public static TransientObject getBack(OfyObject ofyObject) {
         TempObject beo = new TempObject(); // gonna get over written anyways
         beo.setMaps(ofyObject.user_data,ofyObject.meta_data);
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.appengine;
+
+import io.divide.shared.util.ConcurrentLruCache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In process {@link SecondLevelCache} for tests and local runs, with the add and delete semantics of
+ * {@link MemcacheSecondLevelCache}. Entries are evicted least recently used first and expire after a fixed time.
+ * Objects are copied in and out, as memcache serializes them.
+ */
+public class LocalSecondLevelCache implements SecondLevelCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final ConcurrentLruCache<String,OfyObject> cache;
+    private final ConcurrentMap<String,Long> deleted = new ConcurrentHashMap<String, Long>();
+    private final long noReAddNanos;
+    private final int maxSize;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LocalSecondLevelCache(){
+        this(DEFAULT_MAX_SIZE, MemcacheSecondLevelCache.DEFAULT_EXPIRATION_SECONDS, TimeUnit.SECONDS,
+             MemcacheSecondLevelCache.DEFAULT_NO_READD_MILLIS);
+    }
+
+    /**
+     * @param expiration time an entry is kept after it was added.
+     * @param noReAddMillis time keys can not be added again after they were deleted.
+     */
+    public LocalSecondLevelCache(int maxSize, long expiration, TimeUnit unit, long noReAddMillis){
+        this.cache = new ConcurrentLruCache<String, OfyObject>(maxSize, expiration, unit);
+        this.noReAddNanos = TimeUnit.MILLISECONDS.toNanos(noReAddMillis);
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public Map<String,OfyObject> getAll(Collection<String> keys) {
+        Map<String,OfyObject> objects = new HashMap<String, OfyObject>(keys.size());
+        for(String key : keys){
+            OfyObject object = cache.get(key);
+            if(object != null) objects.put(key, copy(object));
+        }
+        hits.addAndGet(objects.size());
+        misses.addAndGet(keys.size() - objects.size());
+        return objects;
+    }
+
+    @Override
+    public void addAll(Map<String,OfyObject> objects) {
+        long now = System.nanoTime();
+        for(Map.Entry<String,OfyObject> entry : objects.entrySet()){
+            String key = entry.getKey();
+            if(isDeleted(key, now) || cache.get(key) != null) continue;
+            cache.put(key, copy(entry.getValue()));
+            // a delete which slipped in between the check and the put wins
+            if(isDeleted(key, now)) cache.remove(key);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) {
+        long now = System.nanoTime();
+        if(deleted.size() > maxSize) purge(now);
+        for(String key : keys){
+            deleted.put(key, now + noReAddNanos);
+            cache.remove(key);
+        }
+    }
+
+    // markers of keys which are never added again are only dropped here
+    private void purge(long now){
+        Iterator<Long> iterator = deleted.values().iterator();
+        while(iterator.hasNext()){
+            if(iterator.next() - now <= 0) iterator.remove();
+        }
+    }
+
+    private boolean isDeleted(String key, long now){
+        Long until = deleted.get(key);
+        if(until == null) return false;
+        if(until - now > 0) return true;
+        deleted.remove(key, until);
+        return false;
+    }
+
+    @Override
+    public long hitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long missCount() {
+        return misses.get();
+    }
+
+    @Override
+    public double hitRatio() {
+        long hit = hits.get();
+        long total = hit + misses.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public int size(){
+        return cache.size();
+    }
+
+    public long evictionCount(){
+        return cache.evictionCount();
+    }
+
+    private static OfyObject copy(OfyObject object){
+        return new OfyObject(object.object_key,
+                new HashMap<String, Object>(object.user_data),
+                new HashMap<String, String>(object.meta_data));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.appengine;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link SecondLevelCache} in App Engine memcache, shared by every instance of the application. Memcache errors are
+ * logged and treated as misses by the service's default error handler. Hit and miss counts are those of this
+ * instance.
+ */
+public class MemcacheSecondLevelCache implements SecondLevelCache {
+
+    public static final String DEFAULT_NAMESPACE = "divide.ofy";
+    public static final int DEFAULT_EXPIRATION_SECONDS = 3600;
+    public static final long DEFAULT_NO_READD_MILLIS = 2000;
+
+    private final MemcacheService memcache;
+    private final Expiration expiration;
+    private final long noReAddMillis;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MemcacheSecondLevelCache(){
+        this(MemcacheServiceFactory.getMemcacheService(DEFAULT_NAMESPACE),
+             DEFAULT_EXPIRATION_SECONDS, TimeUnit.SECONDS, DEFAULT_NO_READD_MILLIS);
+    }
+
+    /**
+     * @param expiration time an entry is kept after it was added.
+     * @param noReAddMillis time keys can not be added again after they were deleted.
+     */
+    public MemcacheSecondLevelCache(MemcacheService memcache, long expiration, TimeUnit unit, long noReAddMillis){
+        this.memcache = memcache;
+        this.expiration = Expiration.byDeltaMillis((int) unit.toMillis(expiration));
+        this.noReAddMillis = noReAddMillis;
+    }
+
+    @Override
+    public Map<String,OfyObject> getAll(Collection<String> keys) {
+        Map<String,Object> found = memcache.getAll(keys);
+        Map<String,OfyObject> objects = new HashMap<String, OfyObject>(found.size());
+        for(Map.Entry<String,Object> entry : found.entrySet()){
+            if(entry.getValue() instanceof OfyObject){
+                objects.put(entry.getKey(), (OfyObject) entry.getValue());
+            }
+        }
+        hits.addAndGet(objects.size());
+        misses.addAndGet(keys.size() - objects.size());
+        return objects;
+    }
+
+    @Override
+    public void addAll(Map<String,OfyObject> objects) {
+        if(objects.isEmpty()) return;
+        memcache.putAll(objects, expiration, MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) {
+        if(keys.isEmpty()) return;
+        memcache.deleteAll(keys, noReAddMillis);
+    }
+
+    @Override
+    public long hitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long missCount() {
+        return misses.get();
+    }
+
+    @Override
+    public double hitRatio() {
+        long hit = hits.get();
+        long total = hit + misses.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+}
@@ -16,9 +16,18 @@
 
 package io.divide.dao.appengine;
 
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Result;
+import com.googlecode.objectify.Work;
 import com.googlecode.objectify.cmd.LoadType;
 import io.divide.dao.ServerDAO;
+import io.divide.dao.ThreadSafeDAO;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.AsyncDAO;
+import io.divide.shared.server.Cursors;
+import io.divide.shared.server.DeferredFuture;
+import io.divide.shared.server.SequenceAllocator;
 import io.divide.shared.util.Crypto;
 import io.divide.shared.util.ObjectUtils;
 import io.divide.shared.transitory.TransientObject;
@@ -28,34 +37,82 @@ import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 import javax.ws.rs.core.Response;
 import java.security.KeyPair;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import static io.divide.dao.appengine.OfyService.ofy;
 
-public class ObjectifyDAO implements ServerDAO {
+/**
+ * Stores every object as an {@link OfyObject} entity keyed by its object key. Reads by key go through an optional
+ * {@link SecondLevelCache}, a {@link MemcacheSecondLevelCache} in production or a {@link LocalSecondLevelCache} in
+ * tests and local runs, which every save and delete made through this dao invalidates as soon as it is issued and
+ * again once it completes. The async calls start their datastore work right away with Objectify's async loads, saves
+ * and deletes, and wait for it on {@link Future#get()}.
+ */
+public class ObjectifyDAO implements ServerDAO, AsyncDAO<TransientObject,TransientObject>, SequenceAllocator, ThreadSafeDAO {
     Logger logger = Logger.getLogger(String.valueOf(ObjectifyDAO.class));
     Random RANDOM = new Random();
 
+    private static final int STREAM_CHUNK_SIZE = 500;
+
+    // the datastore runs one sub query per IN value and allows at most 30 of them
+    private static final int MAX_IN_VALUES = 30;
+
+    // the datastore writes or deletes at most 500 entities per call
+    static final int MAX_BATCH_SIZE = 500;
+
+    // transactions on the same sequence entity collide under load, the datastore retries them this often
+    private static final int SEQUENCE_RETRIES = 10;
+
+    private final SecondLevelCache cache;
+
+    public ObjectifyDAO(){
+        this(null);
+    }
+
+    /**
+     * @param cache answers reads by key before the datastore, null to always read the datastore.
+     */
+    public ObjectifyDAO(SecondLevelCache cache){
+        this.cache = cache;
+    }
+
+    // every thread gets its own Objectify session from ofy(), the second level caches are thread safe
+    @Override
+    public boolean isThreadSafe(){
+        return true;
+    }
+
+    /**
+     * @return the second level cache, or null if reads are not cached.
+     */
+    public SecondLevelCache getSecondLevelCache(){
+        return cache;
+    }
+
     @Override
     public List<TransientObject> query(Query query) throws DAOException{
         logger.info("query: " + query);
-        LoadType<?> filter = ofy().load().type(OfyObject.class);
-        com.googlecode.objectify.cmd.Query<?> oFilter =
-        filter.filter(TransientObject.META_DATA+"."+ TransientObject.OBJECT_TYPE_KEY.KEY + " =",query.getFrom());
 
-        for(Clause c : query.getWhere().values()){
-            oFilter = oFilter.filter(
-                    c.getBefore() + " " +
-                    (c.getOperand().equals(OPERAND.CONTAINS.toString())?OPERAND.EQ.toString():c.getOperand()), // replace CONTAINS with ==
-                    c.getAfter());
+        // selects by object key are a batch get, which has no IN limit
+        List<String> keys = KeyLookup.keysOf(query);
+        if(keys != null){
+            return KeyLookup.finish(query, new ArrayList<TransientObject>(get(query.getFrom(), keys.toArray(new String[keys.size()]))));
         }
 
-        if(query.getOffset()!=null){
-            oFilter = oFilter.offset(query.getOffset());
-        }
-        if(query.getLimit()!=null){
-            oFilter = oFilter.limit(query.getLimit());
+        // random selects read a range of the random index, unless other inequality filters rule out a range on it
+        if(RandomSampling.canSample(query) && equalityOnly(query)){
+            return RandomSampling.sample(query, new RandomSampling.Sampler<TransientObject>() {
+                @Override
+                public List<TransientObject> query(Query probe) {
+                    return ObjectifyDAO.this.query(probe);
+                }
+            });
         }
+
+        com.googlecode.objectify.cmd.Query<?> oFilter = filter(query);
+
         if(query.getRandom()!=null){
             int count = count(query.getFrom());
             if(count < 1) return new ArrayList<TransientObject>();
@@ -69,28 +126,14 @@ public class ObjectifyDAO implements ServerDAO {
         switch (query.getAction()){
             case SELECT:{
                 if(query.getSelect() == null){
-                    list = oFilter.list();
-                    List<TransientObject> toReturn = new ArrayList<TransientObject>(list.size());
-                    try{
-                        for (OfyObject oo : (List<OfyObject>)list){
-                            logger.info("Got: " + oo);
-                            toReturn.add(BackendToOfy.getBack(oo));
-                        }
-                    } catch (Exception e) {
-                        throw new DAOException(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),e);
-                    }
-
-                    list.clear();
-                    list = toReturn;
-                } else
-                if(query.getSelect().equals(SelectOperation.COUNT)){
-                    int count = count(query.getFrom());
-                    return Arrays.asList((TransientObject)new Count(count,query.getFrom()));
+                    list = collect(query, oFilter.iterator());
+                } else {
+                    return aggregate(query);
                 }
             }break;
             case DELETE:{
                 list = oFilter.keys().list();
-                ofy().delete().keys(list);
+                deleteKeys((List<Key<OfyObject>>) list);
                 int count = list.size();
                 list.clear();
                 EmptyTO o = new EmptyTO();
@@ -107,20 +150,177 @@ public class ObjectifyDAO implements ServerDAO {
         return (List<TransientObject>) list;
     }
 
+    private QueryResult<TransientObject> collect(Query query, QueryResultIterator<?> iterator){
+        QueryResult<TransientObject> toReturn = new QueryResult<TransientObject>();
+        List<String> fields = Projection.fieldsOf(query);
+        try{
+            while (iterator.hasNext()){
+                OfyObject oo = (OfyObject) iterator.next();
+                logger.info("Got: " + oo);
+                toReturn.add(project(BackendToOfy.getBack(oo), fields));
+            }
+        } catch (Exception e) {
+            throw new DAOException(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),e);
+        }
+
+        // a full page may have a successor, the datastore cursor resumes right after it
+        if(query.getRandom() == null && query.getLimit() != null && toReturn.size() == query.getLimit()){
+            toReturn.setNextCursor(iterator.getCursor().toWebSafeString());
+        }
+        return toReturn;
+    }
+
+    /**
+     * A filtered COUNT is answered by a datastore count, anything else is folded while streaming the matching objects.
+     */
+    private List<TransientObject> aggregate(Query query) throws DAOException {
+        try{
+            Aggregation.check(query);
+        } catch (IllegalArgumentException e){
+            throw new DAOException(Response.Status.BAD_REQUEST.getStatusCode(), e.getMessage());
+        }
+
+        Query source = Aggregation.source(query);
+        if(SelectOperation.COUNT.equals(query.getSelect()) && query.getGroupBy() == null){
+            int count = filter(source).count();
+            return Arrays.asList(Aggregation.result(query, null, count));
+        }
+
+        Cursor<TransientObject> cursor = stream(source);
+        try{
+            return Aggregation.fold(query, cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Streams plain selects through a datastore query iterator which fetches STREAM_CHUNK_SIZE entities at a time,
+     * anything else falls back to {@link #query(Query)}.
+     */
     @Override
-    public Collection<TransientObject> get(String objectType, final String... keys) throws DAOException {
-        logger.info("get: " + ObjectUtils.v2c(keys));
+    public Cursor<TransientObject> stream(Query query) throws DAOException {
+        if(!QueryBuilder.QueryAction.SELECT.equals(query.getAction()) ||
+            query.getSelect() != null ||
+            query.getRandom() != null){
+            return Cursors.query(this, query);
+        }
+
+        logger.info("stream: " + query);
+        final Iterator<?> iterator = filter(query).chunk(STREAM_CHUNK_SIZE).iterator();
+        final List<String> fields = Projection.fieldsOf(query);
+        return new Cursor<TransientObject>() {
+            private boolean closed = false;
+
+            @Override
+            public boolean hasNext() {
+                return !closed && iterator.hasNext();
+            }
+
+            @Override
+            public TransientObject next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                try{
+                    return project(BackendToOfy.getBack((OfyObject) iterator.next()), fields);
+                } catch (Exception e) {
+                    throw new DAOException(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+            }
+        };
+    }
+
+    // the datastore allows inequality filters on a single property only
+    private static boolean equalityOnly(Query query){
+        for(Clause c : query.getWhere().values()){
+            OPERAND operand = OPERAND.from(c.getOperand());
+            if(!OPERAND.EQ.equals(operand) && !OPERAND.CONTAINS.equals(operand) && !OPERAND.IN.equals(operand)){
+                return false;
+            }
+        }
+        return true;
+    }
 
-        List<Key<OfyObject>> ofyKeys = new ArrayList<Key<OfyObject>>(keys.length);
-        for (String to : keys){
-            ofyKeys.add(Key.create(OfyObject.class, to));
+    private com.googlecode.objectify.cmd.Query<?> filter(Query query){
+        LoadType<?> filter = ofy().load().type(OfyObject.class);
+        com.googlecode.objectify.cmd.Query<?> oFilter =
+        filter.filter(TransientObject.META_DATA+"."+ TransientObject.OBJECT_TYPE_KEY.KEY + " =",query.getFrom());
+
+        for(Clause c : query.getWhere().values()){
+            OPERAND operand = OPERAND.from(c.getOperand());
+            if(operand == null){
+                throw new DAOException(Response.Status.BAD_REQUEST.getStatusCode(), "Invalid operand: " + c.getOperand());
+            }
+            switch (operand){
+                case CONTAINS: // replace CONTAINS with ==
+                    oFilter = oFilter.filter(c.getBefore() + " " + OPERAND.EQ, BackendToOfy.valueOf(c));
+                    break;
+                case IN:{
+                    List<Object> values = BackendToOfy.valuesOf(c);
+                    if(values.size() > MAX_IN_VALUES){
+                        throw new DAOException(Response.Status.BAD_REQUEST.getStatusCode(),
+                                "IN supports at most " + MAX_IN_VALUES + " values, found " + values.size());
+                    }
+                    oFilter = oFilter.filter(c.getBefore() + " in", values);
+                }break;
+                case BETWEEN:{
+                    List<Object> bounds = BackendToOfy.valuesOf(c);
+                    oFilter = oFilter.filter(c.getBefore() + " " + OPERAND.GREATER_THAN_EQ, bounds.get(0))
+                                     .filter(c.getBefore() + " " + OPERAND.LESS_THAN_EQ, bounds.get(1));
+                }break;
+                default:
+                    oFilter = oFilter.filter(c.getBefore() + " " + c.getOperand(), BackendToOfy.valueOf(c));
+            }
+        }
+
+        for(OrderBy o : query.getOrderBy()){
+            oFilter = oFilter.order(o.isAscending() ? o.getField() : "-" + o.getField());
+        }
+
+        if(query.getAfter()!=null){
+            oFilter = oFilter.startAt(cursorOf(query.getAfter()));
+        }
+        if(query.getOffset()!=null){
+            oFilter = oFilter.offset(query.getOffset());
         }
+        if(query.getLimit()!=null){
+            oFilter = oFilter.limit(query.getLimit());
+        }
+        return oFilter;
+    }
 
-        Map<Key<OfyObject>, OfyObject> ofyObjets = ofy().load().keys(ofyKeys);
+    // the datastore only projects indexed single values, so entities are loaded whole and trimmed before returning
+    private static TransientObject project(TransientObject object, List<String> fields){
+        return fields.isEmpty() ? object : Projection.project(object, fields);
+    }
 
+    private static com.google.appengine.api.datastore.Cursor cursorOf(String cursor){
+        try{
+            return com.google.appengine.api.datastore.Cursor.fromWebSafeString(cursor);
+        } catch (IllegalArgumentException e){
+            throw new DAOException(Response.Status.BAD_REQUEST.getStatusCode(), "Invalid cursor: " + cursor);
+        }
+    }
+
+    @Override
+    public Collection<TransientObject> get(String objectType, final String... keys) throws DAOException {
+        logger.info("get: " + ObjectUtils.v2c(keys));
+        return toObjects(objectType, load(new LinkedHashSet<String>(Arrays.asList(keys))).finish());
+    }
+
+    private List<TransientObject> toObjects(String objectType, Collection<OfyObject> ofyObjets){
         List<TransientObject> tos = new ArrayList<TransientObject>(ofyObjets.size());
         try{
-            for (OfyObject oo : ofyObjets.values()){
+            for (OfyObject oo : ofyObjets){
                 if(objectType.equals( oo.meta_data.get("object_type") ))
                     tos.add(BackendToOfy.getBack(oo));
             }
@@ -132,42 +332,206 @@ public class ObjectifyDAO implements ServerDAO {
         return tos;
     }
 
+    // the second level cache first, then one batch load of the keys it missed
+    private PendingLoad load(Set<String> keys){
+        Map<String,OfyObject> cached = (cache == null) ?
+                Collections.<String,OfyObject>emptyMap() : cache.getAll(keys);
+
+        List<Key<OfyObject>> missing = new ArrayList<Key<OfyObject>>(keys.size() - cached.size());
+        for(String key : keys){
+            if(!cached.containsKey(key)) missing.add(Key.create(OfyObject.class, key));
+        }
+
+        List<Map<Key<OfyObject>,OfyObject>> pending = new ArrayList<Map<Key<OfyObject>, OfyObject>>();
+        for(List<Key<OfyObject>> chunk : chunks(missing)){
+            pending.add(ofy().load().keys(chunk));
+        }
+        return new PendingLoad(keys, cached, pending);
+    }
+
+    /**
+     * Batch load which has been started, Objectify only blocks once its results are read.
+     */
+    private class PendingLoad {
+        private final Set<String> keys;
+        private final Map<String,OfyObject> cached;
+        private final List<Map<Key<OfyObject>,OfyObject>> pending;
+
+        private PendingLoad(Set<String> keys, Map<String,OfyObject> cached, List<Map<Key<OfyObject>,OfyObject>> pending){
+            this.keys = keys;
+            this.cached = cached;
+            this.pending = pending;
+        }
+
+        Collection<OfyObject> finish(){
+            Map<String,OfyObject> loaded = new HashMap<String, OfyObject>();
+            for(Map<Key<OfyObject>,OfyObject> chunk : pending){
+                for(OfyObject oo : chunk.values()){
+                    loaded.put(oo.object_key, oo);
+                }
+            }
+            if(cache != null && !loaded.isEmpty()) cache.addAll(loaded);
+
+            List<OfyObject> objects = new ArrayList<OfyObject>(keys.size());
+            for(String key : keys){
+                OfyObject oo = cached.containsKey(key) ? cached.get(key) : loaded.get(key);
+                if(oo != null) objects.add(oo);
+            }
+            return objects;
+        }
+    }
+
+    /**
+     * Every object is converted before anything is written, then all chunks are submitted before waiting on any of
+     * them so the writes overlap instead of costing one round trip each.
+     */
     @Override
     public void save(TransientObject... objects) throws DAOException{
         logger.info("save(): " + ObjectUtils.v2c(objects));
+        await(pendingSave(objects));
+        logger.info("Save Complete.");
+    }
+
+    private DeferredFuture<Void> pendingSave(TransientObject... objects) throws DAOException {
+        if(objects.length == 0) return DeferredFuture.of(null);
+
+        // the last save of a key wins, as it would have saving one at a time
+        final Map<String,OfyObject> entities = new LinkedHashMap<String, OfyObject>(objects.length);
+        final List<Result<?>> pending = new ArrayList<Result<?>>();
         try{
             for(TransientObject bo : objects){
-                ofy().save().entities(BackendToOfy.getOfy(bo)).now();
+                entities.remove(bo.getObjectKey());
+                entities.put(bo.getObjectKey(), BackendToOfy.getOfy(bo));
+            }
+            for(List<OfyObject> chunk : chunks(new ArrayList<OfyObject>(entities.values()))){
+                pending.add(ofy().save().entities(chunk));
             }
         } catch (Exception e) {
             throw new DAOException(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),e);
+        } finally {
+            invalidate(entities.keySet());
         }
-        logger.info("Save Complete.");
+        return new DeferredFuture<Void>() {
+            @Override
+            protected Void complete() {
+                try{
+                    awaitAll(pending);
+                    return null;
+                } catch (Exception e) {
+                    throw new DAOException(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),e);
+                } finally {
+                    invalidate(entities.keySet());
+                }
+            }
+        };
     }
 
     @Override
     public void delete(TransientObject... objects) throws DAOException {
         logger.info("delete: " + ObjectUtils.v2c(objects));
+        await(pendingDelete(keysOf(objects)));
+        logger.info("Delete Complete.");
+    }
 
+    private void deleteKeys(List<Key<OfyObject>> keys){
+        await(pendingDelete(keys));
+    }
+
+    private DeferredFuture<Void> pendingDelete(List<Key<OfyObject>> keys) throws DAOException {
+        final List<String> names = new ArrayList<String>(keys.size());
+        for(Key<OfyObject> key : keys){
+            names.add(key.getName());
+        }
+        final List<Result<?>> pending = new ArrayList<Result<?>>();
         try{
-            for(TransientObject bo : objects){
-                ofy().delete().key(Key.create(OfyObject.class, bo.getObjectKey())).now();
+            for(List<Key<OfyObject>> chunk : chunks(keys)){
+                pending.add(ofy().delete().keys(chunk));
             }
         } catch (Exception e) {
             throw new DAOException(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),e);
+        } finally {
+            invalidate(names);
         }
-        logger.info("Delete Complete.");
+        return new DeferredFuture<Void>() {
+            @Override
+            protected Void complete() {
+                try{
+                    awaitAll(pending);
+                    return null;
+                } catch (Exception e) {
+                    throw new DAOException(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),e);
+                } finally {
+                    invalidate(names);
+                }
+            }
+        };
+    }
+
+    // once when a write is issued, so the old value is not served while it is pending, and again when it is awaited,
+    // dropping what reads cached in between. Also after a failed write, part of it may have been applied.
+    private void invalidate(Collection<String> keys){
+        if(cache != null && !keys.isEmpty()) cache.deleteAll(keys);
+    }
+
+    private static <T> T await(DeferredFuture<T> future) throws DAOException {
+        try{
+            return future.get();
+        } catch (ExecutionException e){
+            if(e.getCause() instanceof DAOException) throw (DAOException) e.getCause();
+            throw new DAOException(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),e.getCause());
+        }
+    }
+
+    // waits on every result even after one failed so no write is left running unobserved, then rethrows the first
+    private static void awaitAll(List<Result<?>> pending){
+        RuntimeException failure = null;
+        for(Result<?> result : pending){
+            try{
+                result.now();
+            } catch (RuntimeException e){
+                if(failure == null) failure = e;
+            }
+        }
+        if(failure != null) throw failure;
+    }
+
+    private static List<Key<OfyObject>> keysOf(TransientObject... objects){
+        Set<String> keys = new LinkedHashSet<String>(objects.length);
+        for(TransientObject bo : objects){
+            keys.add(bo.getObjectKey());
+        }
+        List<Key<OfyObject>> ofyKeys = new ArrayList<Key<OfyObject>>(keys.size());
+        for(String key : keys){
+            ofyKeys.add(Key.create(OfyObject.class, key));
+        }
+        return ofyKeys;
+    }
+
+    static <T> List<List<T>> chunks(List<T> list){
+        List<List<T>> chunks = new ArrayList<List<T>>((list.size() + MAX_BATCH_SIZE - 1) / MAX_BATCH_SIZE);
+        for(int from=0;from<list.size();from+=MAX_BATCH_SIZE){
+            chunks.add(list.subList(from, Math.min(from + MAX_BATCH_SIZE, list.size())));
+        }
+        return chunks;
     }
 
     @Override
     public boolean exists(TransientObject... objects) {
         logger.info("exists: " + ObjectUtils.v2c(objects));
+        if(objects.length == 0) return false;
 
-        boolean exists = true;
+        // entities are keyed by object key alone, the stored object must also have the type asked for
+        Map<String,String> types = new LinkedHashMap<String, String>(objects.length);
         for(TransientObject bo : objects){
-            if(!exists(bo.getObjectKey())) exists = false;
+            String previous = types.put(bo.getObjectKey(), bo.getObjectType());
+            if(previous != null && !previous.equals(bo.getObjectType())) return false;
         }
-        return exists;
+        Collection<OfyObject> found = load(types.keySet()).finish();
+        if(found.size() != types.size()) return false;
+        for(OfyObject oo : found){
+            if(!types.get(oo.object_key).equals(oo.meta_data.get("object_type"))) return false;
+        }
+        return true;
     }
 
     @Override
@@ -181,7 +545,65 @@ public class ObjectifyDAO implements ServerDAO {
 
         logger.info(TransientObject.META_DATA + "." + TransientObject.OBJECT_TYPE_KEY + " =" + objectType + ": " + count);
 
-        return query.count();
+        return count;
+    }
+
+    @Override
+    public Future<List<TransientObject>> queryAsync(final Query query) throws DAOException {
+        logger.info("queryAsync: " + query);
+
+        // a datastore query starts fetching when its iterator is created, anything else runs now
+        if(QueryBuilder.QueryAction.SELECT.equals(query.getAction()) &&
+           query.getSelect() == null &&
+           query.getRandom() == null &&
+           KeyLookup.keysOf(query) == null){
+            final QueryResultIterator<?> iterator = filter(query).iterator();
+            return new DeferredFuture<List<TransientObject>>() {
+                @Override
+                protected List<TransientObject> complete() {
+                    return collect(query, iterator);
+                }
+            };
+        }
+        try{
+            return DeferredFuture.of(query(query));
+        } catch (DAOException e){
+            return DeferredFuture.failed(e);
+        }
+    }
+
+    @Override
+    public Future<Collection<TransientObject>> getAsync(final String objectType, String... keys) throws DAOException {
+        logger.info("getAsync: " + ObjectUtils.v2c(keys));
+        final PendingLoad load = load(new LinkedHashSet<String>(Arrays.asList(keys)));
+        return new DeferredFuture<Collection<TransientObject>>() {
+            @Override
+            protected Collection<TransientObject> complete() {
+                return toObjects(objectType, load.finish());
+            }
+        };
+    }
+
+    @Override
+    public Future<Void> saveAsync(TransientObject... objects) throws DAOException {
+        logger.info("saveAsync: " + ObjectUtils.v2c(objects));
+        return pendingSave(objects);
+    }
+
+    @Override
+    public Future<Void> deleteAsync(TransientObject... objects) throws DAOException {
+        logger.info("deleteAsync: " + ObjectUtils.v2c(objects));
+        return pendingDelete(keysOf(objects));
+    }
+
+    // the datastore has no async count
+    @Override
+    public Future<Integer> countAsync(String objectType) throws DAOException {
+        try{
+            return DeferredFuture.of(count(objectType));
+        } catch (RuntimeException e){
+            return DeferredFuture.failed(e);
+        }
     }
 
     @Override
@@ -201,8 +623,24 @@ public class ObjectifyDAO implements ServerDAO {
         }
     }
 
-    private boolean exists(String key){
-        return (OfyService.ofy().load().filterKey(Key.create(OfyObject.class,key)).count() == 1);
+    @Override
+    public long allocate(final String sequence, final int size, final long initialValue) throws DAOException {
+        if(size < 1) throw new IllegalArgumentException("size must be positive: " + size);
+        try{
+            return ofy().transactNew(SEQUENCE_RETRIES, new Work<Long>() {
+                @Override
+                public Long run() {
+                    SequenceObject counter = ofy().load().type(SequenceObject.class).id(sequence).now();
+                    if(counter == null) counter = new SequenceObject(sequence, initialValue);
+                    long first = counter.next;
+                    counter.next = first + size;
+                    ofy().save().entity(counter).now();
+                    return first;
+                }
+            });
+        } catch (RuntimeException e){
+            throw new DAOException(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),e);
+        }
     }
 
     private static class EmptyTO extends TransientObject{
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.appengine;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Cache of stored {@link OfyObject}s by object key, consulted by {@link ObjectifyDAO#get} before the datastore.
+ * Entries follow memcache semantics: they may be evicted at any time, they are only added when absent, and a delete
+ * keeps its keys from being added again for a while. A read which raced a write therefore can not put back the
+ * object the write replaced.
+ */
+public interface SecondLevelCache {
+
+    /**
+     * @return the cached objects of keys, missing keys are absent from the map.
+     */
+    public Map<String,OfyObject> getAll(Collection<String> keys);
+
+    /**
+     * Adds objects read from the datastore, keys which are cached or were deleted recently are skipped.
+     */
+    public void addAll(Map<String,OfyObject> objects);
+
+    /**
+     * Drops keys after they were written or deleted.
+     */
+    public void deleteAll(Collection<String> keys);
+
+    public long hitCount();
+
+    public long missCount();
+
+    public double hitRatio();
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.appengine;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import io.divide.dao.TestObject1;
+import io.divide.shared.transitory.query.Query;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static io.divide.dao.appengine.OfyService.ofy;
+import static org.junit.Assert.*;
+
+public class CachedObjectifyDAOTest {
+
+    private static final String TABLE = Query.safeTable(TestObject1.class);
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+    private final ObjectifyDAO dao = new ObjectifyDAO(new LocalSecondLevelCache(100, 1, TimeUnit.MINUTES, 50));
+
+    @Before
+    public void setUp() {
+        helper.setUp();
+        ofy().clear();
+    }
+
+    @After
+    public void tearDown() {
+        helper.tearDown();
+    }
+
+    @Test
+    public void testReadThrough() throws Exception {
+        SecondLevelCache cache = dao.getSecondLevelCache();
+        TestObject1 object = new TestObject1("key1","1");
+        dao.save(object);
+
+        // the save keeps the key out of the cache for a moment
+        assertEquals(1, dao.get(TABLE, object.getObjectKey()).size());
+        assertEquals(0, cache.hitCount());
+        Thread.sleep(60);
+
+        dao.get(TABLE, object.getObjectKey());
+        assertEquals(1, dao.get(TABLE, object.getObjectKey()).size());
+        assertEquals(1, cache.hitCount());
+
+        object.put("key1","2");
+        dao.save(object);
+        Thread.sleep(60);
+        assertEquals("2", dao.get(TABLE, object.getObjectKey()).iterator().next().get(String.class, "key1"));
+
+        dao.delete(object);
+        assertEquals(0, dao.get(TABLE, object.getObjectKey()).size());
+        assertFalse(dao.exists(object));
+    }
+
+    @Test
+    public void testAsyncWriteInvalidatesOnSubmit() throws Exception {
+        SecondLevelCache cache = dao.getSecondLevelCache();
+        TestObject1 object = new TestObject1("key1","1");
+        dao.save(object);
+        Thread.sleep(60);
+        dao.get(TABLE, object.getObjectKey());
+        dao.get(TABLE, object.getObjectKey());
+        assertEquals(1, cache.hitCount());
+
+        // not awaited yet, the cached value must already be gone
+        object.put("key1","2");
+        Future<Void> saved = dao.saveAsync(object);
+        dao.get(TABLE, object.getObjectKey());
+        assertEquals(1, cache.hitCount());
+        saved.get();
+        assertEquals("2", dao.get(TABLE, object.getObjectKey()).iterator().next().get(String.class, "key1"));
+
+        Thread.sleep(60);
+        dao.get(TABLE, object.getObjectKey());
+        dao.get(TABLE, object.getObjectKey());
+        assertEquals(2, cache.hitCount());
+
+        Future<Void> deleted = dao.deleteAsync(object);
+        dao.get(TABLE, object.getObjectKey());
+        assertEquals(2, cache.hitCount());
+        deleted.get();
+        assertEquals(0, dao.get(TABLE, object.getObjectKey()).size());
+    }
+
+    // sessions are per thread, so callers need not serialize their calls
+    @Test
+    public void testThreadSafe() throws Exception {
+        assertTrue(dao.isThreadSafe());
+        assertTrue(new ObjectifyDAO().isThreadSafe());
+    }
+
+    @Test
+    public void testAddOnlyIfAbsent() throws Exception {
+        LocalSecondLevelCache cache = new LocalSecondLevelCache(100, 1, TimeUnit.MINUTES, 60000);
+        OfyObject one = BackendToOfy.getOfy(new TestObject1("key1","1"));
+        OfyObject two = BackendToOfy.getOfy(new TestObject1("key1","2"));
+        two.object_key = one.object_key;
+
+        cache.addAll(Collections.singletonMap(one.object_key, one));
+        cache.addAll(Collections.singletonMap(one.object_key, two));
+        assertEquals("1", cache.getAll(Arrays.asList(one.object_key)).get(one.object_key).user_data.get("key1"));
+
+        cache.deleteAll(Arrays.asList(one.object_key));
+        cache.addAll(Collections.singletonMap(one.object_key, two));
+        assertTrue(cache.getAll(Arrays.asList(one.object_key)).isEmpty());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+}
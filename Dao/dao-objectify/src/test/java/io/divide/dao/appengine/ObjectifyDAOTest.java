@@ -55,6 +55,7 @@ public class ObjectifyDAOTest extends DAOTest<ObjectifyDAOTest.KeyedOfyObject> {
     @Before
     public void setUp() {
         helper.setUp();
+        ofy().clear(); // the session outlives the local datastore, drop entities loaded by earlier tests
         super.setUp();
     }
 
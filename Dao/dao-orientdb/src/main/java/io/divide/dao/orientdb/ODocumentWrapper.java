@@ -18,23 +18,17 @@ package io.divide.dao.orientdb;
 
 import io.divide.shared.util.ReflectionUtils;
 import io.divide.shared.transitory.TransientObject;
-import com.orientechnologies.orient.core.index.OIndexFactory;
-import com.orientechnologies.orient.core.index.OIndexes;
-import com.orientechnologies.orient.core.metadata.schema.OClass;
 import com.orientechnologies.orient.core.metadata.schema.OType;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 
 import java.lang.reflect.Constructor;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
-
-import static io.divide.dao.orientdb.OIndexHighLander.ID;
 
 public class ODocumentWrapper extends ODocument {
 
     public static final String indexAttribute = "index";
+    // copy of the random index meta data, embedded map values can not be indexed
+    public static final String randomIndexAttribute = "random_index";
 
     protected ODocumentWrapper(){
         this.setAllowChainedAccess(true);
@@ -53,41 +47,25 @@ public class ODocumentWrapper extends ODocument {
         this.setAllowChainedAccess(true);
         this.setLazyLoad(false);
 
+        OrientSchemaCache.ensureClass(getDatabase(), className);
 
-        // dirty unreliable hack to add HighLanderIndexFactory to the list.
-        if(!OIndexes.getIndexTypes().contains(ID))
-        try {
-            HighLanderIndexFactory f = new HighLanderIndexFactory();
-            Set<OIndexFactory> set = new HashSet<OIndexFactory>();
-            Iterator<OIndexFactory> ite = OIndexes.getAllFactories();
-            while (ite.hasNext()) {
-                set.add(ite.next());
-            }
-            set.add(f);
-            ReflectionUtils.setFinalStatic(ReflectionUtils.getClassField(OIndexes.class, "FACTORIES"), set);
-        } catch (Exception e) {
-            throw new RuntimeException("Unable to create OrientDBWrapper");
-        }
-
-        if(getDatabase().getClusterIdByName(className) == -1){
-            OClass object = getDatabase().getMetadata().getSchema().getOrCreateClass(className);
-            object.createProperty(indexAttribute, OType.STRING)
-                    .setMandatory(true)
-                    .setNotNull(true)
-                    .setReadonly(true);
-            object.createIndex(className, ID, indexAttribute);
-            getDatabase().getMetadata().getSchema().save();
-        }
+        field(indexAttribute, b.getObjectKey(), OType.STRING);
+        copyData(this, b);
+        super.setClassNameIfExists(className);
+    }
 
+    /**
+     * Overwrites the data of an already stored document with the data of b, keeping the record identity.
+     */
+    public static <B extends TransientObject> ODocument copyData(ODocument doc, B b){
+        b.getRandomIndex(); // assigned before the meta data is copied
         Map user = b.getUserData();
         Map meta = b.getMetaData();
 
-        field(indexAttribute, b.getObjectKey(), OType.STRING);
-        field("user_data", user);
-        field("meta_data", meta);
-        super.setClassNameIfExists(className);
-
-        System.out.println("DB: " + getDatabase().getName() + " : " + this.getClassName() + " : " + getDatabase().getClusterIdByName(className));
+        doc.field(TransientObject.USER_DATA, user);
+        doc.field(TransientObject.META_DATA, meta);
+        doc.field(randomIndexAttribute, b.getRandomIndex(), OType.STRING);
+        return doc;
     }
 
     public String getKey(){
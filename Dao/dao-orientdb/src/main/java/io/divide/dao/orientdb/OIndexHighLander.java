@@ -21,31 +21,54 @@ import com.orientechnologies.orient.core.index.OIndexDictionary;
 import com.orientechnologies.orient.core.index.OIndexEngine;
 import com.orientechnologies.orient.core.index.OIndexOneValue;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 public class OIndexHighLander extends OIndexDictionary {
 
     public static String ID = "HIGHLANDER_INDEX";
 
+    private static final int KEY_LOCK_STRIPES = 64;
+
+    // static, the index manager may hand out more than one instance of the same index. Stripes are taken per key, so
+    // puts of different keys no longer wait for each other
+    private static final ReentrantLock[] keyLocks = new ReentrantLock[KEY_LOCK_STRIPES];
+    static {
+        for(int x=0;x<KEY_LOCK_STRIPES;x++) keyLocks[x] = new ReentrantLock();
+    }
+
     public OIndexHighLander(String typeId, String algorithm, OIndexEngine<OIdentifiable> engine, String valueContainerAlgorithm) {
         super(typeId, algorithm, engine, valueContainerAlgorithm);
     }
 
+    /**
+     * Updates made in place keep their RID and only need the entry rewritten. The previously indexed record is
+     * removed only when a different record claims the key. Looking up, removing and putting is atomic per key, two
+     * puts of one key can not both keep their record.
+     */
     public OIndexOneValue put(final Object iKey, final OIdentifiable iSingleValue) {
-        acquireExclusiveLock();
-        try {
-            checkForKeyType(iKey);
+        checkForKeyType(iKey);
 
+        ReentrantLock keyLock = lockFor(iKey);
+        keyLock.lock();
+        try {
             final OIdentifiable value = super.get(iKey);
 
-            if (value != null){
+            if (value != null && !value.getIdentity().equals(iSingleValue.getIdentity())){
                 // DELETE THE PREVIOUS INDEXED RECORD
                 value.getRecord().delete();
             }
             super.put(iKey, iSingleValue);
 
             return this;
-
         } finally {
-            releaseExclusiveLock();
+            keyLock.unlock();
         }
     }
+
+    private ReentrantLock lockFor(Object key){
+        String name = getName();
+        int h = (name == null ? 0 : name.hashCode()) * 31 + (key == null ? 0 : key.hashCode());
+        h ^= (h >>> 16);
+        return keyLocks[h & (KEY_LOCK_STRIPES - 1)];
+    }
 }
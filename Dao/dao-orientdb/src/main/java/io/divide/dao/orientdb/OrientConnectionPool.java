@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.orientdb;
+
+import io.divide.shared.server.DAO.DAOException;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentPool;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of OrientDB database handles. A thread gets one handle per lease, nested acquires on the same
+ * thread reuse it. When every handle is in use acquire waits up to the configured timeout before failing with
+ * a 503 {@link DAOException}.
+ */
+public class OrientConnectionPool {
+
+    public static final int DEFAULT_MAX_SIZE = 20;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 5000;
+
+    private final ODatabaseDocumentPool pool;
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long acquireTimeoutNanos;
+    private final Semaphore permits;
+    private final ThreadLocal<Lease> leases = new ThreadLocal<Lease>();
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    public OrientConnectionPool(String url, String user, String password){
+        this(url, user, password, DEFAULT_MAX_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public OrientConnectionPool(String url, String user, String password, int maxSize, long acquireTimeout, TimeUnit unit){
+        if(maxSize < 1) throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.acquireTimeoutNanos = unit.toNanos(acquireTimeout);
+        this.permits = new Semaphore(maxSize, true);
+
+        ODatabaseDocument db = new ODatabaseDocumentTx(url);
+        if(!db.exists()){
+            db.create();
+            db.close();
+        }
+
+        this.pool = new ODatabaseDocumentPool(url, user, password);
+        this.pool.setup(1, maxSize);
+    }
+
+    /**
+     * @return a database handle bound to the calling thread, must be handed back through {@link #release(ODatabaseDocument)}.
+     */
+    public ODatabaseDocument acquire() throws DAOException {
+        Lease lease = leases.get();
+        if(lease != null){
+            lease.depth++;
+            ODatabaseRecordThreadLocal.INSTANCE.set(lease.db);
+            return lease.db;
+        }
+
+        long start = System.nanoTime();
+        try {
+            if(!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)){
+                timeoutCount.incrementAndGet();
+                throw new DAOException(503, "Timed out waiting for a database connection to " + url);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DAOException(503, e);
+        }
+        waitNanos.addAndGet(System.nanoTime() - start);
+
+        ODatabaseDocumentTx db;
+        try {
+            db = pool.acquire(url, user, password);
+        } catch (RuntimeException e){
+            permits.release();
+            throw new DAOException(e);
+        }
+        ODatabaseRecordThreadLocal.INSTANCE.set(db);
+        leases.set(new Lease(db));
+        active.incrementAndGet();
+        acquireCount.incrementAndGet();
+        return db;
+    }
+
+    public void release(ODatabaseDocument db){
+        Lease lease = leases.get();
+        if(lease == null || lease.db != db)
+            throw new IllegalStateException("Database handle was not acquired by this thread");
+
+        if(--lease.depth > 0) return;
+
+        leases.remove();
+        active.decrementAndGet();
+        try {
+            db.close(); // returns the handle to the underlying pool
+        } finally {
+            permits.release();
+        }
+    }
+
+    public void close(){
+        pool.close();
+    }
+
+    public int getMaxSize(){
+        return maxSize;
+    }
+
+    public int getActiveCount(){
+        return active.get();
+    }
+
+    public int getAvailableCount(){
+        return permits.availablePermits();
+    }
+
+    public long getAcquireCount(){
+        return acquireCount.get();
+    }
+
+    public long getTimeoutCount(){
+        return timeoutCount.get();
+    }
+
+    public double getAverageWaitMillis(){
+        long count = acquireCount.get();
+        return count == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(waitNanos.get()) / count / 1000d;
+    }
+
+    @Override
+    public String toString() {
+        return "OrientConnectionPool{" +
+                "url='" + url + '\'' +
+                ", maxSize=" + maxSize +
+                ", active=" + getActiveCount() +
+                ", acquired=" + getAcquireCount() +
+                ", timeouts=" + getTimeoutCount() +
+                ", avgWaitMillis=" + getAverageWaitMillis() +
+                '}';
+    }
+
+    private static final class Lease {
+        private final ODatabaseDocument db;
+        private int depth = 1;
+
+        private Lease(ODatabaseDocument db){
+            this.db = db;
+        }
+    }
+}
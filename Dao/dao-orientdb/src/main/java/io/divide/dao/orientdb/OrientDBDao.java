@@ -17,29 +17,78 @@
 package io.divide.dao.orientdb;
 
 import io.divide.dao.ServerDAO;
+import io.divide.dao.ThreadSafeDAO;
+import io.divide.dao.orientdb.OrientQueryCompiler.CompiledQuery;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.AsyncDAO;
+import io.divide.shared.server.Cursors;
+import io.divide.shared.server.ExecutorAsyncDAO;
+import io.divide.shared.server.SequenceAllocator;
 import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Aggregation;
+import io.divide.shared.transitory.query.Clause;
+import io.divide.shared.transitory.query.KeyLookup;
 import io.divide.shared.transitory.query.OPERAND;
 import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.Projection;
 import io.divide.shared.transitory.query.QueryBuilder;
+import io.divide.shared.transitory.query.QueryResult;
+import io.divide.shared.transitory.query.RandomSampling;
+import io.divide.shared.transitory.query.SelectOperation;
 import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.index.OIndex;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.sql.OCommandSQL;
 import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+import com.orientechnologies.orient.core.storage.ORecordDuplicatedException;
 import com.orientechnologies.orient.core.tx.OTransaction;
 
+import java.io.Closeable;
 import java.security.KeyPair;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-public class OrientDBDao implements ServerDAO {
+public class OrientDBDao implements ServerDAO, AsyncDAO<TransientObject,TransientObject>, SequenceAllocator, Closeable,
+        ThreadSafeDAO {
+
+    private static final Logger logger = Logger.getLogger(OrientDBDao.class.getName());
 
     public static final String DEFAULT_CONFIG = "memory:default";
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int KEY_LOCK_STRIPES = 64;
+    public static final String SEQUENCE_CLASS = "divide_sequence";
+    private static final int SEQUENCE_RETRIES = 10;
 
     ODatabaseDocument db;
+    private final OrientConnectionPool pool;
+    private final boolean ownsPool;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final OrientQueryCompiler compiler = new OrientQueryCompiler();
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private final ReentrantLock[] keyLocks = newLocks(KEY_LOCK_STRIPES);
+    private ExecutorAsyncDAO<TransientObject,TransientObject> async;
+    private boolean closed = false;
 
     public OrientDBDao(){
         this.db = new ODatabaseDocumentTx(DEFAULT_CONFIG);
@@ -48,153 +97,564 @@ public class OrientDBDao implements ServerDAO {
         } else {
             db.create();
         }
+        this.pool = null;
+        this.ownsPool = false;
     }
 
+    /**
+     * Shares one database handle between all threads, calls are serialized.
+     */
     public OrientDBDao(ODatabaseDocument db){
         this.db = db;
+        this.pool = null;
+        this.ownsPool = false;
+    }
+
+    /**
+     * Gives each calling thread its own handle from the pool.
+     */
+    public OrientDBDao(OrientConnectionPool pool){
+        this(pool, false);
+    }
+
+    /**
+     * Gives each calling thread its own handle from a pool created for, and closed with, this dao.
+     */
+    public OrientDBDao(String url, String user, String password, int poolSize, long acquireTimeout, TimeUnit unit){
+        this(new OrientConnectionPool(url, user, password, poolSize, acquireTimeout, unit), true);
+    }
+
+    private OrientDBDao(OrientConnectionPool pool, boolean ownsPool){
+        this.db = null;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    public OrientConnectionPool getPool(){
+        return pool;
+    }
+
+    // calls on a shared handle are serialized by lock, pooled calls each lease a handle of their own
+    @Override
+    public boolean isThreadSafe(){
+        return true;
+    }
+
+    /**
+     * @param batchSize maximum number of records written or deleted per transaction.
+     */
+    public void setBatchSize(int batchSize){
+        if(batchSize < 1) throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize(){
+        return batchSize;
     }
 
-    private void checkDb(){
+    private ODatabaseDocument acquire() throws DAOException {
+        if(pool != null){
+            return pool.acquire();
+        }
+        lock.lock();
         ODatabaseRecordThreadLocal.INSTANCE.set(db);
+        return db;
+    }
+
+    private void release(ODatabaseDocument db){
+        if(pool != null){
+            pool.release(db);
+        } else {
+            lock.unlock();
+        }
     }
 
     @Override
     public List<TransientObject> query(Query query) throws DAOException {
-        checkDb();
-        List<TransientObject> list = new ArrayList<TransientObject>();
+        ODatabaseDocument db = acquire();
+        try{
+            return query(db, query);
+        } finally {
+            release(db);
+        }
+    }
+
+    private List<TransientObject> query(final ODatabaseDocument db, Query query) {
+        // selects by object key probe the key index instead of scanning the class
+        List<String> keys = KeyLookup.keysOf(query);
+        if(keys != null){
+            return KeyLookup.finish(query, load(db, query.getFrom(), keys));
+        }
+
+        // random selects read a range of the random index instead of the whole class
+        if(RandomSampling.canSample(query)){
+            return RandomSampling.sample(query, new RandomSampling.Sampler<TransientObject>() {
+                @Override
+                public List<TransientObject> query(Query probe) {
+                    // SQL reads and sorts the whole range before applying the limit, a probe of nothing but the range
+                    // walks the index and stops at the limit
+                    if(probe.getWhere().size() == 1) return walk(db, probe);
+                    return OrientDBDao.this.query(db, probe);
+                }
+            });
+        }
+
+        QueryResult<TransientObject> list = new QueryResult<TransientObject>();
+        boolean aggregate = Aggregation.isAggregate(query);
+        if(aggregate){
+            try{
+                Aggregation.check(query);
+            } catch (IllegalArgumentException e){
+                throw new DAOException(400, e.getMessage());
+            }
+        }
+        CompiledQuery q = compiler.compile(query);
 
         OTransaction transaction = db.getTransaction();
         transaction.begin();
         try{
-            String q = query.getSQL();
-            System.out.println("OrientDB_Query: " + q);
-
-            if(query.getAction().equals(QueryBuilder.QueryAction.SELECT)){
-                List<ODocument> objects = db.query(new OSQLSynchQuery<ODocument>(q));
-                    for(ODocument w : objects){
-                        list.add( new ODocumentWrapper(w).toObject(TransientObject.class));
+            // nothing of this type has been stored, so there is nothing to read or delete
+            if(db.getClusterIdByName(query.getFrom()) != -1){
+                if(logger.isLoggable(Level.FINE)) logger.fine("OrientDB_Query: " + q);
+
+                if(query.getAction().equals(QueryBuilder.QueryAction.SELECT)){
+                    List<ODocument> objects = db.query(new OSQLSynchQuery<ODocument>(q.getSQL()), q.getParameters());
+                        for(ODocument w : objects){
+                            if(aggregate){
+                                list.add(Aggregation.result(query, w.field(CompiledQuery.GROUP), aggregateOf(query, w)));
+                            } else {
+                                list.add(toObject(w, q));
+                            }
+                        }
+                    // a full page may have a successor, resume after the last RID
+                    if(query.getSelect() == null && query.getOrderBy().isEmpty() && query.getLimit() != null &&
+                       !objects.isEmpty() && objects.size() == query.getLimit()){
+                        list.setNextCursor(ridOf(objects.get(objects.size() - 1), q).toString());
                     }
+                }
+                if(query.getAction().equals(QueryBuilder.QueryAction.DELETE)) {
+                    Integer objects = db.command(new OCommandSQL(q.getSQL())).execute(q.getParameters());
+                    TransientObject o = new EmptyTO();
+                    o.put("count",objects);
+                    list.add(o);
+                    if(logger.isLoggable(Level.FINE)) logger.fine("Delete: " + objects);
+                }
             }
-            if(query.getAction().equals(QueryBuilder.QueryAction.DELETE)) {
-    //            List<ODocument> objects = db.command(new OCommandSQL("delete from io.divide.dao.TestObject1 RETURN BEFORE")).execute();
-                Integer objects = db.command(new OCommandSQL(q)).execute();
-                TransientObject o = new EmptyTO();
-                o.put("count",objects);
-                list.add(o);
-                System.out.println("Delete: " + objects);
-            }
-
             transaction.commit();
-            transaction.close();
-        }catch (Exception e){
+        } catch (DAOException e){
             transaction.rollback();
+            throw e;
+        } catch (RuntimeException e){
+            transaction.rollback();
+            throw new DAOException(e);
+        } finally {
             transaction.close();
         }
+        // an ungrouped aggregate always has a result, even when nothing matched or nothing of the type is stored
+        if(aggregate && query.getGroupBy() == null && list.isEmpty()){
+            list.add(Aggregation.result(query, null, null));
+        }
         return list;
     }
 
+    private static List<TransientObject> walk(ODatabaseDocument db, Query probe){
+        final List<TransientObject> results = new ArrayList<TransientObject>(probe.getLimit());
+        OIndex<?> index = OrientSchemaCache.getRandomIndex(db, probe.getFrom());
+        if(index == null) return results;
+
+        final int limit = probe.getLimit();
+        final List<String> fields = Projection.fieldsOf(probe);
+        OIndex.IndexValuesResultListener listener = new OIndex.IndexValuesResultListener() {
+            @Override
+            public boolean addResult(OIdentifiable id) {
+                ODocument doc = id.getRecord();
+                if(doc != null){
+                    TransientObject object = ODocumentWrapper.toObject(doc, TransientObject.class);
+                    results.add(fields.isEmpty() ? object : Projection.project(object, fields));
+                }
+                return results.size() < limit;
+            }
+        };
+
+        Clause range = probe.getWhere().get(0);
+        if(OPERAND.LESS_THAN.equals(OPERAND.from(range.getOperand()))){
+            index.getValuesMinor(range.getAfter(), false, listener);
+        } else {
+            index.getValuesMajor(range.getAfter(), true, listener);
+        }
+        return results;
+    }
+
+    private static Object aggregateOf(Query query, ODocument doc){
+        Object value = doc.field(CompiledQuery.VALUE);
+        if(SelectOperation.AVG.equals(query.getSelect())){
+            Number count = doc.field(CompiledQuery.COUNT);
+            if(value == null || count == null || count.longValue() == 0) return null;
+            return ((Number) value).doubleValue() / count.doubleValue();
+        }
+        return value;
+    }
+
+    private static TransientObject toObject(ODocument doc, CompiledQuery q){
+        List<String> fields = q.getFields();
+        if(fields.isEmpty()){
+            return new ODocumentWrapper(doc).toObject(TransientObject.class);
+        }
+        Object[] values = new Object[fields.size()];
+        for(int x=0;x<values.length;x++){
+            values[x] = doc.field(CompiledQuery.column(x));
+        }
+        return Projection.partial(TransientObject.class, fields, values);
+    }
+
+    // projected documents are temporary, their source RID is selected along with the fields
+    private static ORID ridOf(ODocument doc, CompiledQuery q){
+        if(q.getFields().isEmpty()){
+            return doc.getIdentity();
+        }
+        OIdentifiable rid = doc.field(CompiledQuery.RID);
+        return rid.getIdentity();
+    }
+
+    /**
+     * Reads the result page by page, at most batchSize documents are held at a time. Only plain unordered selects of
+     * whole records are paged, anything else falls back to {@link #query(Query)}.
+     */
+    @Override
+    public Cursor<TransientObject> stream(Query query) throws DAOException {
+        if(!QueryBuilder.QueryAction.SELECT.equals(query.getAction()) ||
+            query.getSelect() != null ||
+            !query.getOrderBy().isEmpty() ||
+            Projection.isProjection(query)){
+            return Cursors.query(this, query);
+        }
+        return new PagedCursor(compiler.compilePage(query, batchSize), batchSize, query.getLimit());
+    }
+
     @Override
     public Collection<TransientObject> get(String objectType, String... keys) throws DAOException {
         if(keys.length == 0) return Arrays.asList();
-//        String objectType = Query.safeTable(type);
 
-        checkDb();
-        OTransaction transaction = db.getTransaction();
-        transaction.begin();
-//        System.err.println(db.browseCluster(objectType).next());
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM " + objectType + " WHERE ");
-        for(int x=0;x<keys.length;x++){
-            sb.append("meta_data.object_key = '" + keys[x] +"'");
-            if(x+1<keys.length) sb.append( " OR ");
-        }
-        List<TransientObject> objects = new ArrayList<TransientObject>();
-        System.err.println("Query: " + sb.toString());
-        List<ODocument> list = db.query(new OSQLSynchQuery<ODocument>(sb.toString()));
-        System.err.println("Found: " + list.size());
-        for(ODocument w : list){
-            System.err.println("Get: " + w);
-            TransientObject to = ODocumentWrapper.toObject(w, TransientObject.class);
-            objects.add(to);
-        }
-        transaction.commit();
-        transaction.close();
+        ODatabaseDocument db = acquire();
+        try{
+            return load(db, objectType, Arrays.asList(keys));
+        } finally {
+            release(db);
+        }
+    }
+
+    private List<TransientObject> load(ODatabaseDocument db, String objectType, List<String> keys){
+        List<TransientObject> objects = new ArrayList<TransientObject>(keys.size());
+        for(OIdentifiable id : lookup(db, objectType, keys)){
+            ODocument doc = id.getRecord();
+            if(doc != null){
+                objects.add(ODocumentWrapper.toObject(doc, TransientObject.class));
+            }
+        }
         return objects;
     }
 
+    /**
+     * Resolves keys through the key index of objectType, at most batchSize keys per index call.
+     * @return identities of the stored records, the records themselves are not loaded.
+     */
+    private List<OIdentifiable> lookup(ODatabaseDocument db, String objectType, List<String> keys){
+        OIndex<?> index = OrientSchemaCache.getIndex(db, objectType);
+        if(index == null) return new ArrayList<OIdentifiable>(0);
+
+        List<OIdentifiable> ids = new ArrayList<OIdentifiable>(keys.size());
+        for(int from=0;from<keys.size();from+=batchSize){
+            List<String> chunk = keys.subList(from, Math.min(from + batchSize, keys.size()));
+            ids.addAll(index.getValues(chunk));
+        }
+        return ids;
+    }
+
     @Override
     public void save(TransientObject... objects) throws DAOException {
-        System.out.println("save: " + Arrays.asList(objects));
-        checkDb();
+        if(objects.length == 0) return;
 
-        OTransaction transaction = db.getTransaction();
-        transaction.begin();
-        for(TransientObject t : objects){
-            db.save(new ODocumentWrapper(t));
+        ODatabaseDocument db = acquire();
+        try{
+            // schema changes are not transactional, resolve every type before the first batch begins
+            Set<String> types = new HashSet<String>();
+            for(TransientObject t : objects){
+                if(types.add(t.getObjectType())){
+                    OrientSchemaCache.ensureClass(db, t.getObjectType());
+                }
+            }
+
+            for(int from=0;from<objects.length;from+=batchSize){
+                int to = Math.min(from + batchSize, objects.length);
+                int[] stripes = lockStripes(objects, from, to);
+                OTransaction transaction = db.getTransaction();
+                transaction.begin();
+                try{
+                    Map<String,ODocument> batch = new HashMap<String, ODocument>();
+                    for(int x=from;x<to;x++){
+                        TransientObject t = objects[x];
+                        String batchKey = t.getObjectType() + "|" + t.getObjectKey();
+                        ODocument doc = batch.get(batchKey);
+                        if(doc == null){
+                            doc = loadForUpdate(db, t);
+                            batch.put(batchKey, doc);
+                        }
+                        if(doc != null){
+                            ODocumentWrapper.copyData(doc, t);
+                        } else {
+                            doc = new ODocumentWrapper(t);
+                            batch.put(batchKey, doc);
+                        }
+                        db.save(doc);
+                    }
+                    transaction.commit();
+                } catch (RuntimeException e){
+                    transaction.rollback();
+                    throw new DAOException(e);
+                } finally {
+                    transaction.close();
+                    unlockStripes(stripes);
+                }
+            }
+        } finally {
+            release(db);
         }
-        transaction.commit();
-        transaction.close();
     }
 
-    @Override
-    public void delete(TransientObject... objects) throws DAOException {
-        checkDb();
+    /**
+     * @return the stored document with the same object key, or null if t has not been stored yet.
+     */
+    private ODocument loadForUpdate(ODatabaseDocument db, TransientObject t){
+        OIndex<?> index = OrientSchemaCache.getIndex(db, t.getObjectType());
+        if(index == null) return null;
 
-        if(objects.length == 0) return;
+        OIdentifiable existing = (OIdentifiable) index.get(t.getObjectKey());
+        if(existing == null) return null;
+
+        return db.load(existing.getIdentity());
+    }
+
+    // stripes are always locked in ascending order so concurrent batches can not deadlock
+    private int[] lockStripes(TransientObject[] objects, int from, int to){
+        Set<Integer> set = new TreeSet<Integer>();
+        for(int x=from;x<to;x++){
+            set.add(stripeFor(objects[x].getObjectKey()));
+        }
+        int[] stripes = new int[set.size()];
+        int i = 0;
+        for(Integer stripe : set){
+            stripes[i++] = stripe;
+        }
+        for(int stripe : stripes){
+            keyLocks[stripe].lock();
+        }
+        return stripes;
+    }
 
-        QueryBuilder.WhereMoreBuilder builder = new QueryBuilder()
-                .select()
-                .from(objects[0].getClass())
-                .where(TransientObject.OBJECT_KEY, OPERAND.EQ, objects[0].getObjectKey());
+    private void unlockStripes(int[] stripes){
+        for(int x=stripes.length-1;x>=0;x--){
+            keyLocks[stripes[x]].unlock();
+        }
+    }
 
-        for(int x=1;x<objects.length;x++){
-            builder.or(TransientObject.OBJECT_KEY, OPERAND.EQ, objects[x].getObjectKey());
+    private static ReentrantLock[] newLocks(int count){
+        ReentrantLock[] locks = new ReentrantLock[count];
+        for(int x=0;x<count;x++){
+            locks[x] = new ReentrantLock();
         }
+        return locks;
+    }
+
+    private int stripeFor(String key){
+        int h = key == null ? 0 : key.hashCode();
+        h ^= (h >>> 16);
+        return h & (keyLocks.length - 1);
+    }
 
-        Query q = builder.build();
+    @Override
+    public void delete(TransientObject... objects) throws DAOException {
+        if(objects.length == 0) return;
 
-//        StringBuilder sb = new StringBuilder();
-//        sb.append("SELECT * FROM " + objects[0].getClass().getName() + " WHERE ");
-//        for(int x=0;x<objects.length;x++){
-//            sb.append("meta_data.object_key = '" + objects[x].getObjectKey() +"'");
-//            if(x+1<objects.length)
-//                sb.append( " OR ");
-//        }
+        Map<String,List<String>> keysByType = keysByType(objects);
 
+        ODatabaseDocument db = acquire();
+        try{
+            List<ORID> rids = new ArrayList<ORID>(objects.length);
+            for(Map.Entry<String,List<String>> entry : keysByType.entrySet()){
+                for(OIdentifiable id : lookup(db, entry.getKey(), entry.getValue())){
+                    rids.add(id.getIdentity());
+                }
+            }
 
-        System.out.println("Delete: " + q.getSQL());
-        List<ODocument> list = db.query(new OSQLSynchQuery<ODocument>(q.getSQL()));
-        for(ODocument w : list){
-            System.out.println("Deleting: " + w);
-            w.delete();
+            for(int from=0;from<rids.size();from+=batchSize){
+                int to = Math.min(from + batchSize, rids.size());
+                OTransaction transaction = db.getTransaction();
+                transaction.begin();
+                try{
+                    for(int x=from;x<to;x++){
+                        db.delete(rids.get(x));
+                    }
+                    transaction.commit();
+                } catch (RuntimeException e){
+                    transaction.rollback();
+                    throw new DAOException(e);
+                } finally {
+                    transaction.close();
+                }
+            }
+        } finally {
+            release(db);
         }
     }
 
     @Override
     public boolean exists(TransientObject... objects) {
-        checkDb();
-
         if(objects.length == 0) return false;
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM " + Query.safeTable(objects[0].getClass()) + " WHERE ");
-        for(int x=0;x<objects.length;x++){
-            sb.append("meta_data.object_key = '" + objects[x].getObjectKey() +"'");
-            if(x+1<objects.length)
-                sb.append( " OR ");
+        Map<String,List<String>> keysByType = keysByType(objects);
+
+        ODatabaseDocument db = acquire();
+        try{
+            for(Map.Entry<String,List<String>> entry : keysByType.entrySet()){
+                List<String> keys = new ArrayList<String>(new LinkedHashSet<String>(entry.getValue()));
+                if(lookup(db, entry.getKey(), keys).size() != keys.size()){
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            release(db);
+        }
+    }
+
+    private static Map<String,List<String>> keysByType(TransientObject... objects){
+        Map<String,List<String>> keysByType = new HashMap<String, List<String>>();
+        for(TransientObject t : objects){
+            List<String> keys = keysByType.get(t.getObjectType());
+            if(keys == null){
+                keys = new ArrayList<String>();
+                keysByType.put(t.getObjectType(), keys);
+            }
+            keys.add(t.getObjectKey());
         }
-        List<ODocument> list = db.query(new OSQLSynchQuery<ODocument>(sb.toString()));
-        return objects.length == list.size();
+        return keysByType;
     }
 
     @Override
     public int count(String objectType) {
-        checkDb();
+        ODatabaseDocument db = acquire();
         try {
             return (int) db.countClass(objectType);
         }catch (java.lang.IllegalArgumentException e){
             return 0;
+        } finally {
+            release(db);
+        }
+    }
+
+    /**
+     * OrientDB has no sequences, each one is a document of {@link #SEQUENCE_CLASS} holding its next value. Reservations
+     * made through this dao are serialized, reservations made by other servers conflict on the document version and
+     * are retried.
+     */
+    @Override
+    public long allocate(String sequence, int size, long initialValue) throws DAOException {
+        if(size < 1) throw new IllegalArgumentException("size must be positive: " + size);
+
+        ODatabaseDocument db = acquire();
+        ReentrantLock keyLock = keyLocks[stripeFor(SEQUENCE_CLASS + "|" + sequence)];
+        keyLock.lock();
+        try{
+            OIndex<?> index = OrientSchemaCache.ensureSequenceClass(db, SEQUENCE_CLASS);
+            for(int attempt=1;;attempt++){
+                OTransaction transaction = db.getTransaction();
+                transaction.begin();
+                try{
+                    ODocument doc;
+                    OIdentifiable existing = (OIdentifiable) index.get(sequence);
+                    if(existing == null){
+                        doc = new ODocument(SEQUENCE_CLASS);
+                        doc.field(OrientSchemaCache.SEQUENCE_NAME, sequence);
+                        doc.field(OrientSchemaCache.SEQUENCE_NEXT, initialValue);
+                    } else {
+                        doc = db.load(existing.getIdentity());
+                    }
+                    long first = ((Number) doc.field(OrientSchemaCache.SEQUENCE_NEXT)).longValue();
+                    doc.field(OrientSchemaCache.SEQUENCE_NEXT, first + size);
+                    db.save(doc);
+                    transaction.commit();
+                    return first;
+                } catch (OConcurrentModificationException e){
+                    transaction.rollback();
+                    if(attempt >= SEQUENCE_RETRIES) throw new DAOException(e);
+                } catch (ORecordDuplicatedException e){
+                    transaction.rollback();
+                    if(attempt >= SEQUENCE_RETRIES) throw new DAOException(e);
+                } catch (RuntimeException e){
+                    transaction.rollback();
+                    throw new DAOException(e);
+                } finally {
+                    transaction.close();
+                }
+            }
+        } finally {
+            keyLock.unlock();
+            release(db);
+        }
+    }
+
+    /**
+     * OrientDB has no async API, async calls run on an executor with one thread per pooled connection, or a single
+     * thread when all calls share one handle, so no more calls run than can hold a connection.
+     */
+    private synchronized ExecutorAsyncDAO<TransientObject,TransientObject> async(){
+        if(closed) throw new DAOException(503, "OrientDBDao is closed");
+        if(async == null){
+            int threads = (pool == null) ? 1 : pool.getMaxSize();
+            async = new ExecutorAsyncDAO<TransientObject, TransientObject>(this, threads, ExecutorAsyncDAO.DEFAULT_QUEUE_CAPACITY);
+        }
+        return async;
+    }
+
+    /**
+     * Stops the async executor, async calls already submitted still complete, later ones are rejected. A pool created
+     * by this dao is closed as well, a pool or database handle passed in is left to its owner.
+     */
+    @Override
+    public void close(){
+        ExecutorAsyncDAO<TransientObject,TransientObject> executor;
+        synchronized (this){
+            if(closed) return;
+            closed = true;
+            executor = async;
         }
+        if(executor != null) executor.shutdown();
+        if(ownsPool) pool.close();
+    }
+
+    @Override
+    public Future<List<TransientObject>> queryAsync(Query query) throws DAOException {
+        return async().queryAsync(query);
+    }
+
+    @Override
+    public Future<Collection<TransientObject>> getAsync(String objectType, String... keys) throws DAOException {
+        return async().getAsync(objectType, keys);
+    }
+
+    @Override
+    public Future<Void> saveAsync(TransientObject... objects) throws DAOException {
+        return async().saveAsync(objects);
+    }
+
+    @Override
+    public Future<Void> deleteAsync(TransientObject... objects) throws DAOException {
+        return async().deleteAsync(objects);
+    }
+
+    @Override
+    public Future<Integer> countAsync(String objectType) throws DAOException {
+        return async().countAsync(objectType);
     }
 
     @Override
@@ -202,6 +662,70 @@ public class OrientDBDao implements ServerDAO {
         return null;
     }
 
+    private class PagedCursor implements Cursor<TransientObject> {
+        private final OSQLSynchQuery<ODocument> request;
+        private final Object[] parameters;
+        private final int pageSize;
+        private Integer remaining;
+        private Iterator<TransientObject> page = Collections.<TransientObject>emptyList().iterator();
+        private boolean exhausted = false;
+        private boolean closed = false;
+
+        private PagedCursor(CompiledQuery q, int pageSize, Integer limit){
+            // OSQLSynchQuery remembers the last returned RID, re-executing it returns the next page. That state is why
+            // each cursor needs its own request, OrientDB parses the SQL again on every page either way
+            this.request = new OSQLSynchQuery<ODocument>(q.getSQL());
+            this.parameters = q.getParameters();
+            this.pageSize = pageSize;
+            this.remaining = limit;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(closed || (remaining != null && remaining <= 0)) return false;
+            while(!page.hasNext() && !exhausted){
+                fetch();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public TransientObject next() {
+            if(!hasNext()) throw new NoSuchElementException();
+            if(remaining != null) remaining--;
+            return page.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            page = Collections.<TransientObject>emptyList().iterator();
+        }
+
+        private void fetch(){
+            ODatabaseDocument db = acquire();
+            try{
+                List<ODocument> docs = db.query(request, parameters);
+                List<TransientObject> objects = new ArrayList<TransientObject>(docs.size());
+                for(ODocument doc : docs){
+                    objects.add(ODocumentWrapper.toObject(doc, TransientObject.class));
+                }
+                exhausted = docs.size() < pageSize;
+                page = objects.iterator();
+            } catch (RuntimeException e){
+                close();
+                throw new DAOException(e);
+            } finally {
+                release(db);
+            }
+        }
+    }
+
     private static class EmptyTO extends TransientObject{
 
         protected EmptyTO() {
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.orientdb;
+
+import com.orientechnologies.orient.core.id.ORecordId;
+import io.divide.shared.server.DAO.DAOException;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Clause;
+import io.divide.shared.transitory.query.OPERAND;
+import io.divide.shared.transitory.query.OrderBy;
+import io.divide.shared.transitory.query.Projection;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import io.divide.shared.transitory.query.RandomSampling;
+import io.divide.shared.transitory.query.SelectOperation;
+import io.divide.shared.util.ConcurrentLruCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles a {@link Query} into a parameterized OrientDB statement. Clause values are bound as positional parameters
+ * instead of being quoted into the SQL text, so queries which only differ in their values share one cached template.
+ * Only the SQL text is cached: OrientDB 1.6 creates and parses a new command executor on every execution, whatever
+ * request object it is given, and an {@link com.orientechnologies.orient.core.sql.query.OSQLSynchQuery} keeps the
+ * results and page position of its last execution, so requests are neither shared nor pooled.
+ * A query {@link Query#getAfter() after} cursor is the RID of the last record of the previous page and becomes a
+ * {@code @rid > ?} range, records are scanned in RID order so any page costs the same as the first. Ordered queries
+ * are not scanned in RID order and can not be resumed that way. Projections select each field under a positional
+ * alias, see {@link CompiledQuery#column(int)}, together with the RID of the record. Aggregates are computed by
+ * OrientDB and selected as {@code value} and {@code grp}. IN binds its values as a single collection parameter, so
+ * the template does not depend on how many values are looked up.
+ */
+public class OrientQueryCompiler {
+
+    public static final int DEFAULT_CACHE_SIZE = 512;
+
+    private static final Pattern FIELD = Pattern.compile("[A-Za-z0-9_]+(\\.[A-Za-z0-9_]+)*");
+    private static final Pattern CLASS = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*"); // nested classes contain $
+
+    private final ConcurrentLruCache<String,String> templates;
+
+    public OrientQueryCompiler(){
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public OrientQueryCompiler(int cacheSize){
+        this.templates = new ConcurrentLruCache<String, String>(cacheSize);
+    }
+
+    public CompiledQuery compile(Query query){
+        return compile(query, query.getLimit());
+    }
+
+    /**
+     * Compiles query with pageSize in place of its own limit, the statement is meant to be re-executed to read
+     * the result page by page.
+     */
+    public CompiledQuery compilePage(Query query, int pageSize){
+        return compile(query, pageSize);
+    }
+
+    private CompiledQuery compile(Query query, Integer limit){
+        if(!QueryBuilder.QueryAction.SELECT.equals(query.getAction()) &&
+           !QueryBuilder.QueryAction.DELETE.equals(query.getAction())){
+            throw new DAOException(501, "Unsupported query action: " + query.getAction());
+        }
+        Clause[] clauses = clauses(query.getWhere());
+        validate(query, clauses);
+        boolean after = query.getAfter() != null;
+        if(after && !query.getOrderBy().isEmpty()){
+            throw new DAOException(400, "after is not supported for ordered queries");
+        }
+
+        List<Object> parameters = new ArrayList<Object>(clauses.length + 1);
+        for(Clause c : clauses){
+            bind(parameters, c);
+        }
+        if(after){
+            parameters.add(ridOf(query.getAfter()));
+        }
+
+        List<String> fields = Projection.fieldsOf(query);
+        String shape = shapeOf(query, clauses, limit);
+        String sql = templates.get(shape);
+        if(sql == null){
+            sql = buildTemplate(query, clauses, fields, limit);
+            templates.put(shape, sql);
+        }
+        return new CompiledQuery(sql, parameters.toArray(), fields);
+    }
+
+    public int cacheSize(){
+        return templates.size();
+    }
+
+    public double hitRatio(){
+        return templates.hitRatio();
+    }
+
+    // everything pasted into the statement comes from the client, it is checked before a template is built or cached
+    private static void validate(Query query, Clause[] clauses){
+        checkClass(query.getFrom());
+        for(int x=0;x<clauses.length;x++){
+            Clause c = clauses[x];
+            if(c == null){
+                throw new DAOException(400, "Missing clause: " + x);
+            }
+            checkField(c.getBefore());
+            if(OPERAND.from(c.getOperand()) == null){
+                throw new DAOException(400, "Invalid operand: " + c.getOperand());
+            }
+            if(x > 0) conditionalOf(c);
+        }
+    }
+
+    // meta data is stored as strings, user data values are bound with their own type so numbers compare as numbers.
+    // IN binds its values as one collection parameter, BETWEEN binds both bounds.
+    private static void bind(List<Object> parameters, Clause clause){
+        boolean meta = clause.getBefore().startsWith(TransientObject.META_DATA + ".");
+        OPERAND operand = OPERAND.from(clause.getOperand());
+        if(OPERAND.IN.equals(operand)){
+            parameters.add(meta ? new ArrayList<Object>(clause.getAfterValues()) : clause.getValues());
+        } else if(OPERAND.BETWEEN.equals(operand)){
+            parameters.addAll(meta ? new ArrayList<Object>(clause.getAfterValues()) : clause.getValues());
+        } else {
+            parameters.add(meta ? clause.getAfter() : clause.getValue());
+        }
+    }
+
+    private static String conditionOf(Clause clause){
+        OPERAND operand = OPERAND.from(clause.getOperand());
+        if(operand == null){
+            throw new DAOException(400, "Invalid operand: " + clause.getOperand());
+        }
+        switch (operand){
+            case NOT_EQ: return " <> ?";
+            case IN: return " IN ?";
+            case BETWEEN: return " BETWEEN ? AND ?";
+            default: return " " + clause.getOperand() + " ?";
+        }
+    }
+
+    private static ORecordId ridOf(String cursor){
+        try{
+            ORecordId rid = new ORecordId(cursor);
+            if(rid.isValid()) return rid;
+        } catch (IllegalArgumentException e){
+            // fall through
+        }
+        throw new DAOException(400, "Invalid cursor: " + cursor);
+    }
+
+    private static Clause[] clauses(Map<Integer,Clause> where){
+        Clause[] clauses = new Clause[where.size()];
+        for(int x=0;x<clauses.length;x++){
+            clauses[x] = where.get(x);
+        }
+        return clauses;
+    }
+
+    private static String shapeOf(Query query, Clause[] clauses, Integer limit){
+        StringBuilder sb = new StringBuilder();
+        sb.append(query.getAction()).append('|')
+          .append(query.getFrom()).append('|')
+          .append(query.getSelect()).append('|')
+          .append(query.getAggregate()).append('|')
+          .append(query.getGroupBy()).append('|')
+          .append(limit).append('|')
+          .append(query.getAfter() != null).append('|')
+          .append(query.getOrderBy()).append('|')
+          .append(query.getFields());
+        for(Clause c : clauses){
+            sb.append('|').append(c.getPreOperator())
+              .append(':').append(c.getBefore())
+              .append(':').append(c.getOperand());
+        }
+        return sb.toString();
+    }
+
+    private static String buildTemplate(Query query, Clause[] clauses, List<String> fields, Integer limit){
+        StringBuilder sb = new StringBuilder();
+        switch (query.getAction()){
+            case SELECT:{
+                if(query.getSelect() == null){
+                    sb.append("SELECT ");
+                    appendProjection(sb, fields, query.getOrderBy());
+                    sb.append(" FROM ").append(query.getFrom());
+                    appendWhere(sb, clauses, query.getAfter() != null);
+                    appendOrderBy(sb, query.getOrderBy(), fields);
+                    appendLimit(sb, limit);
+                } else {
+                    sb.append("SELECT ");
+                    if(SelectOperation.COUNT.equals(query.getSelect())){
+                        sb.append("count(*)");
+                    } else if(SelectOperation.AVG.equals(query.getSelect())){
+                        // avg() keeps the field type and truncates integers, it is divided by the caller instead
+                        String field = checkField(query.getAggregate());
+                        sb.append("count(").append(field).append(") AS ").append(CompiledQuery.COUNT)
+                          .append(", sum(").append(field).append(')');
+                    } else {
+                        sb.append(query.getSelect().name().toLowerCase())
+                          .append('(').append(checkField(query.getAggregate())).append(')');
+                    }
+                    sb.append(" AS ").append(CompiledQuery.VALUE);
+                    if(query.getGroupBy() != null){
+                        sb.append(", ").append(checkField(query.getGroupBy())).append(" AS ").append(CompiledQuery.GROUP);
+                    }
+                    sb.append(" FROM ").append(query.getFrom());
+                    appendWhere(sb, clauses, query.getAfter() != null);
+                    if(query.getGroupBy() != null){
+                        sb.append(" GROUP BY ").append(query.getGroupBy());
+                        appendLimit(sb, limit);
+                    }
+                }
+            }break;
+            case DELETE:{
+                sb.append("DELETE FROM ").append(query.getFrom());
+                appendWhere(sb, clauses, query.getAfter() != null);
+                appendLimit(sb, limit);
+            }break;
+        }
+        return sb.toString();
+    }
+
+    private static void appendWhere(StringBuilder sb, Clause[] clauses, boolean after){
+        if(clauses.length == 0 && !after) return;
+        sb.append(" WHERE ");
+        if(clauses.length > 0 && after) sb.append('(');
+        for(int x=0;x<clauses.length;x++){
+            Clause c = clauses[x];
+            if(x > 0){
+                sb.append(' ').append(conditionalOf(c)).append(' ');
+            }
+            sb.append(columnOf(c.getBefore())).append(conditionOf(c));
+        }
+        if(after){
+            if(clauses.length > 0) sb.append(") AND ");
+            sb.append("@rid > ?");
+        }
+    }
+
+    private static void appendProjection(StringBuilder sb, List<String> fields, List<OrderBy> orderBy){
+        if(fields.isEmpty()){
+            sb.append('*');
+            return;
+        }
+        sb.append("@rid AS ").append(CompiledQuery.RID);
+        for(int x=0;x<fields.size();x++){
+            sb.append(", ").append(checkField(fields.get(x))).append(" AS ").append(CompiledQuery.column(x));
+        }
+        // projected rows are sorted, so order fields must be selected as well
+        for(int x=0;x<orderBy.size();x++){
+            String field = orderBy.get(x).getField();
+            if(!fields.contains(field)){
+                sb.append(", ").append(columnOf(checkField(field))).append(" AS ").append(sortColumn(x));
+            }
+        }
+    }
+
+    private static void appendOrderBy(StringBuilder sb, List<OrderBy> orderBy, List<String> fields){
+        for(int x=0;x<orderBy.size();x++){
+            OrderBy o = orderBy.get(x);
+            String field = checkField(o.getField());
+            String column = columnOf(field);
+            if(!fields.isEmpty()){
+                int projected = fields.indexOf(field);
+                column = projected < 0 ? sortColumn(x) : CompiledQuery.column(projected);
+            }
+            sb.append(x == 0 ? " ORDER BY " : ", ")
+              .append(column)
+              .append(o.isAscending() ? " ASC" : " DESC");
+        }
+    }
+
+    private static String sortColumn(int order){
+        return "s" + order;
+    }
+
+    // field names can not be bound as parameters
+    private static String checkField(String field){
+        if(field == null || !FIELD.matcher(field).matches()){
+            throw new DAOException(400, "Invalid field: " + field);
+        }
+        return field;
+    }
+
+    private static String checkClass(String className){
+        if(className == null || !CLASS.matcher(className).matches()){
+            throw new DAOException(400, "Invalid class: " + className);
+        }
+        return className;
+    }
+
+    private static OPERAND.Conditional conditionalOf(Clause clause){
+        OPERAND.Conditional conditional = OPERAND.Conditional.from(clause.getPreOperator());
+        if(conditional == null){
+            throw new DAOException(400, "Invalid conditional: " + clause.getPreOperator());
+        }
+        return conditional;
+    }
+
+    // the random index is read from its indexed copy instead of the meta data map
+    private static String columnOf(String field){
+        return RandomSampling.FIELD.equals(field) ? ODocumentWrapper.randomIndexAttribute : field;
+    }
+
+    private static void appendLimit(StringBuilder sb, Integer limit){
+        if(limit != null){
+            sb.append(" LIMIT ").append(limit);
+        }
+    }
+
+    public static final class CompiledQuery {
+        static final String RID = "rid";
+        static final String VALUE = "value";
+        static final String GROUP = "grp";
+        static final String COUNT = "n";
+
+        private final String sql;
+        private final Object[] parameters;
+        private final List<String> fields;
+
+        CompiledQuery(String sql, Object[] parameters, List<String> fields){
+            this.sql = sql;
+            this.parameters = parameters;
+            this.fields = fields;
+        }
+
+        static String column(int field){
+            return "p" + field;
+        }
+
+        public String getSQL(){
+            return sql;
+        }
+
+        public Object[] getParameters(){
+            return parameters;
+        }
+
+        /**
+         * @return qualified fields of a projection in column order, empty when whole records are selected.
+         */
+        public List<String> getFields(){
+            return fields;
+        }
+
+        @Override
+        public String toString() {
+            return sql + " " + Arrays.toString(parameters);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.orientdb;
+
+import io.divide.shared.util.ReflectionUtils;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.index.OIndexFactory;
+import com.orientechnologies.orient.core.index.OIndexes;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OSchema;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.storage.OStorage;
+
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static io.divide.dao.orientdb.OIndexHighLander.ID;
+
+/**
+ * Process wide cache of the class, cluster and index metadata for each stored object type. The schema is only
+ * inspected, and created if missing, the first time a type is written to a given storage.
+ */
+public final class OrientSchemaCache {
+
+    private static final ConcurrentMap<String,TypeMetadata> types = new ConcurrentHashMap<String, TypeMetadata>();
+    private static volatile boolean factoryRegistered = false;
+
+    static final String SEQUENCE_NAME = "name";
+    static final String SEQUENCE_NEXT = "next";
+
+    private OrientSchemaCache(){}
+
+    /**
+     * @return metadata for className, creating the class and its {@link OIndexHighLander} index if they do not exist.
+     */
+    public static TypeMetadata ensureClass(ODatabaseRecord db, String className){
+        String cacheKey = db.getURL() + "|" + className;
+        OStorage storage = db.getStorage();
+
+        TypeMetadata metadata = types.get(cacheKey);
+        if(metadata != null && metadata.storage.get() == storage){
+            return metadata;
+        }
+
+        synchronized (OrientSchemaCache.class){
+            metadata = types.get(cacheKey);
+            if(metadata != null && metadata.storage.get() == storage){
+                return metadata;
+            }
+
+            registerIndexFactory();
+
+            if(db.getClusterIdByName(className) == -1){
+                OSchema schema = db.getMetadata().getSchema();
+                OClass object = schema.getOrCreateClass(className);
+                object.createProperty(ODocumentWrapper.indexAttribute, OType.STRING)
+                        .setMandatory(true)
+                        .setNotNull(true)
+                        .setReadonly(true);
+                object.createIndex(className, ID, ODocumentWrapper.indexAttribute);
+                schema.save();
+            }
+            ensureRandomIndex(db, className);
+
+            metadata = new TypeMetadata(storage, className, db.getClusterIdByName(className));
+            types.put(cacheKey, metadata);
+            return metadata;
+        }
+    }
+
+    // classes created before random sampling get the index on first use, their documents are indexed once re-saved
+    private static void ensureRandomIndex(ODatabaseRecord db, String className){
+        String indexName = className + "." + ODocumentWrapper.randomIndexAttribute;
+        if(db.getMetadata().getIndexManager().getIndex(indexName) != null) return;
+
+        OSchema schema = db.getMetadata().getSchema();
+        OClass object = schema.getClass(className);
+        if(object.getProperty(ODocumentWrapper.randomIndexAttribute) == null){
+            object.createProperty(ODocumentWrapper.randomIndexAttribute, OType.STRING);
+        }
+        object.createIndex(indexName, OClass.INDEX_TYPE.NOTUNIQUE, ODocumentWrapper.randomIndexAttribute);
+        schema.save();
+    }
+
+    /**
+     * @return the key index of className, or null if nothing of that type has been stored.
+     */
+    public static OIndex<?> getIndex(ODatabaseRecord db, String className){
+        if(db.getClusterIdByName(className) == -1) return null;
+        return db.getMetadata().getIndexManager().getIndex(className);
+    }
+
+    /**
+     * @return the random index of className, or null if nothing of that type has been stored.
+     */
+    public static OIndex<?> getRandomIndex(ODatabaseRecord db, String className){
+        if(db.getClusterIdByName(className) == -1) return null;
+        return db.getMetadata().getIndexManager().getIndex(className + "." + ODocumentWrapper.randomIndexAttribute);
+    }
+
+    /**
+     * @return the unique name index of the sequence class, creating the class if it does not exist.
+     */
+    public static OIndex<?> ensureSequenceClass(ODatabaseRecord db, String className){
+        if(db.getClusterIdByName(className) == -1){
+            synchronized (OrientSchemaCache.class){
+                if(db.getClusterIdByName(className) == -1){
+                    OSchema schema = db.getMetadata().getSchema();
+                    OClass sequence = schema.getOrCreateClass(className);
+                    sequence.createProperty(SEQUENCE_NAME, OType.STRING)
+                            .setMandatory(true)
+                            .setNotNull(true);
+                    sequence.createProperty(SEQUENCE_NEXT, OType.LONG);
+                    sequence.createIndex(className + "." + SEQUENCE_NAME, OClass.INDEX_TYPE.UNIQUE, SEQUENCE_NAME);
+                    schema.save();
+                }
+            }
+        }
+        return db.getMetadata().getIndexManager().getIndex(className + "." + SEQUENCE_NAME);
+    }
+
+    public static void clear(){
+        types.clear();
+    }
+
+    // dirty unreliable hack to add HighLanderIndexFactory to the list.
+    private static void registerIndexFactory(){
+        if(factoryRegistered) return;
+        if(!OIndexes.getIndexTypes().contains(ID))
+        try {
+            HighLanderIndexFactory f = new HighLanderIndexFactory();
+            Set<OIndexFactory> set = new HashSet<OIndexFactory>();
+            Iterator<OIndexFactory> ite = OIndexes.getAllFactories();
+            while (ite.hasNext()) {
+                set.add(ite.next());
+            }
+            set.add(f);
+            ReflectionUtils.setFinalStatic(ReflectionUtils.getClassField(OIndexes.class, "FACTORIES"), set);
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to create OrientDBWrapper");
+        }
+        factoryRegistered = true;
+    }
+
+    public static final class TypeMetadata {
+        private final WeakReference<OStorage> storage;
+        private final String className;
+        private final int clusterId;
+
+        private TypeMetadata(OStorage storage, String className, int clusterId){
+            this.storage = new WeakReference<OStorage>(storage);
+            this.className = className;
+            this.clusterId = clusterId;
+        }
+
+        public String getClassName(){
+            return className;
+        }
+
+        public int getClusterId(){
+            return clusterId;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.orientdb;
+
+import io.divide.dao.ServerDAO;
+import io.divide.dao.TestObject1;
+import io.divide.shared.transitory.query.Query;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OrientConnectionPoolTest {
+
+    OrientConnectionPool pool;
+
+    @Before
+    public void setUp(){
+        pool = new OrientConnectionPool("memory:pooltest", "admin", "admin", 2, 5, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown(){
+        new ODatabaseDocumentTx("memory:pooltest").open("admin","admin").drop();
+        pool.close();
+    }
+
+    @Test
+    public void nestedAcquireReusesHandle(){
+        ODatabaseDocument outer = pool.acquire();
+        ODatabaseDocument inner = pool.acquire();
+        assertSame(outer, inner);
+        assertEquals(1, pool.getActiveCount());
+
+        pool.release(inner);
+        assertEquals(1, pool.getActiveCount());
+        pool.release(outer);
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getAcquireCount());
+    }
+
+    @Test
+    public void acquireTimesOutWhenExhausted() throws Exception {
+        final OrientConnectionPool pool = new OrientConnectionPool("memory:pooltest", "admin", "admin", 2, 100, TimeUnit.MILLISECONDS);
+        final CountDownLatch held = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        for(int x=0;x<2;x++){
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    ODatabaseDocument db = pool.acquire();
+                    held.countDown();
+                    try {
+                        done.await();
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        pool.release(db);
+                    }
+                }
+            });
+        }
+        assertTrue(held.await(10, TimeUnit.SECONDS));
+
+        try {
+            pool.acquire();
+            fail("expected timeout");
+        } catch (ServerDAO.DAOException e){
+            assertEquals(503, e.getStatusCode());
+            assertEquals(1, pool.getTimeoutCount());
+        } finally {
+            done.countDown();
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    public void pooledDaoFromManyThreads() throws Exception {
+        final OrientDBDao dao = new OrientDBDao(pool);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Future<?>[] futures = new Future<?>[20];
+        for(int x=0;x<futures.length;x++){
+            final int n = x;
+            futures[x] = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    dao.save(new TestObject1("key", "value" + n));
+                }
+            });
+        }
+        for(Future<?> f : futures){
+            f.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(futures.length, dao.count(Query.safeTable(TestObject1.class)));
+        assertEquals(0, pool.getActiveCount());
+    }
+
+}
@@ -18,13 +18,37 @@ package io.divide.dao.orientdb;
 
 import io.divide.dao.DAOTest;
 import io.divide.dao.Keyable;
+import io.divide.dao.TestObject1;
+import io.divide.dao.TestObject2;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.DAO;
 import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Count;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import io.divide.shared.transitory.query.SelectOperation;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class OrientDBDaoTest extends DAOTest<OrientDBDaoTest.KeyedODocumentWrapper> {
 
@@ -64,6 +88,149 @@ public class OrientDBDaoTest extends DAOTest<OrientDBDaoTest.KeyedODocumentWrapp
         db.close();
     }
 
+    @Test
+    public void testBatchedSaveAndDelete() throws Exception {
+        OrientDBDao orientDao = (OrientDBDao) dao;
+        orientDao.setBatchSize(3);
+
+        TestObject1[] objects = new TestObject1[7];
+        for(int x=0;x<objects.length;x++){
+            objects[x] = new TestObject1("key", "value" + x);
+        }
+        orientDao.save(objects);
+        assertEquals(objects.length, orientDao.count(Query.safeTable(TestObject1.class)));
+
+        String[] keys = new String[objects.length];
+        for(int x=0;x<objects.length;x++){
+            keys[x] = objects[x].getObjectKey();
+        }
+        assertEquals(objects.length, orientDao.get(Query.safeTable(TestObject1.class), keys).size());
+        assertTrue(orientDao.exists(objects));
+
+        Cursor<TransientObject> cursor = orientDao.stream(new QueryBuilder().select().from(TestObject1.class).build());
+        Set<String> streamed = new HashSet<String>();
+        while(cursor.hasNext()){
+            streamed.add(cursor.next().getObjectKey());
+        }
+        cursor.close();
+        assertEquals(new HashSet<String>(Arrays.asList(keys)), streamed);
+
+        orientDao.delete(objects[0], objects[3], objects[6], new TestObject2());
+        assertEquals(objects.length - 3, orientDao.count(Query.safeTable(TestObject1.class)));
+        assertFalse(orientDao.exists(objects[0]));
+        assertTrue(orientDao.exists(objects[1]));
+    }
+
+    @Test
+    public void testAggregateOfUnstoredType() throws Exception {
+        List<TransientObject> results = dao.query(
+                new QueryBuilder().select(SelectOperation.COUNT).from(TestObject2.class).build());
+        assertEquals(1, results.size());
+        assertEquals(0, ((Count) results.get(0)).getCount());
+        assertTrue(dao.query(new QueryBuilder().select().from(TestObject2.class).build()).isEmpty());
+    }
+
+    @Test
+    public void testFailedQueryIsReported() throws Exception {
+        dao.save(new TestObject1("key", "value"));
+        db.close();
+        try{
+            dao.query(new QueryBuilder().select(SelectOperation.COUNT).from(TestObject1.class).build());
+            fail("a failed count must not look like an empty one");
+        } catch (DAO.DAOException e){
+            assertEquals(500, e.getStatusCode());
+        } finally {
+            db.open("admin","admin");
+        }
+    }
+
+    @Test
+    public void testConcurrentCallsOnSharedHandle() throws Exception {
+        final OrientDBDao orientDao = (OrientDBDao) dao;
+        assertTrue(orientDao.isThreadSafe());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for(int x=0;x<20;x++){
+            final int n = x;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    orientDao.save(new TestObject1("key" + n, "value"));
+                    orientDao.query(new QueryBuilder().select().from(TestObject1.class).build());
+                    return null;
+                }
+            }));
+        }
+        for(Future<?> future : futures) future.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertEquals(20, orientDao.count(Query.safeTable(TestObject1.class)));
+    }
+
+    @Test
+    public void testConcurrentIndexPutsOfOneKey() throws Exception {
+        final List<OIdentifiable> records = new ArrayList<OIdentifiable>();
+        for(int x=0;x<20;x++){
+            TestObject1 object = new TestObject1("key", "value" + x);
+            dao.save(object);
+            records.add((OIdentifiable) OrientSchemaCache.getIndex(db, object.getObjectType()).get(object.getObjectKey()));
+        }
+        final String className = Query.safeTable(TestObject1.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for(final OIdentifiable record : records){
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    ODatabaseDocument handle = new ODatabaseDocumentTx(OrientDBDao.DEFAULT_CONFIG).open("admin", "admin");
+                    try{
+                        OrientSchemaCache.getIndex(handle, className).put("shared", record);
+                    } finally {
+                        handle.close();
+                    }
+                    return null;
+                }
+            }));
+        }
+        for(Future<?> future : futures) future.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // every put of the shared key deleted the record it displaced, exactly one survives
+        assertEquals(1, dao.count(className));
+    }
+
+    @Test
+    public void testCloseStopsAsync() throws Exception {
+        OrientDBDao orientDao = (OrientDBDao) dao;
+        orientDao.saveAsync(new TestObject1("key", "value")).get();
+        orientDao.close();
+        orientDao.close();
+        try{
+            orientDao.saveAsync(new TestObject1("key", "other"));
+            fail("a closed dao must not take async calls");
+        } catch (DAO.DAOException e){
+            assertEquals(503, e.getStatusCode());
+        }
+        assertEquals(1, orientDao.count(Query.safeTable(TestObject1.class)));
+    }
+
+    @Test
+    public void testSaveUpdatesInPlace() throws Exception {
+        TestObject1 object = new TestObject1("key", "first");
+        dao.save(object);
+        OIdentifiable before = (OIdentifiable) OrientSchemaCache.getIndex(db, object.getObjectType()).get(object.getObjectKey());
+
+        object.put("key", "second");
+        dao.save(object);
+        OIdentifiable after = (OIdentifiable) OrientSchemaCache.getIndex(db, object.getObjectType()).get(object.getObjectKey());
+
+        assertEquals(before.getIdentity(), after.getIdentity());
+        assertEquals(1, dao.count(object.getObjectType()));
+        TransientObject stored = (TransientObject) dao.get(object.getObjectType(), object.getObjectKey()).iterator().next();
+        assertEquals("second", stored.get(String.class, "key"));
+    }
+
     public static class KeyedODocumentWrapper extends ODocumentWrapper implements Keyable{
 
         public KeyedODocumentWrapper(){
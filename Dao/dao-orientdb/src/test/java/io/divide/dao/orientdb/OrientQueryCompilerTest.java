@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.orientdb;
+
+import com.orientechnologies.orient.core.id.ORecordId;
+import io.divide.dao.TestObject1;
+import io.divide.dao.orientdb.OrientQueryCompiler.CompiledQuery;
+import io.divide.shared.server.DAO.DAOException;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Clause;
+import io.divide.shared.transitory.query.OPERAND;
+import io.divide.shared.transitory.query.OrderBy;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import io.divide.shared.transitory.query.SelectOperation;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class OrientQueryCompilerTest {
+
+    @Test
+    public void bindsClauseValuesAsParameters(){
+        OrientQueryCompiler compiler = new OrientQueryCompiler();
+        Query query = new QueryBuilder()
+                .select()
+                .from(TestObject1.class)
+                .where("key", OPERAND.EQ, "it's")
+                .or(TransientObject.OBJECT_KEY, OPERAND.GREATER_THAN, "5")
+                .limit(10)
+                .build();
+
+        CompiledQuery compiled = compiler.compile(query);
+        assertEquals("SELECT * FROM " + Query.safeTable(TestObject1.class) +
+                " WHERE user_data.key == ? OR meta_data.object_key > ? LIMIT 10", compiled.getSQL());
+        assertArrayEquals(new Object[]{"it's", "5"}, compiled.getParameters());
+    }
+
+    @Test
+    public void resumesAfterRecordId(){
+        OrientQueryCompiler compiler = new OrientQueryCompiler();
+        Query query = new QueryBuilder()
+                .select()
+                .from(TestObject1.class)
+                .where("key", OPERAND.EQ, "a")
+                .or("key", OPERAND.EQ, "b")
+                .after("#9:12")
+                .limit(10)
+                .build();
+
+        CompiledQuery compiled = compiler.compile(query);
+        assertEquals("SELECT * FROM " + Query.safeTable(TestObject1.class) +
+                " WHERE (user_data.key == ? OR user_data.key == ?) AND @rid > ? LIMIT 10", compiled.getSQL());
+        assertArrayEquals(new Object[]{"a", "b", new ORecordId("#9:12")}, compiled.getParameters());
+    }
+
+    @Test
+    public void ordersBeforeLimit(){
+        Query query = new QueryBuilder()
+                .select()
+                .from(TestObject1.class)
+                .where("key", OPERAND.EQ, "a")
+                .orderBy(TransientObject.MODIFIED_DATE_KEY, OrderBy.Direction.DESC)
+                .limit(20)
+                .build();
+
+        assertEquals("SELECT * FROM " + Query.safeTable(TestObject1.class) +
+                " WHERE user_data.key == ? ORDER BY meta_data.modified_date_key DESC LIMIT 20",
+                new OrientQueryCompiler().compile(query).getSQL());
+    }
+
+    @Test
+    public void projectsSelectedFields(){
+        Query query = new QueryBuilder()
+                .select("name")
+                .from(TestObject1.class)
+                .orderBy(TransientObject.MODIFIED_DATE_KEY, OrderBy.Direction.DESC)
+                .build();
+
+        CompiledQuery compiled = new OrientQueryCompiler().compile(query);
+        assertEquals("SELECT @rid AS rid, user_data.name AS p0, meta_data.object_key AS p1, meta_data.object_type AS p2," +
+                " meta_data.modified_date_key AS s0 FROM " + Query.safeTable(TestObject1.class) +
+                " ORDER BY s0 DESC", compiled.getSQL());
+        assertEquals(Arrays.asList("user_data.name", "meta_data.object_key", "meta_data.object_type"), compiled.getFields());
+    }
+
+    @Test
+    public void compilesGroupedAggregate(){
+        Query query = new QueryBuilder()
+                .select(SelectOperation.SUM, "amount")
+                .from(TestObject1.class)
+                .where("cat", OPERAND.EQ, "x")
+                .groupBy("cat")
+                .limit(5)
+                .build();
+
+        assertEquals("SELECT sum(user_data.amount) AS value, user_data.cat AS grp FROM " +
+                Query.safeTable(TestObject1.class) + " WHERE user_data.cat == ? GROUP BY user_data.cat LIMIT 5",
+                new OrientQueryCompiler().compile(query).getSQL());
+    }
+
+    @Test
+    public void bindsSetAndRangeOperands(){
+        OrientQueryCompiler compiler = new OrientQueryCompiler();
+        Query query = new QueryBuilder()
+                .select()
+                .from(TestObject1.class)
+                .where("key", OPERAND.IN, Arrays.asList("a", "b", "c"))
+                .and("amount", OPERAND.BETWEEN, Arrays.asList(1, 5))
+                .and("key", OPERAND.NOT_EQ, "b")
+                .build();
+
+        CompiledQuery compiled = compiler.compile(query);
+        assertEquals("SELECT * FROM " + Query.safeTable(TestObject1.class) +
+                " WHERE user_data.key IN ? AND user_data.amount BETWEEN ? AND ? AND user_data.key <> ?", compiled.getSQL());
+        assertArrayEquals(new Object[]{Arrays.asList("a", "b", "c"), 1L, 5L, "b"}, compiled.getParameters());
+
+        Query more = new QueryBuilder().select().from(TestObject1.class)
+                .where("key", OPERAND.IN, Arrays.asList("d", "e", "f", "g"))
+                .and("amount", OPERAND.BETWEEN, Arrays.asList(2, 3))
+                .and("key", OPERAND.NOT_EQ, "e")
+                .build();
+        assertSame(compiled.getSQL(), compiler.compile(more).getSQL());
+    }
+
+    @Test(expected = DAOException.class)
+    public void rejectsInvalidOrderField(){
+        new OrientQueryCompiler().compile(new QueryBuilder().select().from(TestObject1.class)
+                .orderBy("a; DELETE FROM x", OrderBy.Direction.ASC).build());
+    }
+
+    @Test
+    public void rejectsUpdate(){
+        try{
+            new OrientQueryCompiler().compile(new QueryBuilder().update().from(TestObject1.class).build());
+            fail("compiled an update");
+        } catch (DAOException e){
+            assertEquals(501, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void rejectsInjectedNames() throws Exception {
+        OrientQueryCompiler compiler = new OrientQueryCompiler();
+        assertRejected(compiler, new QueryBuilder().select().from(TestObject1.class)
+                .where("key == 1 OR 1", OPERAND.EQ, "a").build());
+
+        Query from = new QueryBuilder().delete().from(TestObject1.class).build();
+        set(Query.class, from, "from", "OUser WHERE 1 == 1");
+        assertRejected(compiler, from);
+
+        Query conditional = new QueryBuilder().select().from(TestObject1.class)
+                .where("key", OPERAND.EQ, "a").or("key", OPERAND.EQ, "b").build();
+        set(Clause.class, conditional.getWhere().get(1), "preOperator", "OR 1 == 1 OR");
+        assertRejected(compiler, conditional);
+
+        assertEquals(0, compiler.cacheSize());
+    }
+
+    private static void assertRejected(OrientQueryCompiler compiler, Query query){
+        try{
+            compiler.compile(query);
+            fail("compiled " + query);
+        } catch (DAOException e){
+            assertEquals(400, e.getStatusCode());
+        }
+    }
+
+    private static void set(Class<?> type, Object target, String name, Object value) throws Exception {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    @Test(expected = DAOException.class)
+    public void rejectsInvalidCursor(){
+        new OrientQueryCompiler().compile(new QueryBuilder().select().from(TestObject1.class).after("page-2").build());
+    }
+
+    @Test
+    public void reusesTemplateForSameShape(){
+        OrientQueryCompiler compiler = new OrientQueryCompiler();
+        CompiledQuery first = compiler.compile(countWhereKeyIs("a"));
+        CompiledQuery second = compiler.compile(countWhereKeyIs("b"));
+
+        assertSame(first.getSQL(), second.getSQL());
+        assertEquals(1, compiler.cacheSize());
+        assertArrayEquals(new Object[]{"b"}, second.getParameters());
+    }
+
+    private static Query countWhereKeyIs(String value){
+        return new QueryBuilder()
+                .select(SelectOperation.COUNT)
+                .from(TestObject1.class)
+                .where("key", OPERAND.EQ, value)
+                .build();
+    }
+
+}
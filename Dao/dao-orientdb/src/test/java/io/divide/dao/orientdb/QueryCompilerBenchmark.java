@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.orientdb;
+
+import io.divide.dao.TestObject1;
+import io.divide.dao.orientdb.OrientQueryCompiler.CompiledQuery;
+import io.divide.shared.transitory.query.OPERAND;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares string concatenated {@link Query#getSQL()} against {@link OrientQueryCompiler} on a memory database.
+ * Not part of the unit test run, start it through {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryCompilerBenchmark {
+
+    private static final int OBJECTS = 1000;
+
+    private ODatabaseDocumentTx db;
+    private OrientQueryCompiler compiler;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        db = new ODatabaseDocumentTx("memory:benchmark").create();
+        ODatabaseRecordThreadLocal.INSTANCE.set(db);
+        compiler = new OrientQueryCompiler();
+        for(int x=0;x<OBJECTS;x++){
+            db.save(new ODocumentWrapper(new TestObject1("key", "value" + x)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        db.drop();
+    }
+
+    @Benchmark
+    public List<ODocument> concatenatedSQL(){
+        ODatabaseRecordThreadLocal.INSTANCE.set(db);
+        return db.query(new OSQLSynchQuery<ODocument>(nextQuery().getSQL()));
+    }
+
+    @Benchmark
+    public List<ODocument> compiledSQL(){
+        ODatabaseRecordThreadLocal.INSTANCE.set(db);
+        CompiledQuery q = compiler.compile(nextQuery());
+        return db.query(new OSQLSynchQuery<ODocument>(q.getSQL()), q.getParameters());
+    }
+
+    private Query nextQuery(){
+        return new QueryBuilder()
+                .select()
+                .from(TestObject1.class)
+                .where("key", OPERAND.EQ, "value" + (counter++ % OBJECTS))
+                .limit(1)
+                .build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(QueryCompilerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
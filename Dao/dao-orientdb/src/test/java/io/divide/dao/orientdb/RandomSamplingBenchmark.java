@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.orientdb;
+
+import io.divide.dao.TestObject1;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a random select of 10 objects through {@link io.divide.shared.transitory.query.RandomSampling} as the
+ * number of stored objects grows, against counting the class and skipping a random number of records. Sampling
+ * should stay flat while count and skip grows with the class. Start it through {@link #main(String[])}, the largest
+ * size needs a few GB of heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RandomSamplingBenchmark {
+
+    private static final int SAMPLE = 10;
+    private static final int BATCH = 1000;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int objects;
+
+    private ODatabaseDocumentTx db;
+    private OrientDBDao dao;
+    private Query random;
+    private String table;
+    private final Random rnd = new Random();
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        db = new ODatabaseDocumentTx("memory:sampling" + objects).create();
+        dao = new OrientDBDao(db);
+        TestObject1[] batch = new TestObject1[BATCH];
+        for(int x=0;x<objects;x+=BATCH){
+            for(int y=0;y<batch.length;y++){
+                batch[y] = new TestObject1("key", "value" + (x + y));
+            }
+            dao.save(batch);
+        }
+        random = new QueryBuilder().select().from(TestObject1.class).random(SAMPLE).build();
+        table = Query.safeTable(TestObject1.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        ODatabaseRecordThreadLocal.INSTANCE.set(db);
+        db.drop();
+    }
+
+    @Benchmark
+    public List<TransientObject> sample(){
+        return dao.query(random);
+    }
+
+    @Benchmark
+    public List<ODocument> countAndSkip(){
+        ODatabaseRecordThreadLocal.INSTANCE.set(db);
+        long count = db.countClass(table);
+        int skip = rnd.nextInt((int) Math.max(1, count - SAMPLE));
+        return db.query(new OSQLSynchQuery<ODocument>("SELECT FROM " + table + " SKIP " + skip + " LIMIT " + SAMPLE));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RandomSamplingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.dao.orientdb;
+
+import io.divide.dao.TestObject1;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.tx.OTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady state throughput of re-saving the same keys, comparing the in place update done by
+ * {@link OrientDBDao#save} with saving fresh documents which makes {@link OIndexHighLander} delete and re-insert.
+ * Database file growth of each run is printed on tear down. Start it through {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpsertBenchmark {
+
+    private static final int KEYS = 100;
+
+    private File directory;
+    private ODatabaseDocumentTx db;
+    private OrientDBDao dao;
+    private TestObject1[] objects;
+    private long initialSize;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = File.createTempFile("upsert", "");
+        directory.delete();
+        db = new ODatabaseDocumentTx("plocal:" + directory.getAbsolutePath()).create();
+        dao = new OrientDBDao(db);
+
+        objects = new TestObject1[KEYS];
+        for(int x=0;x<KEYS;x++){
+            objects[x] = new TestObject1("key", "value");
+        }
+        dao.save(objects);
+        initialSize = sizeOf(directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        System.out.println("\nDatabase growth: " + (sizeOf(directory) - initialSize) / 1024 + " KB after " + counter + " saves");
+        ODatabaseRecordThreadLocal.INSTANCE.set(db);
+        db.close();
+        delete(directory);
+    }
+
+    @Benchmark
+    public void updateInPlace(){
+        TestObject1 object = next();
+        dao.save(object);
+    }
+
+    @Benchmark
+    public void deleteAndInsert(){
+        TestObject1 object = next();
+        ODatabaseRecordThreadLocal.INSTANCE.set(db);
+        OTransaction transaction = db.getTransaction();
+        transaction.begin();
+        db.save(new ODocumentWrapper(object));
+        transaction.commit();
+        transaction.close();
+    }
+
+    private TestObject1 next(){
+        TestObject1 object = objects[counter++ % KEYS];
+        object.put("key", "value" + counter);
+        return object;
+    }
+
+    private static long sizeOf(File file){
+        if(file.isFile()) return file.length();
+        long size = 0;
+        File[] children = file.listFiles();
+        if(children != null){
+            for(File child : children){
+                size += sizeOf(child);
+            }
+        }
+        return size;
+    }
+
+    private static void delete(File file){
+        File[] children = file.listFiles();
+        if(children != null){
+            for(File child : children){
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UpsertBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -17,20 +17,28 @@
 package io.divide.server;
 
 import io.divide.server.auth.*;
+import io.divide.server.dao.CountRegistry;
 import io.divide.server.dao.CredentialBodyHandler;
 import io.divide.server.dao.DAOManager;
 import io.divide.server.dao.GsonMessageBodyHandler;
+import io.divide.server.dao.QueryCache;
 import io.divide.server.dao.Session;
 import io.divide.server.endpoints.AuthenticationEndpoint;
 import io.divide.server.endpoints.DataEndpoint;
+import io.divide.server.endpoints.EndpointDispatchers;
 import io.divide.server.endpoints.MetaEndpoint;
 import io.divide.server.endpoints.PushEndpoint;
 import io.divide.dao.ServerDAO;
+import io.divide.dao.WriteBehindServerDAO;
 import io.divide.server.auth.SecManager;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.spi.AbstractContainerLifecycleListener;
+import org.glassfish.jersey.server.spi.Container;
 
 import javax.ws.rs.core.SecurityContext;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.logging.Logger;
 
 /*
@@ -44,6 +52,29 @@ public abstract class AuthApplication<T extends ServerDAO> extends ResourceConfi
         this(new MyBinder<T>(t, encryptionKey));
     }
 
+    /**
+     * @param queryCache caches query results in front of t, see {@link QueryCache}.
+     */
+    public AuthApplication(T t, String encryptionKey, QueryCache queryCache){
+        this(new MyBinder<T>(t, encryptionKey, queryCache));
+    }
+
+    /**
+     * @param dispatchers run the work of the endpoints, see {@link EndpointDispatchers#defaults()}.
+     */
+    public AuthApplication(T t, String encryptionKey, QueryCache queryCache, EndpointDispatchers dispatchers){
+        this(new MyBinder<T>(t, encryptionKey, queryCache, dispatchers));
+    }
+
+    /**
+     * @param counts counts the types it tracks without asking t every time, see {@link CountRegistry}. Null to count
+     *               in t every time.
+     */
+    public AuthApplication(T t, String encryptionKey, QueryCache queryCache, CountRegistry counts,
+                           EndpointDispatchers dispatchers){
+        this(new MyBinder<T>(t, encryptionKey, queryCache, dispatchers, counts));
+    }
+
     public AuthApplication(Class<T> daoClass,String encryptionKey){
         this(new MyBinder<T>(daoClass,encryptionKey));
     }
@@ -62,6 +93,7 @@ public abstract class AuthApplication<T extends ServerDAO> extends ResourceConfi
 //        reg(GZIPReaderInterceptor.class);
 
         register(binder);
+        register(new Shutdown(binder));
 
         property("jersey.config.workers.legacyOrdering", true);
     }
@@ -71,12 +103,33 @@ public abstract class AuthApplication<T extends ServerDAO> extends ResourceConfi
         private Class<T> clazz;
         private T t;
         private String encryptionKey;
+        private QueryCache queryCache;
+        private EndpointDispatchers dispatchers;
+        private CountRegistry counts;
+        private AuthTokenCache tokenCache;
+        private DAOManager manager;
 
         public MyBinder(T dao, String encryptionKey){
             this.t = dao;
             this.encryptionKey = encryptionKey;
         }
 
+        public MyBinder(T dao, String encryptionKey, QueryCache queryCache){
+            this(dao, encryptionKey);
+            this.queryCache = queryCache;
+        }
+
+        public MyBinder(T dao, String encryptionKey, QueryCache queryCache, EndpointDispatchers dispatchers){
+            this(dao, encryptionKey, queryCache);
+            this.dispatchers = dispatchers;
+        }
+
+        public MyBinder(T dao, String encryptionKey, QueryCache queryCache, EndpointDispatchers dispatchers,
+                        CountRegistry counts){
+            this(dao, encryptionKey, queryCache, dispatchers);
+            this.counts = counts;
+        }
+
         public MyBinder(Class<T> daoClass, String encryptionKey){
             clazz = daoClass;
             this.encryptionKey = encryptionKey;
@@ -88,9 +141,14 @@ public abstract class AuthApplication<T extends ServerDAO> extends ResourceConfi
                 System.out.println("Class: " + clazz + " : " + t);
                 if(t == null)
                     t = clazz.newInstance();
-                DAOManager manager = new DAOManager(t);
+                manager = new DAOManager(t, queryCache, counts);
                 bind(manager).to(DAOManager.class);
                 bind(new SecManager(manager,encryptionKey)).to(SecManager.class);
+                tokenCache = new AuthTokenCache();
+                bind(tokenCache).to(AuthTokenCache.class);
+                if(dispatchers == null)
+                    dispatchers = EndpointDispatchers.defaults();
+                bind(dispatchers).to(EndpointDispatchers.class);
                 bind(UserContext.class).to(SecurityContext.class);
                 bind(Session.class).to(Session.class);
             }catch (Exception e) {
@@ -98,6 +156,26 @@ public abstract class AuthApplication<T extends ServerDAO> extends ResourceConfi
             }
         }
 
+        /**
+         * Stops the endpoints taking work, then closes the dao if it is {@link Closeable}. Decorators such as
+         * {@link WriteBehindServerDAO} write out what they hold and close what they wrap.
+         */
+        public void shutdown(){
+            if(dispatchers != null)
+                dispatchers.shutdown();
+            if(tokenCache != null)
+                tokenCache.close();
+            if(manager != null)
+                manager.shutdown();
+            if(t instanceof Closeable){
+                try {
+                    ((Closeable) t).close();
+                } catch (IOException e) {
+                    logger.warning("Failed to close " + getDAOName() + ": " + e.getMessage());
+                }
+            }
+        }
+
         public String getDAOName(){
             if(t != null)
                 return t.getClass().getSimpleName();
@@ -106,6 +184,20 @@ public abstract class AuthApplication<T extends ServerDAO> extends ResourceConfi
         }
     }
 
+    private static class Shutdown extends AbstractContainerLifecycleListener {
+        private final MyBinder binder;
+
+        public Shutdown(MyBinder binder){
+            this.binder = binder;
+        }
+
+        @Override
+        public void onShutdown(Container container) {
+            logger.info("STOPPING: " + binder.getDAOName());
+            binder.shutdown();
+        }
+    }
+
     private void reg(Class<?> clazz){
         //logger.info("Registering: " + clazz.getSimpleName());
         this.register(clazz);
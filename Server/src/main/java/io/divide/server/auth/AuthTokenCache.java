@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.server.auth;
+
+import io.divide.server.dao.DAOManager;
+import io.divide.server.dao.ServerCredentials;
+import io.divide.shared.event.EventManager;
+import io.divide.shared.event.Subscriber;
+import io.divide.shared.transitory.Credentials;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.util.ConcurrentLruCache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Maps auth tokens to the Credentials they belong to, so authenticated requests do not need to query the DAO.
+ * Entries are dropped whenever DAOManager saves or deletes a Credentials object, and all of them when a delete query
+ * runs against Credentials. The listeners stay registered on the global EventManager until close() is called.
+ */
+public class AuthTokenCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_TTL_MINUTES = 10;
+
+    private static final String CREDENTIALS_TYPE = Query.safeTable(Credentials.class);
+
+    private final ConcurrentLruCache<String,ServerCredentials> cache;
+    private final ConcurrentMap<String,String> tokensByObjectKey = new ConcurrentHashMap<String, String>();
+    private final AtomicLong epoch = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final SaveListener saveListener = new SaveListener();
+    private final DeleteListener deleteListener = new DeleteListener();
+    private final DeleteQueryListener deleteQueryListener = new DeleteQueryListener();
+
+    public AuthTokenCache(){
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public AuthTokenCache(int maxSize, long ttl, TimeUnit unit){
+        cache = new ConcurrentLruCache<String, ServerCredentials>(maxSize, 0, null, ttl, unit,
+                ConcurrentLruCache.DEFAULT_CONCURRENCY_LEVEL, new ConcurrentLruCache.EvictionListener<String, ServerCredentials>() {
+                    @Override
+                    public void onEviction(String token, ServerCredentials credentials) {
+                        tokensByObjectKey.remove(credentials.getObjectKey(), token);
+                    }
+                });
+        EventManager.get().register(saveListener);
+        EventManager.get().register(deleteListener);
+        EventManager.get().register(deleteQueryListener);
+    }
+
+    /**
+     * Stops listening to DAOManager events and drops every entry.
+     */
+    public void close(){
+        if(!closed.compareAndSet(false, true)) return;
+        EventManager.get().unregister(saveListener);
+        EventManager.get().unregister(deleteListener);
+        EventManager.get().unregister(deleteQueryListener);
+        invalidateAll();
+    }
+
+    /**
+     * @return copy of the Credentials cached for token, or null.
+     */
+    public ServerCredentials get(String token){
+        ServerCredentials credentials = cache.get(token);
+        return (credentials == null) ? null : credentials.copy();
+    }
+
+    /**
+     * Marker to be read before loading Credentials from the DAO and passed to put(). If any Credentials are
+     * invalidated in between, the loaded value may be stale and is not cached.
+     */
+    public long epoch(){
+        return epoch.get();
+    }
+
+    public void put(String token, ServerCredentials credentials, long epoch){
+        if(this.epoch.get() != epoch) return;
+
+        // only the latest token of an object can be found by invalidate()
+        String previous = tokensByObjectKey.put(credentials.getObjectKey(), token);
+        if(previous != null && !previous.equals(token)) cache.remove(previous);
+        cache.put(token, credentials.copy());
+
+        // lost a race against invalidate()
+        if(this.epoch.get() != epoch){
+            cache.remove(token);
+            tokensByObjectKey.remove(credentials.getObjectKey(), token);
+        }
+    }
+
+    public void invalidate(TransientObject object){
+        if(object == null || !CREDENTIALS_TYPE.equals(object.getObjectType())) return;
+
+        epoch.incrementAndGet();
+        String token = tokensByObjectKey.remove(object.getObjectKey());
+        if(token != null) cache.remove(token);
+    }
+
+    public void invalidateAll(){
+        epoch.incrementAndGet();
+        tokensByObjectKey.clear();
+        cache.clear();
+    }
+
+    public int size(){
+        return cache.size();
+    }
+
+    int indexSize(){
+        return tokensByObjectKey.size();
+    }
+
+    public long hitCount(){
+        return cache.hitCount();
+    }
+
+    public long missCount(){
+        return cache.missCount();
+    }
+
+    public double hitRatio(){
+        return cache.hitRatio();
+    }
+
+    @Override
+    public String toString() {
+        return "AuthTokenCache{" + cache + '}';
+    }
+
+    private class SaveListener implements Subscriber<DAOManager.SAVE_EVENT> {
+        @Override
+        public void onEvent(DAOManager.SAVE_EVENT event) {
+            for(TransientObject object : event.getObjects()){
+                invalidate(object);
+            }
+        }
+    }
+
+    private class DeleteListener implements Subscriber<DAOManager.DELETE_EVENT> {
+        @Override
+        public void onEvent(DAOManager.DELETE_EVENT event) {
+            for(TransientObject object : event.getObjects()){
+                invalidate(object);
+            }
+        }
+    }
+
+    private class DeleteQueryListener implements Subscriber<DAOManager.DELETE_QUERY_EVENT> {
+        @Override
+        public void onEvent(DAOManager.DELETE_QUERY_EVENT event) {
+            if(CREDENTIALS_TYPE.equals(event.getObjectType())) invalidateAll();
+        }
+    }
+}
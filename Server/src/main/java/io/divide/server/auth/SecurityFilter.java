@@ -54,6 +54,7 @@ import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.core.Context;
 import java.io.IOException;
+import java.util.List;
 import java.util.logging.Logger;
 
 import static io.divide.server.utils.ResponseUtils.notAuthReponse;
@@ -67,6 +68,9 @@ public class SecurityFilter implements ContainerRequestFilter {
     @Context
     SecManager securityManager;
 
+    @Context
+    AuthTokenCache tokenCache;
+
     public SecurityFilter() {}
 
     @Override
@@ -81,6 +85,7 @@ public class SecurityFilter implements ContainerRequestFilter {
         || securityManager.getSafePaths().contains(path)
            ) {
             log.info("Auth Skipped : (" + path +")");
+            request.setSecurityContext(new UserContext(request.getUriInfo(), null));
             return;
         }
 
@@ -122,33 +127,51 @@ public class SecurityFilter implements ContainerRequestFilter {
             if(authToken.isExpired()){
                 return abort(request,"Auth Token Expired: " + System.currentTimeMillis() + " : " + authToken.expirationDate);
             }
+            if(authToken.isRevoked()){
+                return abort(request,"Auth Token Revoked");
+            }
         } catch (AuthTokenUtils.AuthenticationException e) {
             return abort(request,"Auth Token Expired: " + e.getMessage());
         }
 
+        ServerCredentials cached = tokenCache.get(token);
+        if (cached != null) {
+            return new UserContext(request.getUriInfo(), cached);
+        }
+
         // Validate the extracted credentials
-        synchronized (dao) {
-            Query q = new QueryBuilder().select().from(Credentials.class).where(Credentials.AUTH_TOKEN_KEY, OPERAND.EQ, token).build();
-            try {
-                TransientObject temp = ObjectUtils.get1stOrNull(dao.query(q));
-                if (temp != null) {
-                    ServerCredentials creds = new ServerCredentials(temp);
-//                    creds.setAuthToken(AuthTokenUtils.getNewToken(securityManager.getSymmetricKey(),creds)); // assign new token
-                    return new UserContext(request.getUriInfo(), new ServerCredentials(creds));
-                } else {
-//                    System.err.println("IN DB: " + dao.query(new QueryBuilder().select().from(Credentials.class).build()));
-                    request.abortWith(notAuthReponse("Invalid authentication token"));
-                    return abort(request, "Invalid authentication token");
-                }
-            } catch (ServerDAO.DAOException e) {
-                log.severe("Authentication Failed("+e.getStatusCode()+") " + e.getMessage());
-                e.printStackTrace();
+        long epoch = tokenCache.epoch();
+        Query q = new QueryBuilder().select().from(Credentials.class).where(Credentials.AUTH_TOKEN_KEY, OPERAND.EQ, token).build();
+        try {
+            TransientObject temp = ObjectUtils.get1stOrNull(query(q));
+            if (temp != null) {
+                ServerCredentials creds = new ServerCredentials(temp);
+//                creds.setAuthToken(AuthTokenUtils.getNewToken(securityManager.getSymmetricKey(),creds)); // assign new token
+                tokenCache.put(token, creds, epoch);
+                return new UserContext(request.getUriInfo(), new ServerCredentials(creds));
+            } else {
+//                System.err.println("IN DB: " + dao.query(new QueryBuilder().select().from(Credentials.class).build()));
+                request.abortWith(notAuthReponse("Invalid authentication token"));
                 return abort(request, "Invalid authentication token");
             }
+        } catch (ServerDAO.DAOException e) {
+            log.severe("Authentication Failed("+e.getStatusCode()+") " + e.getMessage());
+            e.printStackTrace();
+            return abort(request, "Invalid authentication token");
         }
     }
 
 
+    // a backend not known to be thread safe is only queried by one request at a time
+    private List<TransientObject> query(Query q) throws ServerDAO.DAOException {
+        if(dao.isThreadSafe()){
+            return dao.query(q);
+        }
+        synchronized (dao) {
+            return dao.query(q);
+        }
+    }
+
     private UserContext abort(ContainerRequestContext request, String message) {
         log.warning("Auth Failed: " + message);
         request.abortWith(notAuthReponse(message));
@@ -23,28 +23,38 @@ import javax.ws.rs.core.UriInfo;
 import java.security.Principal;
 
 public class UserContext implements SecurityContext {
-    private Credentials creds;
+    private volatile Credentials creds;
+    private volatile Principal principal;
     private UriInfo uriInfo;
 
     public UserContext(UriInfo uriInfo, final Credentials user) {
         this.uriInfo = uriInfo;
+        setUser(user);
+    }
+
+    /**
+     * Signs user in on a request which was let through unauthenticated, such as a sign in. Async endpoints can no
+     * longer replace the security context, so the {@link SecurityFilter} leaves an empty one for them to fill.
+     */
+    public void setUser(final Credentials user){
         this.creds = user;
         //creds.setPassword("");
-        this.principal = new Principal() {
+        this.principal = user == null ? null : new Principal() {
             public String getName() {
                 return user.getEmailAddress();
             }
         };
     }
 
-    private Principal principal;
-
     public Principal getUserPrincipal() {
         return this.principal;
     }
 
 
     public boolean isUserInRole(String role) {
+        if (this.principal == null) {
+            return false;
+        }
         if ("admin".equals(role)) {
             return "admin".equals(this.principal.getName());
         } else
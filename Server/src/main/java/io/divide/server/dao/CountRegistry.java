@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.server.dao;
+
+import io.divide.dao.ServerDAO;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Number of stored objects of the tracked types, counted by the backend once per reconcile interval instead of on
+ * every call. Types are opt in, see {@link #track(String)}, other types are counted by the backend every time.
+ * <p>
+ * Saves and deletes do not report whether they inserted or removed an object, and finding out would cost a backend
+ * read on every write, so they leave the counts alone. A count may therefore lag writes by up to the reconcile
+ * interval. DELETE queries report how many objects they removed, which is applied right away.
+ */
+public class CountRegistry {
+
+    public static final long DEFAULT_RECONCILE_SECONDS = 300;
+
+    private final ConcurrentMap<String,Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final Set<String> tracked = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final long reconcileNanos;
+
+    public CountRegistry(){
+        this(DEFAULT_RECONCILE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param reconcileInterval age after which a count is read from the backend again.
+     * @param unit unit of reconcileInterval.
+     */
+    public CountRegistry(long reconcileInterval, TimeUnit unit){
+        this.reconcileNanos = unit.toNanos(reconcileInterval);
+    }
+
+    /**
+     * Counts objectType in this registry from now on.
+     * @return this registry.
+     */
+    public CountRegistry track(String objectType){
+        tracked.add(Query.safeTable(objectType));
+        return this;
+    }
+
+    public CountRegistry track(Class<? extends TransientObject> type){
+        return track(type.getName());
+    }
+
+    public boolean isTracked(String objectType){
+        return tracked.contains(Query.safeTable(objectType));
+    }
+
+    public int count(String objectType, ServerDAO dao){
+        String type = Query.safeTable(objectType);
+        if(!tracked.contains(type)) return dao.count(type);
+        Counter counter = counters.get(type);
+        if(counter == null){
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(type, created);
+            if(counter == null) counter = created;
+        }
+        if(counter.isStale(reconcileNanos)){
+            synchronized (counter){
+                if(counter.isStale(reconcileNanos)){
+                    counter.reset(dao.count(type));
+                }
+            }
+        }
+        return (int) counter.sum();
+    }
+
+    /**
+     * Applies the result of a DELETE query, which reports the number of deleted objects as {@code count}.
+     */
+    public void deleted(String objectType, List<? extends TransientObject> results){
+        if(results == null || results.size() != 1) return;
+        Number count = results.get(0).get(Number.class, "count");
+        if(count == null){
+            invalidate(objectType);
+            return;
+        }
+        Counter counter = counters.get(Query.safeTable(objectType));
+        if(counter != null) counter.add(-count.longValue());
+    }
+
+    /**
+     * Makes the next count of objectType read the backend.
+     */
+    public void invalidate(String objectType){
+        Counter counter = counters.get(Query.safeTable(objectType));
+        if(counter != null) counter.expire();
+    }
+
+    /**
+     * Sum of per thread stripes, so concurrent writers of one type do not all update the same value.
+     */
+    static final class Counter {
+        private static final int STRIPES = 16;
+
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES);
+        private volatile long seeded;
+        private volatile boolean valid = false;
+
+        void add(long change){
+            int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+            cells.addAndGet(stripe, change);
+        }
+
+        long sum(){
+            long sum = 0;
+            for(int x=0;x<STRIPES;x++) sum += cells.get(x);
+            return sum;
+        }
+
+        // concurrent adds during a reset may be lost, the next reconcile corrects them
+        void reset(long value){
+            for(int x=1;x<STRIPES;x++) cells.set(x, 0);
+            cells.set(0, value);
+            seeded = System.nanoTime();
+            valid = true;
+        }
+
+        void expire(){
+            valid = false;
+        }
+
+        boolean isStale(long reconcileNanos){
+            return !valid || System.nanoTime() - seeded > reconcileNanos;
+        }
+    }
+}
@@ -44,21 +44,18 @@ public class CredentialBodyHandler<T extends Credentials> implements MessageBody
     public static final Logger logger = Logger.getLogger(CredentialBodyHandler.class.getName());
     private static final String UTF_8 = "UTF-8";
 
-    private Gson gson;
+    private static final Gson GSON = createGson();
     private SecurityContext context;
 
     public CredentialBodyHandler(@Context SecurityContext context){
         this.context = context;
     }
 
-    private Gson getGson() {
-        if (gson == null) {
-            final GsonBuilder gsonBuilder = new GsonBuilder();
-            gsonBuilder.enableComplexMapKeySerialization();
-            gsonBuilder.setPrettyPrinting();
-            gson = gsonBuilder.create();
-        }
-        return gson;
+    private static Gson createGson() {
+        final GsonBuilder gsonBuilder = new GsonBuilder();
+        gsonBuilder.enableComplexMapKeySerialization();
+        gsonBuilder.setPrettyPrinting();
+        return gsonBuilder.create();
     }
 
     @Override
@@ -91,7 +88,7 @@ public class CredentialBodyHandler<T extends Credentials> implements MessageBody
                 object = (T) object.getSafe();
             }
 
-            getGson().toJson(object, jsonType, writer);
+            GSON.toJson(object, jsonType, writer);
             logger.info("sending: " + object);
 
         } finally {
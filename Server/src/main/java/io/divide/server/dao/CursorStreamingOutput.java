@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.server.dao;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import io.divide.shared.server.Cursor;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.logging.Logger;
+
+/**
+ * Writes the objects of a {@link Cursor} as a JSON array while they are read, flushing every
+ * {@link #DEFAULT_FLUSH_INTERVAL} objects so the response is sent in chunks. The cursor is always closed, by
+ * {@link #close()} if the response is never written.
+ */
+public class CursorStreamingOutput implements StreamingOutput, Closeable {
+
+    public static final int DEFAULT_FLUSH_INTERVAL = 100;
+
+    private static final Logger logger = Logger.getLogger(CursorStreamingOutput.class.getName());
+
+    private final Cursor<?> cursor;
+    private final Gson gson;
+    private final int flushInterval;
+
+    public CursorStreamingOutput(Cursor<?> cursor){
+        this(cursor, GsonMessageBodyHandler.gson(), DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public CursorStreamingOutput(Cursor<?> cursor, Gson gson, int flushInterval){
+        this.cursor = cursor;
+        this.gson = gson;
+        this.flushInterval = flushInterval;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(output, "UTF-8")));
+        try {
+            writer.beginArray();
+            int written = 0;
+            while(cursor.hasNext()){
+                Object o = cursor.next();
+                if(o == null){
+                    writer.nullValue();
+                } else {
+                    gson.toJson(o, o.getClass(), writer);
+                }
+                if(++written % flushInterval == 0){
+                    writer.flush();
+                }
+            }
+            writer.endArray();
+        } catch (RuntimeException e){
+            // status and headers are already sent, the client sees a truncated array
+            logger.severe("Streaming failed: " + e.getMessage());
+            throw e;
+        } finally {
+            cursor.close();
+            writer.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
@@ -16,18 +16,36 @@
 
 package io.divide.server.dao;
 
+import io.divide.dao.DelegatingDAO;
 import io.divide.dao.ServerDAO;
+import io.divide.dao.ThreadSafeDAO;
 import io.divide.shared.event.Event;
 import io.divide.shared.event.EventManager;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.AsyncDAO;
+import io.divide.shared.server.BlockSequence;
+import io.divide.shared.server.Cursors;
+import io.divide.shared.server.DeferredFuture;
+import io.divide.shared.server.ExecutorAsyncDAO;
+import io.divide.shared.server.SequenceAllocator;
+import io.divide.shared.server.Sequences;
 import io.divide.shared.transitory.TransientObject;
 import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
 import io.divide.shared.util.ObjectUtils;
 
 import java.security.KeyPair;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
-public final class DAOManager implements ServerDAO {
+public final class DAOManager implements ServerDAO, AsyncDAO<TransientObject,TransientObject>, Sequences, ThreadSafeDAO {
 
     public static final String ACTION_QUERY = "action_query";
     public static final String ACTION_GET = "action_get";
@@ -37,9 +55,45 @@ public final class DAOManager implements ServerDAO {
 
     private EventManager eventManager = EventManager.get();
     private ServerDAO serverDao;
+    private QueryCache queryCache;
+    private CountRegistry counts;
+    private final ConcurrentMap<String,BlockSequence> sequences = new ConcurrentHashMap<String, BlockSequence>();
+    private final ExecutorAsyncDAO<TransientObject,TransientObject> async;
 
     public DAOManager(ServerDAO serverDao){
+        this(serverDao, null);
+    }
+
+    public DAOManager(ServerDAO serverDao, QueryCache queryCache){
+        this(serverDao, queryCache, null);
+    }
+
+    /**
+     * @param queryCache answers repeated queries, invalidated by every save and delete made through this manager. Null
+     *                   to send every query to serverDao.
+     * @param counts counts the types it tracks without asking serverDao every time, see {@link CountRegistry}. Null to
+     *               count in serverDao every time.
+     */
+    public DAOManager(ServerDAO serverDao, QueryCache queryCache, CountRegistry counts){
+        this(serverDao, queryCache, counts, ExecutorAsyncDAO.DEFAULT_THREADS, ExecutorAsyncDAO.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param asyncThreads threads running the async calls which can not be handed to serverDao directly.
+     * @param asyncQueueCapacity async calls which may wait for a thread, further calls are rejected with a 503.
+     */
+    public DAOManager(ServerDAO serverDao, QueryCache queryCache, CountRegistry counts, int asyncThreads, int asyncQueueCapacity){
         this.serverDao = serverDao;
+        this.queryCache = queryCache;
+        this.counts = counts;
+        this.async = new ExecutorAsyncDAO<TransientObject, TransientObject>(this, asyncThreads, asyncQueueCapacity);
+    }
+
+    /**
+     * @return the query cache, or null if queries are not cached.
+     */
+    public QueryCache getQueryCache(){
+        return queryCache;
     }
 
 //    @Override
@@ -58,23 +112,67 @@ public final class DAOManager implements ServerDAO {
 
     @Override
     public <O extends TransientObject> List<O> query(Query query) throws DAOException {
-        List<O> results = serverDao.query(query);
+        List<O> results;
+        if(QueryBuilder.QueryAction.DELETE.equals(query.getAction())){
+            try{
+                results = serverDao.query(query);
+                if(counts != null) counts.deleted(query.getFrom(), results);
+            } catch (DAOException e){
+                if(counts != null) counts.invalidate(query.getFrom());
+                throw e;
+            } finally {
+                if(queryCache != null) queryCache.invalidate(query.getFrom());
+                // the deleted objects are not known here, listeners have to drop everything of this type
+                eventManager.fire(new DELETE_QUERY_EVENT(query.getFrom()));
+            }
+        } else if(queryCache == null){
+            results = serverDao.query(query);
+        } else {
+            results = queryCache.query(query, serverDao);
+        }
         eventManager.fire(new QUERY_EVENT<O>(results));
         return results;
     }
 
+    // no QUERY_EVENT, results are only read once the caller iterates the cursor. Cached results are served, but a
+    // streamed result is never cached as it is not held in memory.
+    @Override
+    public <O extends TransientObject> Cursor<O> stream(Query query) throws DAOException {
+        if(queryCache != null){
+            List<O> cached = queryCache.getIfPresent(query);
+            if(cached != null) return Cursors.of(cached);
+        }
+        return serverDao.stream(query);
+    }
+
     @Override
     public void save(TransientObject... objects) throws DAOException {
-        serverDao.save(objects);
+        try{
+            serverDao.save(objects);
+        } finally {
+            invalidate(objects);
+        }
         eventManager.fire(new SAVE_EVENT(objects));
     }
 
     @Override
     public void delete(TransientObject... objects) throws DAOException {
-        serverDao.delete(objects);
+        try{
+            serverDao.delete(objects);
+        } finally {
+            invalidate(objects);
+        }
         eventManager.fire(new DELETE_EVENT(objects));
     }
 
+    private void invalidate(TransientObject... objects){
+        if(queryCache == null) return;
+        Set<String> types = new HashSet<String>();
+        for(TransientObject o : objects){
+            if(types.add(o.getObjectType())) queryCache.invalidate(o.getObjectType());
+        }
+    }
+
     @Override
     public boolean exists(TransientObject... objects) {
         boolean exists = serverDao.exists(objects);
@@ -84,9 +182,124 @@ public final class DAOManager implements ServerDAO {
 
     @Override
     public int count(String objectType) {
+        if(counts != null) return counts.count(objectType, serverDao);
         return serverDao.count(objectType);
     }
 
+    /**
+     * @return the count registry, or null if every count is made by the backend.
+     */
+    public CountRegistry getCountRegistry(){
+        return counts;
+    }
+
+    // queries, saves and deletes keep the cache, the counts and the events in step, so they run the blocking calls of
+    // this manager on its executor. Gets and uncached counts only need the backend, an async backend runs them itself.
+
+    @Override
+    public <O extends TransientObject> Future<List<O>> queryAsync(Query query) throws DAOException {
+        return async.queryAsync(query);
+    }
+
+    @Override
+    public <O extends TransientObject> Future<Collection<O>> getAsync(String objectType, String... keys) throws DAOException {
+        if(!supports(AsyncDAO.class)) return async.getAsync(objectType, keys);
+
+        final Future<Collection<O>> pending = backend().getAsync(objectType, keys);
+        return new DeferredFuture<Collection<O>>() {
+            @Override
+            protected Collection<O> complete() throws Exception {
+                Collection<O> results = unwrap(pending);
+                eventManager.fire(new GET_EVENT<O>(results));
+                return results;
+            }
+        };
+    }
+
+    @Override
+    public Future<Void> saveAsync(TransientObject... objects) throws DAOException {
+        return async.saveAsync(objects);
+    }
+
+    @Override
+    public Future<Void> deleteAsync(TransientObject... objects) throws DAOException {
+        return async.deleteAsync(objects);
+    }
+
+    @Override
+    public Future<Integer> countAsync(String objectType) throws DAOException {
+        if(counts != null && counts.isTracked(objectType)) return async.countAsync(objectType);
+        if(supports(AsyncDAO.class)) return backend().countAsync(objectType);
+        return async.countAsync(objectType);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AsyncDAO<TransientObject,TransientObject> backend(){
+        return (AsyncDAO<TransientObject,TransientObject>) serverDao;
+    }
+
+    private static <T> T unwrap(Future<T> future) throws Exception {
+        try{
+            return future.get();
+        } catch (ExecutionException e){
+            if(e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    // a decorating backend implements the optional interfaces, but can only serve them if what it wraps does
+    private boolean supports(Class<?> capability){
+        return capability.isInstance(serverDao) &&
+                (!(serverDao instanceof DelegatingDAO) || ((DelegatingDAO) serverDao).supports(capability));
+    }
+
+    // the query cache, counts and sequences are thread safe, the backend decides
+    @Override
+    public boolean isThreadSafe(){
+        return serverDao instanceof ThreadSafeDAO && ((ThreadSafeDAO) serverDao).isThreadSafe();
+    }
+
+    /**
+     * Stops this manager's async executor, calls already submitted still complete. The backend is left open.
+     */
+    public void shutdown(){
+        async.shutdown();
+    }
+
+    /**
+     * @return the adapter running async calls on this manager's executor.
+     */
+    public ExecutorAsyncDAO<TransientObject,TransientObject> getAsyncAdapter(){
+        return async;
+    }
+
+    /**
+     * Values are reserved in blocks from the backend when it is a {@link SequenceAllocator}, otherwise the sequence
+     * only lives in this manager and starts over from the seed after a restart.
+     */
+    @Override
+    public long next(String sequence, Seed seed) throws DAOException {
+        BlockSequence blocks = sequences.get(sequence);
+        if(blocks == null){
+            SequenceAllocator allocator = supports(SequenceAllocator.class) ?
+                    (SequenceAllocator) serverDao : new LocalAllocator();
+            BlockSequence created = new BlockSequence(allocator, sequence, seed.initialValue());
+            blocks = sequences.putIfAbsent(sequence, created);
+            if(blocks == null) blocks = created;
+        }
+        return blocks.next();
+    }
+
+    private static final class LocalAllocator implements SequenceAllocator {
+        private AtomicLong next;
+
+        @Override
+        public synchronized long allocate(String sequence, int size, long initialValue) {
+            if(next == null) next = new AtomicLong(initialValue);
+            return next.getAndAdd(size);
+        }
+    }
+
     @Override
     public KeyPair keys(KeyPair keys) {
         return serverDao.keys(keys);
@@ -98,6 +311,10 @@ public final class DAOManager implements ServerDAO {
             super(DAOManager.class);
             this.transientObjects = transientObjects;
         }
+
+        public Collection<T> getObjects(){
+            return transientObjects;
+        }
     }
 
     public static final class GET_EVENT<T extends TransientObject> extends Event {
@@ -106,6 +323,10 @@ public final class DAOManager implements ServerDAO {
             super(DAOManager.class);
             this.transientObjects = transientObjects;
         }
+
+        public Collection<T> getObjects(){
+            return transientObjects;
+        }
     }
 
     public static final class SAVE_EVENT extends Event {
@@ -114,6 +335,10 @@ public final class DAOManager implements ServerDAO {
             super(DAOManager.class);
             this.transientObjects = ObjectUtils.v2c(object);
         }
+
+        public Collection<TransientObject> getObjects(){
+            return transientObjects;
+        }
     }
 
     public static final class DELETE_EVENT extends Event {
@@ -122,6 +347,22 @@ public final class DAOManager implements ServerDAO {
             super(DAOManager.class);
             this.transientObjects = ObjectUtils.v2c(object);
         }
+
+        public Collection<TransientObject> getObjects(){
+            return transientObjects;
+        }
+    }
+
+    public static final class DELETE_QUERY_EVENT extends Event {
+        String objectType;
+        protected DELETE_QUERY_EVENT(String objectType) {
+            super(DAOManager.class);
+            this.objectType = objectType;
+        }
+
+        public String getObjectType(){
+            return objectType;
+        }
     }
 
     public static final class EXISTS_EVENT extends Event {
@@ -130,6 +371,10 @@ public final class DAOManager implements ServerDAO {
             super(DAOManager.class);
             this.transientObjects = ObjectUtils.v2c(object);
         }
+
+        public Collection<TransientObject> getObjects(){
+            return transientObjects;
+        }
     }
 
 
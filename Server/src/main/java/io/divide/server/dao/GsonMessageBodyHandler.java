@@ -24,6 +24,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
@@ -39,16 +40,18 @@ public class GsonMessageBodyHandler implements MessageBodyWriter<Object>,
 
     private static final String UTF_8 = "UTF-8";
 
-    private Gson gson;
+    // Gson is thread safe, one instance is shared by every provider and streaming response
+    private static final Gson GSON = createGson();
 
-    private Gson getGson() {
-        if (gson == null) {
-            final GsonBuilder gsonBuilder = new GsonBuilder();
-            gsonBuilder.enableComplexMapKeySerialization();
-//            gsonBuilder.setPrettyPrinting();
-            gson = gsonBuilder.create();
-        }
-        return gson;
+    private static Gson createGson() {
+        final GsonBuilder gsonBuilder = new GsonBuilder();
+        gsonBuilder.enableComplexMapKeySerialization();
+//        gsonBuilder.setPrettyPrinting();
+        return gsonBuilder.create();
+    }
+
+    public static Gson gson() {
+        return GSON;
     }
 
     @Override
@@ -67,7 +70,7 @@ public class GsonMessageBodyHandler implements MessageBodyWriter<Object>,
             } else {
                 jsonType = genericType;
             }
-            return getGson().fromJson(streamReader, jsonType);
+            return GSON.fromJson(streamReader, jsonType);
         } finally {
             streamReader.close();
         }
@@ -75,7 +78,7 @@ public class GsonMessageBodyHandler implements MessageBodyWriter<Object>,
 
     @Override
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
-        return true;
+        return !StreamingOutput.class.isAssignableFrom(type); // written by jersey itself
     }
 
     @Override
@@ -93,7 +96,7 @@ public class GsonMessageBodyHandler implements MessageBodyWriter<Object>,
             } else {
                 jsonType = genericType;
             }
-            getGson().toJson(object, jsonType, writer);
+            GSON.toJson(object, jsonType, writer);
         } finally {
             writer.close();
         }
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.server.dao;
+
+import io.divide.dao.CachingServerDAO;
+import io.divide.dao.ServerDAO;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import io.divide.shared.transitory.query.QueryResult;
+import io.divide.shared.util.ConcurrentLruCache;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches query results keyed by the query itself, see {@link Query#equals(Object)}. Every save or delete of an object
+ * type invalidates all cached results of that type, {@link DAOManager} does so for every write it sees. A result is
+ * fresh for the time to live after it was loaded, for the following stale period it is still served while a
+ * background reload replaces it. Results with more objects than the maximum result size are not cached, neither are
+ * random selects.
+ */
+public class QueryCache {
+
+    private static final Logger logger = Logger.getLogger(QueryCache.class.getName());
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final int DEFAULT_MAX_RESULT_SIZE = 500;
+    public static final long DEFAULT_TTL_SECONDS = 30;
+    public static final long DEFAULT_STALE_SECONDS = 30;
+
+    private final ConcurrentLruCache<Query,Entry> cache;
+    private final int maxResultSize;
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final Executor refresher;
+
+    private final ConcurrentMap<String,AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String,TypeStats> stats = new ConcurrentHashMap<String, TypeStats>();
+
+    public QueryCache(){
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_RESULT_SIZE, DEFAULT_TTL_SECONDS, DEFAULT_STALE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public QueryCache(int maxEntries, int maxResultSize, long ttl, long staleWhileRevalidate, TimeUnit unit){
+        this(maxEntries, maxResultSize, ttl, staleWhileRevalidate, unit, defaultRefresher(maxEntries));
+    }
+
+    /**
+     * @param maxEntries maximum number of cached results.
+     * @param maxResultSize results with more objects are not cached.
+     * @param ttl time a result is served as is after it was loaded.
+     * @param staleWhileRevalidate time after the ttl during which the old result is served while it is reloaded, 0 to
+     *                             reload before answering.
+     * @param unit unit of ttl and staleWhileRevalidate.
+     * @param refresher runs the background reloads of stale results.
+     */
+    public QueryCache(int maxEntries, int maxResultSize, long ttl, long staleWhileRevalidate, TimeUnit unit, Executor refresher){
+        if(ttl < 1) throw new IllegalArgumentException("ttl must be positive: " + ttl);
+        this.ttlNanos = unit.toNanos(ttl);
+        this.staleNanos = unit.toNanos(Math.max(0, staleWhileRevalidate));
+        this.maxResultSize = maxResultSize;
+        this.refresher = refresher;
+        this.cache = new ConcurrentLruCache<Query, Entry>(maxEntries, ttl + Math.max(0, staleWhileRevalidate), unit);
+    }
+
+    // a single daemon thread, each stale entry has at most one reload queued
+    private static Executor defaultRefresher(int maxEntries){
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, maxEntries)),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "QueryCache-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    public static boolean isCacheable(Query query){
+        return QueryBuilder.QueryAction.SELECT.equals(query.getAction()) &&
+               query.getFrom() != null &&
+               !Boolean.TRUE.equals(query.getRandom());
+    }
+
+    /**
+     * @return the cached result of query, loading it from dao if it is not cached or no longer valid. Callers get
+     * their own copies of the cached objects.
+     */
+    public <O extends TransientObject> List<O> query(final Query query, final ServerDAO dao){
+        if(!isCacheable(query)) return dao.query(query);
+
+        TypeStats typeStats = statsOf(query.getFrom());
+        long generation = generationOf(query.getFrom()).get();
+        final Entry entry = cache.get(query);
+        if(entry != null && entry.generation == generation){
+            long age = System.nanoTime() - entry.loaded;
+            if(age <= ttlNanos){
+                typeStats.hits.incrementAndGet();
+                return entry.copy();
+            }
+            if(age <= ttlNanos + staleNanos){
+                typeStats.staleHits.incrementAndGet();
+                if(entry.refreshing.compareAndSet(false, true)){
+                    try{
+                        refresher.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try{
+                                    load(query, dao);
+                                } catch (RuntimeException e){
+                                    logger.log(Level.WARNING, "Refresh failed: " + query, e);
+                                } finally {
+                                    entry.refreshing.set(false);
+                                }
+                            }
+                        });
+                    } catch (RejectedExecutionException e){
+                        entry.refreshing.set(false);
+                    }
+                }
+                return entry.copy();
+            }
+        }
+        typeStats.misses.incrementAndGet();
+        return load(query, dao);
+    }
+
+    /**
+     * @return the cached result of query if it is fresh, otherwise null. Nothing is loaded.
+     */
+    public <O extends TransientObject> List<O> getIfPresent(Query query){
+        if(!isCacheable(query)) return null;
+
+        Entry entry = cache.get(query);
+        TypeStats typeStats = statsOf(query.getFrom());
+        if(entry == null || entry.generation != generationOf(query.getFrom()).get() ||
+           System.nanoTime() - entry.loaded > ttlNanos){
+            typeStats.misses.incrementAndGet();
+            return null;
+        }
+        typeStats.hits.incrementAndGet();
+        return entry.copy();
+    }
+
+    private <O extends TransientObject> List<O> load(Query query, ServerDAO dao){
+        // read before loading, a write during the load leaves the entry behind already invalid
+        long generation = generationOf(query.getFrom()).get();
+        List<O> results = dao.query(query);
+        if(results.size() <= maxResultSize){
+            cache.put(query, new Entry(results, generation));
+        }
+        return results;
+    }
+
+    /**
+     * Drops every cached result of objectType.
+     */
+    public void invalidate(String objectType){
+        generationOf(objectType).incrementAndGet();
+        statsOf(objectType).invalidations.incrementAndGet();
+    }
+
+    public void invalidateAll(){
+        for(AtomicLong generation : generations.values()){
+            generation.incrementAndGet();
+        }
+        cache.clear();
+    }
+
+    public int size(){
+        return cache.size();
+    }
+
+    public long evictionCount(){
+        return cache.evictionCount();
+    }
+
+    /**
+     * @return object types which were queried or invalidated through this cache.
+     */
+    public Set<String> getTypes(){
+        return Collections.unmodifiableSet(stats.keySet());
+    }
+
+    /**
+     * @return share of queries of objectType answered from the cache, fresh or stale.
+     */
+    public double hitRatio(String objectType){
+        TypeStats s = stats.get(objectType);
+        if(s == null) return 0;
+        long hits = s.hits.get() + s.staleHits.get();
+        long total = hits + s.misses.get();
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    public long hitCount(String objectType){
+        TypeStats s = stats.get(objectType);
+        return (s == null) ? 0 : s.hits.get();
+    }
+
+    public long staleHitCount(String objectType){
+        TypeStats s = stats.get(objectType);
+        return (s == null) ? 0 : s.staleHits.get();
+    }
+
+    public long missCount(String objectType){
+        TypeStats s = stats.get(objectType);
+        return (s == null) ? 0 : s.misses.get();
+    }
+
+    public long invalidationCount(String objectType){
+        TypeStats s = stats.get(objectType);
+        return (s == null) ? 0 : s.invalidations.get();
+    }
+
+    private AtomicLong generationOf(String objectType){
+        AtomicLong generation = generations.get(objectType);
+        if(generation == null){
+            AtomicLong created = new AtomicLong();
+            generation = generations.putIfAbsent(objectType, created);
+            if(generation == null) generation = created;
+        }
+        return generation;
+    }
+
+    private TypeStats statsOf(String objectType){
+        TypeStats s = stats.get(objectType);
+        if(s == null){
+            TypeStats created = new TypeStats();
+            s = stats.putIfAbsent(objectType, created);
+            if(s == null) s = created;
+        }
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCache{" +
+                "size=" + size() +
+                ", types=" + stats +
+                '}';
+    }
+
+    private static final class Entry {
+        final List<TransientObject> objects;
+        final String nextCursor;
+        final long generation;
+        final long loaded = System.nanoTime();
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(List<? extends TransientObject> results, long generation){
+            this.objects = new ArrayList<TransientObject>(results.size());
+            for(TransientObject o : results){
+                objects.add(CachingServerDAO.copy(o));
+            }
+            this.nextCursor = QueryResult.nextCursorOf(results);
+            this.generation = generation;
+        }
+
+        <O extends TransientObject> List<O> copy(){
+            QueryResult<O> copy = new QueryResult<O>(objects.size());
+            for(TransientObject o : objects){
+                copy.add((O) CachingServerDAO.copy(o));
+            }
+            copy.setNextCursor(nextCursor);
+            return copy;
+        }
+    }
+
+    private static final class TypeStats {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong staleHits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong invalidations = new AtomicLong();
+
+        @Override
+        public String toString() {
+            return "{hits=" + hits + ", stale=" + staleHits + ", misses=" + misses + ", invalidations=" + invalidations + '}';
+        }
+    }
+}
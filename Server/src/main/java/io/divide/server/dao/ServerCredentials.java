@@ -20,6 +20,7 @@ import io.divide.shared.util.ReflectionUtils;
 import io.divide.shared.transitory.Credentials;
 import io.divide.shared.transitory.TransientObject;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class ServerCredentials extends Credentials {
@@ -43,4 +44,14 @@ public class ServerCredentials extends Credentials {
         super.setOwnerId(id);
     }
 
+    /**
+     * @return copy of this object which does not share its user or meta data with the original.
+     */
+    public ServerCredentials copy(){
+        ServerCredentials copy = new ServerCredentials(this);
+        copy.user_data = new LinkedHashMap<String, Object>(user_data);
+        copy.meta_data = new LinkedHashMap<String, String>(meta_data);
+        return copy;
+    }
+
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.server.endpoints;
+
+import io.divide.dao.ServerDAO;
+import io.divide.shared.server.ExecutorAsyncDAO;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static io.divide.server.utils.ResponseUtils.fromDAOExpection;
+
+/**
+ * Runs the work of suspended requests on an executor, so container threads only read requests and write responses.
+ *
+ * At most maxInFlight requests are dispatched at once, further requests are answered with a 503 right away rather than
+ * queued. A request not answered within the timeout is answered with a 503, its call still runs to completion and
+ * keeps its slot until then.
+ */
+public class AsyncDispatcher {
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+    private static final Logger logger = Logger.getLogger(AsyncDispatcher.class.getName());
+
+    private final String name;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final long timeout;
+    private final TimeUnit unit;
+
+    public AsyncDispatcher(String name, ExecutorService executor, int maxInFlight, long timeout, TimeUnit unit){
+        this.name = name;
+        this.executor = executor;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timeout = timeout;
+        this.unit = unit;
+    }
+
+    /**
+     * @return a dispatcher with a thread per call if the runtime has virtual threads, or else with the given number of
+     * pooled threads.
+     */
+    public static AsyncDispatcher forBlockingCalls(String name, int threads, int maxInFlight, long timeout, TimeUnit unit){
+        ExecutorService executor = virtualThreadExecutor();
+        if(executor == null) executor = pooledExecutor(name, threads, maxInFlight);
+        return new AsyncDispatcher(name, executor, maxInFlight, timeout, unit);
+    }
+
+    /**
+     * @return a dispatcher for cpu bound work, such as hashing passwords, with a thread per core.
+     */
+    public static AsyncDispatcher forComputation(String name, int maxInFlight, long timeout, TimeUnit unit){
+        int threads = Runtime.getRuntime().availableProcessors();
+        return new AsyncDispatcher(name, pooledExecutor(name, threads, maxInFlight), maxInFlight, timeout, unit);
+    }
+
+    public static ExecutorService pooledExecutor(String name, int threads, int maxInFlight){
+        return ExecutorAsyncDAO.boundedExecutor(name, threads, maxInFlight);
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, or null before Java 21.
+     */
+    public static ExecutorService virtualThreadExecutor(){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public ExecutorService getExecutor(){
+        return executor;
+    }
+
+    /**
+     * @return requests which may still be dispatched before new ones are turned away.
+     */
+    public int availableSlots(){
+        return inFlight.availablePermits();
+    }
+
+    /**
+     * Resumes response with the result of call once it ran on the executor. A {@link ServerDAO.DAOException} is
+     * answered with its status, any other exception with a 500.
+     */
+    public void dispatch(final AsyncResponse response, final Callable<Response> call){
+        if(!inFlight.tryAcquire()){
+            response.resume(unavailable("saturated"));
+            return;
+        }
+
+        response.setTimeoutHandler(new TimeoutHandler() {
+            @Override
+            public void handleTimeout(AsyncResponse asyncResponse) {
+                asyncResponse.resume(unavailable("timed out"));
+            }
+        });
+        response.setTimeout(timeout, unit);
+
+        try{
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        Response result = call.call();
+                        // the request timed out meanwhile, an unwritten entity may still hold a cursor open
+                        if(!response.resume(result) && result.getEntity() instanceof Closeable){
+                            ((Closeable) result.getEntity()).close();
+                        }
+                    } catch (ServerDAO.DAOException e) {
+                        response.resume(fromDAOExpection(e));
+                    } catch (Exception e) {
+                        logger.severe(ExceptionUtils.getStackTrace(e));
+                        response.resume(Response.serverError().build());
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e){
+            inFlight.release();
+            response.resume(unavailable("rejected"));
+        }
+    }
+
+    /**
+     * Stops taking calls, calls already dispatched still complete.
+     */
+    public void shutdown(){
+        executor.shutdown();
+    }
+
+    private Response unavailable(String reason){
+        logger.warning(name + " " + reason);
+        return Response
+                .status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(RETRY_AFTER_HEADER, 1)
+                .build();
+    }
+}
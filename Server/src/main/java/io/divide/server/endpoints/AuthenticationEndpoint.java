@@ -28,13 +28,17 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import javax.annotation.PostConstruct;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
 import java.util.Calendar;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import static io.divide.server.utils.ResponseUtils.*;
@@ -46,6 +50,7 @@ public final class AuthenticationEndpoint{
 
     @Context DAOManager dao;
     @Context SecManager keyManager;
+    @Context EndpointDispatchers dispatchers;
 
     private static Calendar c = Calendar.getInstance(TimeZone.getDefault());
     AuthServerLogic<TransientObject> authServerLogic;
@@ -55,6 +60,14 @@ public final class AuthenticationEndpoint{
         authServerLogic = new AuthServerLogic<TransientObject>(dao,keyManager);
     }
 
+    // the security context can not be replaced once the method returned, the one left by the SecurityFilter is filled
+    private static void signedIn(ContainerRequestContext context, Credentials user){
+        SecurityContext security = context.getSecurityContext();
+        if(security instanceof UserContext){
+            ((UserContext) security).setUser(user);
+        }
+    }
+
     /*
      * Saves user credentials
      */
@@ -62,21 +75,27 @@ public final class AuthenticationEndpoint{
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response userSignUp(@Context ContainerRequestContext context, Credentials credentials) {
-        try{
-            Credentials toSave = authServerLogic.userSignUp(credentials);
+    public void userSignUp(@Context final ContainerRequestContext context, final Credentials credentials,
+                           @Suspended AsyncResponse response) {
+        dispatchers.auth().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try{
+                    Credentials toSave = authServerLogic.userSignUp(credentials);
 
-            context.setSecurityContext(new UserContext(context.getUriInfo(),toSave));
+                    signedIn(context, toSave);
 
-            logger.info("SignUp Successful. Returning: " + toSave);
-            return ok(toSave);
-        } catch (ServerDAO.DAOException e) {
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return fromDAOExpection(e);
-        } catch (Exception e) {
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return Response.serverError().build();
-        }
+                    logger.info("SignUp Successful. Returning: " + toSave);
+                    return ok(toSave);
+                } catch (ServerDAO.DAOException e) {
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return fromDAOExpection(e);
+                } catch (Exception e) {
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return Response.serverError().build();
+                }
+            }
+        });
     }
 
     /**
@@ -89,21 +108,27 @@ public final class AuthenticationEndpoint{
     @PUT
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response userSignIn(@Context ContainerRequestContext context, Credentials credentials) {
-        try{
-            Credentials dbCreds = authServerLogic.userSignIn(credentials);
+    public void userSignIn(@Context final ContainerRequestContext context, final Credentials credentials,
+                           @Suspended AsyncResponse response) {
+        dispatchers.auth().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try{
+                    Credentials dbCreds = authServerLogic.userSignIn(credentials);
 
-            context.setSecurityContext(new UserContext(context.getUriInfo(),dbCreds));
+                    signedIn(context, dbCreds);
 
-            logger.info("Login Successful. Returning: " + dbCreds);
-            return ok(dbCreds);
-        }catch (ServerDAO.DAOException e) {
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return fromDAOExpection(e);
-        } catch (Exception e) {
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return Response.serverError().build();
-        }
+                    logger.info("Login Successful. Returning: " + dbCreds);
+                    return ok(dbCreds);
+                }catch (ServerDAO.DAOException e) {
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return fromDAOExpection(e);
+                } catch (Exception e) {
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return Response.serverError().build();
+                }
+            }
+        });
     }
 
     @GET
@@ -129,47 +154,64 @@ public final class AuthenticationEndpoint{
     @GET
     @Path("/validate/{token}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response validateAccount(@PathParam("token") String token) {
-        try{
-            if (authServerLogic.validateAccount(token)) {
-                return Response.ok().build();
-            } else {
-                return Response.status(Status.NOT_FOUND).build();
+    public void validateAccount(@PathParam("token") final String token, @Suspended AsyncResponse response) {
+        dispatchers.auth().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try{
+                    if (authServerLogic.validateAccount(token)) {
+                        return Response.ok().build();
+                    } else {
+                        return Response.status(Status.NOT_FOUND).build();
+                    }
+                }catch (ServerDAO.DAOException e) {
+                    return fromDAOExpection(e);
+                }
             }
-        }catch (ServerDAO.DAOException e) {
-            return fromDAOExpection(e);
-        }
+        });
     }
 
     @GET
     @Path("/from/{token}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getUserFromToken(@Context ContainerRequestContext context, @PathParam("token") String token) {
-        try{
-            logger.warning("getUserFromToken");
-            Credentials user = authServerLogic.getUserFromAuthToken(token);
-            context.setSecurityContext(new UserContext(context.getUriInfo(),user));
-            return Response.ok(user).build();
-        }catch (ServerDAO.DAOException e) {
-            e.printStackTrace();
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return fromDAOExpection(e);
-        }
+    public void getUserFromToken(@Context final ContainerRequestContext context, @PathParam("token") final String token,
+                                 @Suspended AsyncResponse response) {
+        dispatchers.auth().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try{
+                    logger.warning("getUserFromToken");
+                    Credentials user = authServerLogic.getUserFromAuthToken(token);
+                    signedIn(context, user);
+                    return Response.ok(user).build();
+                }catch (ServerDAO.DAOException e) {
+                    e.printStackTrace();
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return fromDAOExpection(e);
+                }
+            }
+        });
     }
 
     @GET
     @Path("/recover/{token}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response recoverFromOneTimeToken(@Context ContainerRequestContext context, @PathParam("token") String token) {
-        try{
-            Credentials user = authServerLogic.getUserFromRecoveryToken(token);
-            context.setSecurityContext(new UserContext(context.getUriInfo(),user));
-            return Response.ok(user).build();
-        }catch (ServerDAO.DAOException e) {
-            e.printStackTrace();
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return fromDAOExpection(e);
-        }
+    public void recoverFromOneTimeToken(@Context final ContainerRequestContext context, @PathParam("token") final String token,
+                                        @Suspended AsyncResponse response) {
+        dispatchers.auth().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try{
+                    Credentials user = authServerLogic.getUserFromRecoveryToken(token);
+                    signedIn(context, user);
+                    return Response.ok(user).build();
+                }catch (ServerDAO.DAOException e) {
+                    e.printStackTrace();
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return fromDAOExpection(e);
+                }
+            }
+        });
     }
 
 //    @POST
@@ -218,25 +260,37 @@ public final class AuthenticationEndpoint{
     @Path("/user/data/{userId}")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response recieveUserData(@Context Session session, @PathParam("userId") String userId, Map<String,?> data) {
-        try{
-            authServerLogic.recieveUserData(userId,data);
-            return Response.ok().build();
-        } catch (ServerDAO.DAOException e) {
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return fromDAOExpection(e);
-        }
+    public void recieveUserData(@Context Session session, @PathParam("userId") final String userId, final Map<String,?> data,
+                                @Suspended AsyncResponse response) {
+        dispatchers.auth().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try{
+                    authServerLogic.recieveUserData(userId,data);
+                    return Response.ok().build();
+                } catch (ServerDAO.DAOException e) {
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return fromDAOExpection(e);
+                }
+            }
+        });
     }
 
     @PUT
     @Path("/user/data/{userId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response sendUserData(@Context Session session, @PathParam("userId") String userId) {
-        try{
-            return Response.ok(authServerLogic.sendUserData(userId)).build(); // ok(getUserById(dao,userId).getUserData());
-        }catch (Exception e) {
-            return errorResponse(e);
-        }
+    public void sendUserData(@Context Session session, @PathParam("userId") final String userId,
+                             @Suspended AsyncResponse response) {
+        dispatchers.auth().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try{
+                    return Response.ok(authServerLogic.sendUserData(userId)).build(); // ok(getUserById(dao,userId).getUserData());
+                }catch (Exception e) {
+                    return errorResponse(e);
+                }
+            }
+        });
     }
 
 //    public void sendEmail(EmailMessage emailMessage) throws MessagingException, UnsupportedEncodingException {
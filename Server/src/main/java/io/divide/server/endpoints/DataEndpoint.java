@@ -16,94 +16,130 @@
 
 package io.divide.server.endpoints;
 
+import io.divide.server.dao.CursorStreamingOutput;
 import io.divide.server.dao.DAOManager;
 import io.divide.server.dao.Session;
-import io.divide.server.utils.ResponseUtils;
-import io.divide.dao.ServerDAO;
 import io.divide.shared.util.ObjectUtils;
 import io.divide.shared.transitory.Credentials;
 import io.divide.shared.transitory.TransientObject;
 import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryResult;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 @Path("/data")
 public class DataEndpoint {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
     private Logger logger = Logger.getLogger(DataEndpoint.class.getName());
 
     @Context
     DAOManager dao;
 
+    @Context
+    EndpointDispatchers dispatchers;
+
     @POST
     @Path("/get/{objectType}")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response get( @PathParam("objectType") String objectType, Collection<String> keys) {
-        try { logger.info("get: " + keys);
-            return Response
-                    .ok()
-                    .entity(dao.get(objectType,ObjectUtils.c2v(keys)))
-                    .build();
-        }catch (ServerDAO.DAOException e) {
-            return ResponseUtils.fromDAOExpection(e);
-        }
+    public void get(@PathParam("objectType") final String objectType, final Collection<String> keys,
+                    @Suspended AsyncResponse response) {
+        dispatchers.data().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                logger.info("get: " + keys);
+                return Response
+                        .ok()
+                        .entity(dao.get(objectType, ObjectUtils.c2v(keys)))
+                        .build();
+            }
+        });
     }
 
     @POST
     @Path("/query")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response query(@Context Session session,Query query) {
-        try { logger.info("query: " + query);
-            // not allowed to query credentials type
-            if(query.getFrom().equals(Credentials.class.getName())){
-                return Response.status(Response.Status.FORBIDDEN).entity("Query of Credentials is FORBIDDEN").build();
-            }
-            return Response
-                    .ok()
-                    .entity(dao.query(query))
-                    .build();
-        }catch (ServerDAO.DAOException e) {
-            return ResponseUtils.fromDAOExpection(e);
+    public void query(@Context Session session, final Query query, @Suspended AsyncResponse response) {
+        logger.info("query: " + query);
+        // not allowed to query credentials type
+        if(query.getFrom().equals(Credentials.class.getName())){
+            response.resume(Response.status(Response.Status.FORBIDDEN).entity("Query of Credentials is FORBIDDEN").build());
+            return;
         }
+        dispatchers.data().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                query.validate();
+                // only a limited page carries a next cursor, and it has to be known before the body is written. The cursor
+                // is backend state (a RID, a datastore cursor), not a field of the last object, so the page is read in one
+                // go. It holds at most limit objects, everything else is streamed.
+                if(query.getLimit() != null){
+                    List<TransientObject> results = dao.query(query);
+                    Response.ResponseBuilder response = Response.ok().entity(results);
+                    String next = QueryResult.nextCursorOf(results);
+                    if(next != null){
+                        response.header(NEXT_CURSOR_HEADER, next);
+                    }
+                    return response.build();
+                }
+                return Response
+                        .ok()
+                        .entity(new CursorStreamingOutput(dao.stream(query)))
+                        .build();
+            }
+        });
     }
 
     @POST
     @Path("/save")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response save(Collection<ServerObject> objects) {
-        try { logger.info("save: " + objects);
-            dao.save(ObjectUtils.c2v(objects));
-
-            return Response
-                    .ok()
-                    .build();
-        }catch (ServerDAO.DAOException e) {
-            return ResponseUtils.fromDAOExpection(e);
-        }
+    public void save(final Collection<ServerObject> objects, @Suspended AsyncResponse response) {
+        dispatchers.data().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                logger.info("save: " + objects);
+                dao.save(ObjectUtils.c2v(objects));
+
+                return Response
+                        .ok()
+                        .build();
+            }
+        });
     }
 
     @GET
     @Path("/count/{objectType}")
-    public Response count(@Context Session session, @PathParam("objectType") String objectType) {
-        try { logger.info("count: " + objectType);
-            int count = dao.count(objectType);
-
-            return Response
-                    .ok()
-                    .entity(count)
-                    .build();
-        }catch (Exception e) {
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return Response.serverError().build();
-        }
+    public void count(@Context Session session, @PathParam("objectType") final String objectType,
+                      @Suspended AsyncResponse response) {
+        dispatchers.data().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                logger.info("count: " + objectType);
+                try {
+                    int count = dao.count(objectType);
+
+                    return Response
+                            .ok()
+                            .entity(count)
+                            .build();
+                }catch (Exception e) {
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return Response.serverError().build();
+                }
+            }
+        });
     }
 
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.server.endpoints;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link AsyncDispatcher} of each endpoint, so a slow datastore or a burst of sign ins only exhausts the slots of
+ * the endpoint concerned.
+ */
+public class EndpointDispatchers {
+
+    private final AsyncDispatcher data;
+    private final AsyncDispatcher auth;
+    private final AsyncDispatcher push;
+
+    public EndpointDispatchers(AsyncDispatcher data, AsyncDispatcher auth, AsyncDispatcher push){
+        this.data = data;
+        this.auth = auth;
+        this.push = push;
+    }
+
+    /**
+     * Datastore and push calls mostly wait, they get virtual threads where available. Auth calls hash passwords, they
+     * get a thread per core.
+     */
+    public static EndpointDispatchers defaults(){
+        return new EndpointDispatchers(
+                AsyncDispatcher.forBlockingCalls("data", 64, 4096, 30, TimeUnit.SECONDS),
+                AsyncDispatcher.forComputation("auth", 1024, 10, TimeUnit.SECONDS),
+                AsyncDispatcher.forBlockingCalls("push", 16, 1024, 30, TimeUnit.SECONDS));
+    }
+
+    public AsyncDispatcher data(){
+        return data;
+    }
+
+    public AsyncDispatcher auth(){
+        return auth;
+    }
+
+    public AsyncDispatcher push(){
+        return push;
+    }
+
+    public void shutdown(){
+        data.shutdown();
+        auth.shutdown();
+        push.shutdown();
+    }
+}
@@ -28,11 +28,14 @@ import io.divide.shared.transitory.EncryptedEntity;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import static io.divide.shared.util.DaoUtils.getUserByEmail;
@@ -46,55 +49,72 @@ public class PushEndpoint {
 
     @Context DAOManager dao;
     @Context SecManager keyManager;
+    @Context EndpointDispatchers dispatchers;
 
     /*
     currently failing as the decryption key is probably different
      */
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response register(@Context Session session,EncryptedEntity.Reader entity){
-        try{
-            Credentials credentials = session.getUser();
-            entity.setKey(keyManager.getPrivateKey());
-
-            credentials.setPushMessagingKey(entity.get("token"));
-            dao.save(credentials);
-        } catch (DAOException e) {
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return fromDAOExpection(e);
-        } catch (Exception e) {
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return Response.serverError().entity("Shit").build();
-        }
-
-        return Response.ok().build();
+    public void register(@Context final Session session, final EncryptedEntity.Reader entity,
+                         @Suspended AsyncResponse response){
+        dispatchers.push().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try{
+                    Credentials credentials = session.getUser();
+                    entity.setKey(keyManager.getPrivateKey());
+
+                    credentials.setPushMessagingKey(entity.get("token"));
+                    dao.save(credentials);
+                } catch (DAOException e) {
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return fromDAOExpection(e);
+                } catch (Exception e) {
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return Response.serverError().entity("Shit").build();
+                }
+
+                return Response.ok().build();
+            }
+        });
     }
 
     @DELETE
-    public Response unregister(@Context Session session){
-        try{
-            Credentials credentials = session.getUser();
-            credentials.setPushMessagingKey("");
-            dao.save(credentials);
-        } catch (ServerDAO.DAOException e) {
-            logger.severe(ExceptionUtils.getStackTrace(e));
-            return fromDAOExpection(e);
-        }
-        return Response.ok().build();
+    public void unregister(@Context final Session session, @Suspended AsyncResponse response){
+        dispatchers.push().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try{
+                    Credentials credentials = session.getUser();
+                    credentials.setPushMessagingKey("");
+                    dao.save(credentials);
+                } catch (ServerDAO.DAOException e) {
+                    logger.severe(ExceptionUtils.getStackTrace(e));
+                    return fromDAOExpection(e);
+                }
+                return Response.ok().build();
+            }
+        });
     }
 
     @GET
     @Path("/test/{email}/{data}")
     @Produces(MediaType.TEXT_HTML)
-    public Response pushToDevice(@PathParam("email")String userId, @PathParam("data")String data){
-
-        try {
-            String result = sendMessageToDevice(userId,data);
-            return Response.ok().entity(result).build();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Response.serverError().entity(e.getMessage()).build();
-        }
+    public void pushToDevice(@PathParam("email") final String userId, @PathParam("data") final String data,
+                             @Suspended AsyncResponse response){
+        dispatchers.push().dispatch(response, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    String result = sendMessageToDevice(userId,data);
+                    return Response.ok().entity(result).build();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    return Response.serverError().entity(e.getMessage()).build();
+                }
+            }
+        });
     }
 
     private String sendMessageToDevice(String email, String input) throws ServerDAO.DAOException, IOException {
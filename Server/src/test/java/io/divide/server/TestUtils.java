@@ -17,6 +17,7 @@
 package io.divide.server;
 
 import com.google.gson.Gson;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
@@ -51,6 +52,9 @@ public class TestUtils {
     }
 
     public static TestWrapper setUp(){
+        // tests write through the dao on their own thread while endpoints read on theirs, a level 1 cache would let
+        // the endpoints see records as they were before the test wrote them
+        OGlobalConfiguration.CACHE_LEVEL1_ENABLED.setValue(false);
         TestWrapper container = new TestWrapper();
         container.time = System.nanoTime();
         container.db = new ODatabaseDocumentTx(OrientDBDao.DEFAULT_CONFIG);
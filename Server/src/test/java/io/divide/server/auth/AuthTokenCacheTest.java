@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.server.auth;
+
+import io.divide.dao.ServerDAO;
+import io.divide.server.TestUtils;
+import io.divide.server.dao.DAOManager;
+import io.divide.server.dao.ServerCredentials;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.Cursors;
+import io.divide.shared.transitory.Credentials;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AuthTokenCacheTest {
+
+    @Test
+    public void testGetPut() throws Exception {
+        AuthTokenCache cache = new AuthTokenCache();
+        ServerCredentials user = new ServerCredentials(TestUtils.getTestUser());
+
+        assertNull(cache.get(user.getAuthToken()));
+        cache.put(user.getAuthToken(), user, cache.epoch());
+
+        ServerCredentials cached = cache.get(user.getAuthToken());
+        assertNotNull(cached);
+        assertNotSame(user, cached);
+        assertEquals(user.getObjectKey(), cached.getObjectKey());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void testStaleEpoch() throws Exception {
+        AuthTokenCache cache = new AuthTokenCache();
+        ServerCredentials user = new ServerCredentials(TestUtils.getTestUser());
+
+        long epoch = cache.epoch();
+        cache.invalidate(user);
+        cache.put(user.getAuthToken(), user, epoch);
+        assertNull(cache.get(user.getAuthToken()));
+    }
+
+    @Test
+    public void testInvalidatedOnSave() throws Exception {
+        AuthTokenCache cache = new AuthTokenCache();
+        ServerCredentials user = new ServerCredentials(TestUtils.getTestUser());
+        cache.put(user.getAuthToken(), user, cache.epoch());
+
+        DAOManager manager = new DAOManager(new NoOpDAO());
+        manager.save(new TransientObject(TransientObject.class){});
+        assertNotNull(cache.get(user.getAuthToken()));
+
+        manager.save(user);
+        assertNull(cache.get(user.getAuthToken()));
+
+        cache.put(user.getAuthToken(), user, cache.epoch());
+        manager.delete(user);
+        assertNull(cache.get(user.getAuthToken()));
+    }
+
+    @Test
+    public void testInvalidatedOnDeleteQuery() throws Exception {
+        AuthTokenCache cache = new AuthTokenCache();
+        ServerCredentials user = new ServerCredentials(TestUtils.getTestUser());
+        cache.put(user.getAuthToken(), user, cache.epoch());
+
+        DAOManager manager = new DAOManager(new NoOpDAO());
+        manager.query(new QueryBuilder().delete().from(TransientObject.class).build());
+        assertNotNull(cache.get(user.getAuthToken()));
+
+        manager.query(new QueryBuilder().delete().from(Credentials.class).build());
+        assertNull(cache.get(user.getAuthToken()));
+        cache.close();
+    }
+
+    @Test
+    public void testIndexPrunedOnEviction() throws Exception {
+        AuthTokenCache cache = new AuthTokenCache(1, 10, TimeUnit.MINUTES);
+        for(int x=0;x<10;x++){
+            ServerCredentials user = new ServerCredentials(TestUtils.getTestUser());
+            cache.put("token" + x, user, cache.epoch());
+        }
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.indexSize());
+
+        // a newer token of the same object replaces the older one
+        ServerCredentials user = new ServerCredentials(TestUtils.getTestUser());
+        AuthTokenCache large = new AuthTokenCache();
+        large.put("old", user, large.epoch());
+        large.put("new", user, large.epoch());
+        assertNull(large.get("old"));
+        assertEquals(1, large.indexSize());
+        cache.close();
+        large.close();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        AuthTokenCache cache = new AuthTokenCache();
+        ServerCredentials user = new ServerCredentials(TestUtils.getTestUser());
+        cache.close();
+        cache.close();
+
+        // no longer listening
+        cache.put(user.getAuthToken(), user, cache.epoch());
+        new DAOManager(new NoOpDAO()).save(user);
+        assertNotNull(cache.get(user.getAuthToken()));
+    }
+
+    private static class NoOpDAO implements ServerDAO {
+        @Override
+        public KeyPair keys(KeyPair keys) { return keys; }
+        @Override
+        public List<TransientObject> query(Query query) throws DAOException { return Collections.emptyList(); }
+        @Override
+        public Cursor<TransientObject> stream(Query query) throws DAOException { return Cursors.empty(); }
+        @Override
+        public Collection<TransientObject> get(String type, String... keys) throws DAOException { return Collections.emptyList(); }
+        @Override
+        public void save(TransientObject... objects) throws DAOException { }
+        @Override
+        public void delete(TransientObject... objects) throws DAOException { }
+        @Override
+        public boolean exists(TransientObject... objects) { return false; }
+        @Override
+        public int count(String objectType) { return 0; }
+    }
+}
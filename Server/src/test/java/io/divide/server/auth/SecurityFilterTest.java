@@ -16,11 +16,65 @@
 
 package io.divide.server.auth;
 
+import io.divide.dao.CachingServerDAO;
+import io.divide.dao.ServerDAO;
+import io.divide.dao.ThreadSafeDAO;
+import io.divide.dao.WriteBehindServerDAO;
+import io.divide.server.dao.DAOManager;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.Cursors;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
 import org.junit.Test;
 
+import java.security.KeyPair;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 public class SecurityFilterTest {
     @Test
     public void testFilter() throws Exception {
 
     }
+
+    // the filter only queries without holding the manager's lock when the backend is known to be thread safe
+    @Test
+    public void testThreadSafety() throws Exception {
+        assertFalse(new DAOManager(new StubDAO()).isThreadSafe());
+        assertFalse(new DAOManager(new CachingServerDAO(new StubDAO())).isThreadSafe());
+        assertTrue(new DAOManager(new ThreadSafeStubDAO()).isThreadSafe());
+        assertTrue(new DAOManager(new CachingServerDAO(new ThreadSafeStubDAO())).isThreadSafe());
+
+        WriteBehindServerDAO writeBehind = new WriteBehindServerDAO(new ThreadSafeStubDAO());
+        assertTrue(new DAOManager(writeBehind).isThreadSafe());
+        writeBehind.shutdown();
+    }
+
+    private static class ThreadSafeStubDAO extends StubDAO implements ThreadSafeDAO {
+        @Override
+        public boolean isThreadSafe() { return true; }
+    }
+
+    private static class StubDAO implements ServerDAO {
+        @Override
+        public KeyPair keys(KeyPair keys) { return keys; }
+        @Override
+        public List<TransientObject> query(Query query) throws DAOException { return Collections.emptyList(); }
+        @Override
+        public Cursor<TransientObject> stream(Query query) throws DAOException { return Cursors.empty(); }
+        @Override
+        public Collection<TransientObject> get(String type, String... keys) throws DAOException { return Collections.emptyList(); }
+        @Override
+        public void save(TransientObject... objects) throws DAOException { }
+        @Override
+        public void delete(TransientObject... objects) throws DAOException { }
+        @Override
+        public boolean exists(TransientObject... objects) { return false; }
+        @Override
+        public int count(String objectType) { return 0; }
+    }
 }
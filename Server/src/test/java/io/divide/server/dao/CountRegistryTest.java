@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.server.dao;
+
+import io.divide.dao.ServerDAO;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.Cursors;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class CountRegistryTest {
+
+    @Test
+    public void testTrackedCounts() throws Exception {
+        MapDAO backend = new MapDAO();
+        DAOManager manager = new DAOManager(backend, null, new CountRegistry().track(A.class));
+        A a = new A();
+        backend.save(a, new A(), new B());
+
+        assertEquals(2, manager.count(a.getObjectType()));
+        assertEquals(2, manager.count(A.class.getName())); // class names count the same type
+        assertEquals(1, backend.counts);
+
+        // writes neither read the backend nor move the count until it is reconciled
+        manager.save(new A(), new A());
+        manager.delete(a);
+        assertEquals(0, backend.gets);
+        assertEquals(2, manager.count(a.getObjectType()));
+        assertEquals(1, backend.counts);
+
+        manager.query(new QueryBuilder().delete().from(A.class).build());
+        assertEquals(-1, manager.count(a.getObjectType()));
+        manager.getCountRegistry().invalidate(a.getObjectType());
+        assertEquals(0, manager.count(a.getObjectType()));
+        assertEquals(2, backend.counts);
+    }
+
+    @Test
+    public void testUntrackedCounts() throws Exception {
+        MapDAO backend = new MapDAO();
+        DAOManager manager = new DAOManager(backend, null, new CountRegistry().track(A.class));
+        B b = new B();
+        manager.save(b);
+
+        assertEquals(1, manager.count(b.getObjectType()));
+        manager.save(new B());
+        assertEquals(2, manager.count(b.getObjectType()));
+        assertEquals(2, backend.counts);
+        assertEquals(0, backend.gets);
+    }
+
+    @Test
+    public void testReconcile() throws Exception {
+        MapDAO backend = new MapDAO();
+        DAOManager manager = new DAOManager(backend, null, new CountRegistry(1, TimeUnit.MILLISECONDS).track(A.class));
+        A a = new A();
+
+        assertEquals(0, manager.count(a.getObjectType()));
+        backend.save(a); // not seen by the manager
+        Thread.sleep(5);
+        assertEquals(1, manager.count(a.getObjectType()));
+        assertEquals(2, backend.counts);
+    }
+
+    public static class A extends TransientObject {
+        public A(){
+            super(A.class);
+        }
+    }
+
+    public static class B extends TransientObject {
+        public B(){
+            super(B.class);
+        }
+    }
+
+    private static class MapDAO implements ServerDAO {
+        final Map<String,TransientObject> objects = new LinkedHashMap<String, TransientObject>();
+        int counts;
+        int gets;
+
+        @Override
+        public KeyPair keys(KeyPair keys) { return keys; }
+        @Override
+        public List<TransientObject> query(Query query) throws DAOException {
+            int deleted = 0;
+            for(Iterator<TransientObject> i = objects.values().iterator();i.hasNext();){
+                if(i.next().getObjectType().equals(query.getFrom())){
+                    i.remove();
+                    deleted++;
+                }
+            }
+            A result = new A();
+            result.put("count", deleted);
+            return Arrays.<TransientObject>asList(result);
+        }
+        @Override
+        public Cursor<TransientObject> stream(Query query) throws DAOException { return Cursors.empty(); }
+        @Override
+        public Collection<TransientObject> get(String type, String... keys) throws DAOException {
+            gets++;
+            List<TransientObject> found = new ArrayList<TransientObject>();
+            for(String key : keys){
+                TransientObject o = objects.get(key);
+                if(o != null && o.getObjectType().equals(type)) found.add(o);
+            }
+            return found;
+        }
+        @Override
+        public void save(TransientObject... toSave) throws DAOException {
+            for(TransientObject o : toSave) objects.put(o.getObjectKey(), o);
+        }
+        @Override
+        public void delete(TransientObject... toDelete) throws DAOException {
+            for(TransientObject o : toDelete) objects.remove(o.getObjectKey());
+        }
+        @Override
+        public boolean exists(TransientObject... objects) { return false; }
+        @Override
+        public int count(String objectType) {
+            counts++;
+            int count = 0;
+            for(TransientObject o : objects.values()){
+                if(o.getObjectType().equals(objectType)) count++;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.divide.server.dao;
+
+import io.divide.dao.CachingServerDAO;
+import io.divide.dao.ServerDAO;
+import io.divide.dao.WriteBehindServerDAO;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.Cursors;
+import io.divide.shared.server.SequenceAllocator;
+import io.divide.shared.server.Sequences;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DAOManagerTest {
+
+    private static final Sequences.Seed SEED = new Sequences.Seed() {
+        @Override
+        public long initialValue() {
+            return 1000;
+        }
+    };
+
+    @Test
+    public void testSequencesOfWrappedAllocator() throws Exception {
+        AllocatingDAO backend = new AllocatingDAO();
+        WriteBehindServerDAO writeBehind = new WriteBehindServerDAO(backend);
+        DAOManager manager = new DAOManager(new CachingServerDAO(writeBehind));
+
+        assertEquals(1000, manager.next("owner", SEED));
+        assertEquals(1001, manager.next("owner", SEED));
+        assertEquals(1, backend.allocations);
+
+        // a second server sharing the backend gets its own block
+        DAOManager other = new DAOManager(new CachingServerDAO(backend));
+        assertEquals(1000 + backend.size, other.next("owner", SEED));
+        assertEquals(2, backend.allocations);
+
+        manager.shutdown();
+        other.shutdown();
+        writeBehind.shutdown();
+    }
+
+    @Test
+    public void testSequencesOfWrappedPlainDAO() throws Exception {
+        DAOManager manager = new DAOManager(new CachingServerDAO(new StubDAO()));
+        assertEquals(1000, manager.next("owner", SEED));
+        assertEquals(1001, manager.next("owner", SEED));
+        manager.shutdown();
+    }
+
+    private static class AllocatingDAO extends StubDAO implements SequenceAllocator {
+        int allocations;
+        int size;
+        long next = -1;
+
+        @Override
+        public synchronized long allocate(String sequence, int size, long initialValue) throws DAOException {
+            allocations++;
+            this.size = size;
+            if(next < 0) next = initialValue;
+            long first = next;
+            next += size;
+            return first;
+        }
+    }
+
+    private static class StubDAO implements ServerDAO {
+        @Override
+        public KeyPair keys(KeyPair keys) { return keys; }
+        @Override
+        public List<TransientObject> query(Query query) throws DAOException { return Collections.emptyList(); }
+        @Override
+        public Cursor<TransientObject> stream(Query query) throws DAOException { return Cursors.empty(); }
+        @Override
+        public Collection<TransientObject> get(String type, String... keys) throws DAOException { return Collections.emptyList(); }
+        @Override
+        public void save(TransientObject... objects) throws DAOException { }
+        @Override
+        public void delete(TransientObject... objects) throws DAOException { }
+        @Override
+        public boolean exists(TransientObject... objects) { return false; }
+        @Override
+        public int count(String objectType) { return 0; }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.server.dao;
+
+import com.google.gson.Gson;
+import io.divide.dao.ServerDAO;
+import io.divide.shared.server.Cursor;
+import io.divide.shared.server.Cursors;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.OPERAND;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryCacheTest {
+
+    private static final String TYPE = Query.safeTable(A.class);
+
+    @Test
+    public void testHitsAndTypeInvalidation() throws Exception {
+        CountingDAO backend = new CountingDAO(1);
+        DAOManager manager = new DAOManager(backend, new QueryCache());
+
+        manager.query(query("x"));
+        List<TransientObject> results = manager.query(query("x"));
+        results.get(0).put("value", "changed by caller");
+        Gson gson = new Gson();
+        results = manager.query(gson.fromJson(gson.toJson(query("x")), Query.class));
+        assertEquals("0", results.get(0).get(String.class, "value"));
+        assertEquals(1, backend.queries);
+
+        manager.query(query("y"));
+        assertEquals(2, backend.queries);
+
+        manager.save(new B());
+        manager.query(query("x"));
+        assertEquals(2, backend.queries);
+
+        manager.save(new A());
+        manager.query(query("x"));
+        assertEquals(3, backend.queries);
+
+        QueryCache cache = manager.getQueryCache();
+        assertEquals(3, cache.hitCount(TYPE));
+        assertEquals(3, cache.missCount(TYPE));
+        assertEquals(0.5, cache.hitRatio(TYPE), 0.001);
+        assertEquals(1, cache.invalidationCount(TYPE));
+    }
+
+    @Test
+    public void testMaxResultSize() throws Exception {
+        CountingDAO backend = new CountingDAO(3);
+        DAOManager manager = new DAOManager(backend, new QueryCache(10, 2, 1, 0, TimeUnit.MINUTES));
+
+        manager.query(query("x"));
+        manager.query(query("x"));
+        assertEquals(2, backend.queries);
+        assertEquals(0, manager.getQueryCache().size());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        CountingDAO backend = new CountingDAO(1);
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        QueryCache cache = new QueryCache(10, 10, 200, TimeUnit.HOURS.toMillis(1), TimeUnit.MILLISECONDS, direct);
+        DAOManager manager = new DAOManager(backend, cache);
+
+        manager.query(query("x"));
+        Thread.sleep(250);
+        List<TransientObject> stale = manager.query(query("x"));
+        assertEquals("0", stale.get(0).get(String.class, "value"));
+        assertEquals(2, backend.queries); // reloaded in the background
+        assertEquals(1, cache.staleHitCount(TYPE));
+
+        List<TransientObject> fresh = manager.query(query("x"));
+        assertEquals("1", fresh.get(0).get(String.class, "value"));
+        assertEquals(2, backend.queries);
+    }
+
+    private static Query query(String value){
+        return new QueryBuilder().select().from(A.class).where("key", OPERAND.EQ, value).limit(10).build();
+    }
+
+    public static class A extends TransientObject {
+        public A(){
+            super(A.class);
+        }
+    }
+
+    public static class B extends TransientObject {
+        public B(){
+            super(B.class);
+        }
+    }
+
+    // answers every query with size objects whose value is the number of earlier queries
+    private static class CountingDAO implements ServerDAO {
+        final int size;
+        int queries;
+
+        CountingDAO(int size){
+            this.size = size;
+        }
+
+        @Override
+        public KeyPair keys(KeyPair keys) { return keys; }
+        @Override
+        public List<TransientObject> query(Query query) throws DAOException {
+            List<TransientObject> results = new ArrayList<TransientObject>();
+            for(int x=0;x<size;x++){
+                A a = new A();
+                a.put("value", String.valueOf(queries));
+                results.add(a);
+            }
+            queries++;
+            return results;
+        }
+        @Override
+        public Cursor<TransientObject> stream(Query query) throws DAOException { return Cursors.of(query(query)); }
+        @Override
+        public Collection<TransientObject> get(String type, String... keys) throws DAOException { return Collections.emptyList(); }
+        @Override
+        public void save(TransientObject... objects) throws DAOException { }
+        @Override
+        public void delete(TransientObject... objects) throws DAOException { }
+        @Override
+        public boolean exists(TransientObject... objects) { return false; }
+        @Override
+        public int count(String objectType) { return 0; }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.server.endpoints;
+
+import io.divide.dao.ServerDAO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class AsyncDispatcherTest {
+
+    private AsyncDispatcher dispatcher;
+
+    @Before
+    public void setUp(){
+        dispatcher = new AsyncDispatcher("test", AsyncDispatcher.pooledExecutor("test", 1, 1), 1, 1, TimeUnit.MINUTES);
+    }
+
+    @After
+    public void tearDown(){
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testResumesWithResult() throws Exception {
+        RecordingResponse first = new RecordingResponse();
+        dispatcher.dispatch(first.proxy, respond(Response.ok().build()));
+        assertEquals(200, first.next().getStatus());
+        awaitSlots(1);
+
+        RecordingResponse failed = new RecordingResponse();
+        dispatcher.dispatch(failed.proxy, new Callable<Response>() {
+            @Override
+            public Response call() {
+                throw new ServerDAO.DAOException(404, "missing");
+            }
+        });
+        assertEquals(404, failed.next().getStatus());
+        awaitSlots(1);
+    }
+
+    @Test
+    public void testRejectsWhenSaturated() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingResponse running = new RecordingResponse();
+        dispatcher.dispatch(running.proxy, new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                release.await();
+                return Response.ok().build();
+            }
+        });
+
+        RecordingResponse rejected = new RecordingResponse();
+        dispatcher.dispatch(rejected.proxy, respond(Response.ok().build()));
+        Response response = rejected.next();
+        assertEquals(503, response.getStatus());
+        assertNotNull(response.getHeaderString(AsyncDispatcher.RETRY_AFTER_HEADER));
+
+        release.countDown();
+        assertEquals(200, running.next().getStatus());
+    }
+
+    @Test
+    public void testTimeoutClosesLateEntity() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        RecordingResponse timedOut = new RecordingResponse();
+        dispatcher.dispatch(timedOut.proxy, new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                release.await();
+                return Response.ok().entity(new Closeable() {
+                    @Override
+                    public void close() {
+                        closed.countDown();
+                    }
+                }).build();
+            }
+        });
+
+        timedOut.timeoutHandler.handleTimeout(timedOut.proxy);
+        assertEquals(503, timedOut.next().getStatus());
+
+        release.countDown();
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+    }
+
+    // a call keeps its slot while its response is written, which is after resume
+    private void awaitSlots(int slots) throws InterruptedException {
+        for(int x=0;x<1000 && dispatcher.availableSlots() != slots;x++){
+            Thread.sleep(10);
+        }
+        assertEquals(slots, dispatcher.availableSlots());
+    }
+
+    private static Callable<Response> respond(final Response response){
+        return new Callable<Response>() {
+            @Override
+            public Response call() {
+                return response;
+            }
+        };
+    }
+
+    // records resumed responses, only the first resume takes effect as with a real AsyncResponse
+    private static class RecordingResponse implements InvocationHandler {
+        final BlockingQueue<Response> resumed = new ArrayBlockingQueue<Response>(1);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AsyncResponse proxy = (AsyncResponse) Proxy.newProxyInstance(AsyncResponse.class.getClassLoader(),
+                new Class[]{AsyncResponse.class}, this);
+        volatile TimeoutHandler timeoutHandler;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if(method.getName().equals("resume")) return done.compareAndSet(false, true) && resumed.offer((Response) args[0]);
+            if(method.getName().equals("setTimeoutHandler")) timeoutHandler = (TimeoutHandler) args[0];
+            return method.getReturnType().equals(boolean.class) ? true : null;
+        }
+
+        Response next() throws InterruptedException {
+            Response response = resumed.poll(10, TimeUnit.SECONDS);
+            assertNotNull("not resumed", response);
+            return response;
+        }
+    }
+}
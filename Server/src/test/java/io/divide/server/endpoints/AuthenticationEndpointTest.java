@@ -18,16 +18,21 @@ package io.divide.server.endpoints;
 
 import io.divide.server.ServerTest;
 import io.divide.server.TestUtils;
+import io.divide.shared.util.AuthTokenUtils;
+import io.divide.shared.util.Base64;
 import io.divide.shared.util.Crypto;
+import io.divide.shared.util.DaoUtils;
 import io.divide.shared.transitory.Credentials;
 import org.glassfish.jersey.server.ContainerRequest;
 import org.glassfish.jersey.test.JerseyTest;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
 import org.junit.Test;
 
 import java.net.URLEncoder;
 import java.security.PublicKey;
+import java.util.UUID;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class AuthenticationEndpointTest extends ServerTest {
 
@@ -70,6 +75,28 @@ public class AuthenticationEndpointTest extends ServerTest {
         target("/auth").request().put(TestUtils.toEntity(user), String.class);
     }
 
+    @Test
+    public void testSignInReplacesExpiringToken() throws Exception {
+        Credentials user = signUpUser(this);
+
+        // a token a minute from expiring, in the format which can still be minted with a chosen expiration
+        Credentials stored = DaoUtils.getUserByEmail(container.serverDao, user.getEmailAddress());
+        StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+        encryptor.setPassword(TestUtils.KEY);
+        String expiring = Base64.encode(encryptor.encrypt(
+                UUID.randomUUID() + "|" + stored.getOwnerId() + "|" + (System.currentTimeMillis() + 60000)));
+        stored.setAuthToken(expiring);
+        container.serverDao.save(stored);
+
+        user.setPassword(TestUtils.getTestUser().getPassword());
+        user.encryptPassword(getPublicKey(this));
+        String json = target("/auth").request().put(TestUtils.toEntity(user), String.class);
+        Credentials signedIn = TestUtils.getGson().fromJson(json, Credentials.class);
+
+        assertNotEquals(expiring, signedIn.getAuthToken());
+        assertTrue(new AuthTokenUtils.AuthToken(TestUtils.KEY, expiring).isRevoked());
+        assertFalse(new AuthTokenUtils.AuthToken(TestUtils.KEY, signedIn.getAuthToken()).isRevoked());
+    }
 
 //    @Test
 //    public void testValidateAccount() throws Exception {
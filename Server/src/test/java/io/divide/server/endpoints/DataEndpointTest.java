@@ -16,49 +16,141 @@
 
 package io.divide.server.endpoints;
 
-public class DataEndpointTest /*extends JerseyTest*/ {
-
-//    @Path("hello")
-//    public static class HelloResource {
-//        @GET
-//        public String getHello() {
-//            return "Hello World!";
-//        }
-//    }
-//
-//    @Override
-//    protected Application configure() {
-//        return new ResourceConfig(HelloResource.class);
-//    }
-//
-////    @Test
-//    public void test() {
-//        final String hello = target("hello").request().get(String.class);
-//        assertEquals("Hello World!", hello);
-//    }
-
-//    @Before
-//    public void setUp() throws Exception {
-//
-//    }
-//
-//    @After
-//    public void tearDown() throws Exception {
-//
-//    }
-//
-//    @Test
-//    public void testGet() throws Exception {
-//
-//    }
-//
-//    @Test
-//    public void testQuery() throws Exception {
-//
-//    }
-//
-//    @Test
-//    public void testSave() throws Exception {
-//
-//    }
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.divide.server.ServerTest;
+import io.divide.server.TestUtils;
+import io.divide.shared.transitory.Credentials;
+import io.divide.shared.transitory.FilePermissions;
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.OPERAND;
+import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.QueryBuilder;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.junit.Test;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DataEndpointTest extends ServerTest {
+
+    @Test
+    public void testQuery() throws Exception {
+        Credentials user = AuthenticationEndpointTest.signUpUser(this);
+        container.serverDao.save(new DataObject("a"), new DataObject("b"), new DataObject("b"));
+
+        Query query = new QueryBuilder().select().from(DataObject.class).where("value", OPERAND.EQ, "b").build();
+        String json = target("/data/query")
+                .request()
+                .header(ContainerRequest.AUTHORIZATION, "CUSTOM " + user.getAuthToken())
+                .post(TestUtils.toEntity(query), String.class);
+
+        JsonArray results = new JsonParser().parse(json).getAsJsonArray();
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    public void testQueryInvalidValue() throws Exception {
+        Credentials user = AuthenticationEndpointTest.signUpUser(this);
+
+        Query query = new QueryBuilder().select().from(DataObject.class).where("value", OPERAND.GREATER_THAN, 10).build();
+        String json = TestUtils.getGson().toJson(query).replace("\"10\"", "\"ten\"");
+        Response response = target("/data/query")
+                .request()
+                .header(ContainerRequest.AUTHORIZATION, "CUSTOM " + user.getAuthToken())
+                .post(Entity.entity(json, MediaType.APPLICATION_JSON_TYPE));
+        assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    public void testQueryPaged() throws Exception {
+        Credentials user = AuthenticationEndpointTest.signUpUser(this);
+        container.serverDao.save(new DataObject("a"), new DataObject("b"), new DataObject("c"));
+
+        Query query = new QueryBuilder().select().from(DataObject.class).limit(2).build();
+        Response response = target("/data/query")
+                .request()
+                .header(ContainerRequest.AUTHORIZATION, "CUSTOM " + user.getAuthToken())
+                .post(TestUtils.toEntity(query));
+        assertEquals(2, new JsonParser().parse(response.readEntity(String.class)).getAsJsonArray().size());
+        String cursor = response.getHeaderString(DataEndpoint.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+
+        query = new QueryBuilder().select().from(DataObject.class).after(cursor).limit(2).build();
+        response = target("/data/query")
+                .request()
+                .header(ContainerRequest.AUTHORIZATION, "CUSTOM " + user.getAuthToken())
+                .post(TestUtils.toEntity(query));
+        assertEquals(1, new JsonParser().parse(response.readEntity(String.class)).getAsJsonArray().size());
+        assertNull(response.getHeaderString(DataEndpoint.NEXT_CURSOR_HEADER));
+
+        // without a limit the rest is streamed and there is no further page
+        query = new QueryBuilder().select().from(DataObject.class).after(cursor).build();
+        response = target("/data/query")
+                .request()
+                .header(ContainerRequest.AUTHORIZATION, "CUSTOM " + user.getAuthToken())
+                .post(TestUtils.toEntity(query));
+        assertEquals(1, new JsonParser().parse(response.readEntity(String.class)).getAsJsonArray().size());
+        assertNull(response.getHeaderString(DataEndpoint.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void testQueryProjection() throws Exception {
+        Credentials user = AuthenticationEndpointTest.signUpUser(this);
+        DataObject a = new DataObject("a");
+        a.put("other", "x");
+        container.serverDao.save(a);
+
+        Query query = new QueryBuilder().select("value").from(DataObject.class).build();
+        String json = target("/data/query")
+                .request()
+                .header(ContainerRequest.AUTHORIZATION, "CUSTOM " + user.getAuthToken())
+                .post(TestUtils.toEntity(query), String.class);
+
+        JsonArray results = new JsonParser().parse(json).getAsJsonArray();
+        assertEquals(1, results.size());
+        JsonObject result = results.get(0).getAsJsonObject();
+        assertEquals(1, result.getAsJsonObject(TransientObject.USER_DATA).entrySet().size());
+        assertEquals("a", result.getAsJsonObject(TransientObject.USER_DATA).get("value").getAsString());
+        assertEquals(a.getObjectKey(), result.getAsJsonObject(TransientObject.META_DATA)
+                .get(TransientObject.OBJECT_KEY.KEY).getAsString());
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        Credentials user = AuthenticationEndpointTest.signUpUser(this);
+        DataObject a = new DataObject("a");
+        DataObject b = new DataObject("b");
+        container.serverDao.save(a, b);
+
+        String json = target("/data/get/" + Query.safeTable(DataObject.class))
+                .request()
+                .header(ContainerRequest.AUTHORIZATION, "CUSTOM " + user.getAuthToken())
+                .post(TestUtils.toEntity(Arrays.asList(a.getObjectKey(), b.getObjectKey(), "missing")), String.class);
+
+        JsonArray results = new JsonParser().parse(json).getAsJsonArray();
+        assertEquals(2, results.size());
+    }
+
+    public static class DataObject extends TransientObject {
+
+        public DataObject(){
+            FilePermissions fp = this.getFilePermissions();
+            fp.setReadable(true, FilePermissions.Level.WORLD);
+            fp.setWritable(true, FilePermissions.Level.WORLD);
+            this.setFilePermissions(fp);
+        }
+
+        public DataObject(String value){
+            this();
+            put("value", value);
+        }
+    }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.server;
+
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static io.divide.shared.server.DAO.DAOException;
+
+/**
+ * Non blocking companion of {@link DAO}. Each call starts its work and returns at once, so independent calls overlap
+ * and the calling thread is not held for the round trip. A failed call completes its future with an
+ * {@link java.util.concurrent.ExecutionException} caused by the {@link DAOException}. A call which can not even be
+ * started, because the backend is saturated, throws a {@link DAOException} right away.
+ */
+public interface AsyncDAO<IN extends TransientObject, OUT extends TransientObject> {
+    public <O extends OUT> Future<List<O>> queryAsync(Query query) throws DAOException;
+    public <O extends OUT> Future<Collection<O>> getAsync(String type, String... keys) throws DAOException;
+    public Future<Void> saveAsync(IN... objects) throws DAOException;
+    public Future<Void> deleteAsync(IN... objects) throws DAOException;
+    public Future<Integer> countAsync(String objectType) throws DAOException;
+}
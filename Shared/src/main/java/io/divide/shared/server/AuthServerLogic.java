@@ -30,16 +30,15 @@ import org.apache.http.HttpStatus;
 import org.mindrot.jbcrypt.BCrypt;
 
 import java.security.PublicKey;
-import java.util.Calendar;
 import java.util.Map;
-import java.util.TimeZone;
 
 import static io.divide.shared.server.DAO.DAOException;
 import static io.divide.shared.util.DaoUtils.getUserByEmail;
 
 public class AuthServerLogic<DAOOut extends TransientObject> extends ServerLogic<DAOOut> {
 
-    private static Calendar c = Calendar.getInstance(TimeZone.getDefault());
+    public static final String OWNER_ID_SEQUENCE = "owner_id";
+
 
     private KeyManager keyManager;
 
@@ -62,7 +61,7 @@ public class AuthServerLogic<DAOOut extends TransientObject> extends ServerLogic
         String de = toSave.getPassword();
         String ha = BCrypt.hashpw(de, BCrypt.gensalt(10));
 
-        toSave.setOwnerId(dao.count(Credentials.class.getName()) + 1);
+        toSave.setOwnerId(nextOwnerId());
         toSave.setPassword(ha); //hash the password for storage
         toSave.setAuthToken(AuthTokenUtils.getNewToken(keyManager.getSymmetricKey(), toSave));
         toSave.setRecoveryToken(AuthTokenUtils.getNewToken(keyManager.getSymmetricKey(), toSave));
@@ -72,6 +71,24 @@ public class AuthServerLogic<DAOOut extends TransientObject> extends ServerLogic
         return toSave;
     }
 
+    /*
+     * Owner ids come from the owner id sequence when the dao provides sequences. The sequence starts after the users
+     * existing when it is first used, so ids handed out by counting before stay unique.
+     */
+    private int nextOwnerId() throws DAOException {
+        if(dao instanceof Sequences){
+            long id = ((Sequences) dao).next(OWNER_ID_SEQUENCE, new Sequences.Seed() {
+                @Override
+                public long initialValue() {
+                    return dao.count(Credentials.class.getName()) + 1;
+                }
+            });
+            if(id > Integer.MAX_VALUE) throw new DAOException(HttpStatus.SC_INSUFFICIENT_STORAGE,"Owner ids exhausted");
+            return (int) id;
+        }
+        return dao.count(Credentials.class.getName()) + 1;
+    }
+
     /**
      * Checks username/password against that stored in DB, if same return
      * token, if token expired create new.
@@ -106,14 +123,15 @@ public class AuthServerLogic<DAOOut extends TransientObject> extends ServerLogic
                     }
                 }
 
-//              check if token is expired, if so return/set new
+//              check if token is expiring, if so replace it and revoke the one still in use
                 AuthTokenUtils.AuthToken token;
                 try {
                     token = new AuthTokenUtils.AuthToken(keyManager.getSymmetricKey(),dbCreds.getAuthToken());
                 } catch (AuthenticationException e) {
                     throw new DAOException(HttpStatus.SC_INTERNAL_SERVER_ERROR,"internal error");
                 }
-                if (c.getTime().getTime() > token.expirationDate) {
+                if (token.isExpiring()) {
+                    AuthTokenUtils.revoke(keyManager.getSymmetricKey(), dbCreds.getAuthToken());
                     dbCreds.setAuthToken(AuthTokenUtils.getNewToken(keyManager.getSymmetricKey(), dbCreds));
                     dao.save(dbCreds);
                 }
@@ -156,6 +174,7 @@ public class AuthServerLogic<DAOOut extends TransientObject> extends ServerLogic
             throw new DAOException(HttpStatus.SC_INTERNAL_SERVER_ERROR,"internal error");
         }
         if(authToken.isExpired()) throw new DAOException(HttpStatus.SC_UNAUTHORIZED,"Expired");
+        if(authToken.isRevoked()) throw new DAOException(HttpStatus.SC_UNAUTHORIZED,"Revoked");
 
         Query q = new QueryBuilder().select().from(Credentials.class).where(Credentials.AUTH_TOKEN_KEY,OPERAND.EQ,token).build();
 
@@ -173,6 +192,8 @@ public class AuthServerLogic<DAOOut extends TransientObject> extends ServerLogic
         TransientObject to = ObjectUtils.get1stOrNull(dao.query(q));
         if(to!=null){
             ServerCredentials sc = new ServerCredentials(to);
+            AuthTokenUtils.revoke(keyManager.getSymmetricKey(), sc.getAuthToken());
+            AuthTokenUtils.revoke(keyManager.getSymmetricKey(), sc.getRecoveryToken());
             sc.setAuthToken(AuthTokenUtils.getNewToken(keyManager.getSymmetricKey(), sc));
             sc.setRecoveryToken(AuthTokenUtils.getNewToken(keyManager.getSymmetricKey(), sc));
             dao.save(sc);
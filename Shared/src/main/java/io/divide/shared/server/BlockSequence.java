@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.divide.shared.server.DAO.DAOException;
+
+/**
+ * Values of one sequence handed out from blocks reserved with a {@link SequenceAllocator}. Values within a block are
+ * taken with a single atomic increment, only the thread which finds the block used up reserves the next one. Values
+ * of a block which is not used up when the server stops are skipped, so values are unique but not contiguous.
+ */
+public final class BlockSequence {
+
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+
+    private final SequenceAllocator allocator;
+    private final String sequence;
+    private final int blockSize;
+    private final long initialValue;
+
+    private volatile Block block = new Block(0, 0);
+
+    public BlockSequence(SequenceAllocator allocator, String sequence, long initialValue){
+        this(allocator, sequence, DEFAULT_BLOCK_SIZE, initialValue);
+    }
+
+    public BlockSequence(SequenceAllocator allocator, String sequence, int blockSize, long initialValue){
+        if(blockSize < 1) throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+        this.allocator = allocator;
+        this.sequence = sequence;
+        this.blockSize = blockSize;
+        this.initialValue = initialValue;
+    }
+
+    public long next() throws DAOException {
+        while (true){
+            Block current = block;
+            long value = current.next.getAndIncrement();
+            if(value < current.end) return value;
+
+            synchronized (this){
+                if(block == current){
+                    long first = allocator.allocate(sequence, blockSize, initialValue);
+                    block = new Block(first, first + blockSize);
+                }
+            }
+        }
+    }
+
+    public String getSequence(){
+        return sequence;
+    }
+
+    private static final class Block {
+        final AtomicLong next;
+        final long end;
+
+        Block(long first, long end){
+            this.next = new AtomicLong(first);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.server;
+
+import java.util.Iterator;
+
+/**
+ * Forward only iterator over query results which are converted as they are read. Callers must {@link #close()}
+ * the cursor when they stop iterating before the end.
+ */
+public interface Cursor<T> extends Iterator<T> {
+
+    /**
+     * Releases any backend resources held by this cursor. Calling close more than once has no effect.
+     */
+    public void close();
+
+}
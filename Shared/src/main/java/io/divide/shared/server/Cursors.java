@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.server;
+
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public final class Cursors {
+
+    private Cursors(){}
+
+    /**
+     * Adapter for DAOs without native streaming, the results of {@link DAO#query(Query)} are materialized
+     * and then handed out one by one.
+     */
+    public static <OUT extends TransientObject, O extends OUT> Cursor<O> query(DAO<?,OUT> dao, Query query) throws DAO.DAOException {
+        return of(dao.<O>query(query));
+    }
+
+    public static <T> Cursor<T> of(Iterable<? extends T> iterable){
+        return of(iterable.iterator());
+    }
+
+    public static <T> Cursor<T> of(final Iterator<? extends T> iterator){
+        return new Cursor<T>() {
+            private boolean closed = false;
+
+            @Override
+            public boolean hasNext() {
+                return !closed && iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                return iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+            }
+        };
+    }
+
+    public static <T> Cursor<T> empty(){
+        return of(Collections.<T>emptyList());
+    }
+
+}
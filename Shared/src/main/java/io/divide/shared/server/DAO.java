@@ -24,6 +24,7 @@ import java.util.List;
 
 public interface DAO<IN extends TransientObject, OUT extends TransientObject>  {
     public <O extends OUT> List<O> query(Query query) throws DAOException; // Object, returns different types
+    public <O extends OUT> Cursor<O> stream(Query query) throws DAOException; // lazily converted, must be closed
     public <O extends OUT> Collection<O> get(String type, String... keys) throws DAOException;
     public void save(IN... objects) throws DAOException;
     public void delete(IN... objects) throws DAOException;
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.server;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Future of a backend call which was started when the future was created and is finished by the first get, such as
+ * an Objectify load. Whatever remains, waiting on the backend and converting its result, runs on the thread calling
+ * get. The timeout of get is not enforced on that part.
+ */
+public abstract class DeferredFuture<T> implements Future<T> {
+
+    private boolean done = false;
+    private T value;
+    private Throwable failure;
+
+    /**
+     * @return a future which is already done.
+     */
+    public static <T> DeferredFuture<T> of(final T value){
+        DeferredFuture<T> future = new DeferredFuture<T>() {
+            @Override
+            protected T complete() {
+                return value;
+            }
+        };
+        future.done = true;
+        future.value = value;
+        return future;
+    }
+
+    /**
+     * @return a future which already failed with failure.
+     */
+    public static <T> DeferredFuture<T> failed(final Throwable failure){
+        DeferredFuture<T> future = new DeferredFuture<T>() {
+            @Override
+            protected T complete() {
+                return null;
+            }
+        };
+        future.done = true;
+        future.failure = failure;
+        return future;
+    }
+
+    /**
+     * Waits for the backend and builds the value, called once.
+     */
+    protected abstract T complete() throws Exception;
+
+    @Override
+    public synchronized T get() throws ExecutionException {
+        if(!done){
+            try{
+                value = complete();
+            } catch (Throwable t){
+                failure = t;
+            }
+            done = true;
+        }
+        if(failure != null) throw new ExecutionException(failure);
+        return value;
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws ExecutionException {
+        return get();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+}
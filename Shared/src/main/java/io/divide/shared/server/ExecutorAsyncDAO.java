@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.server;
+
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.transitory.query.Query;
+import org.apache.http.HttpStatus;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.divide.shared.server.DAO.DAOException;
+
+/**
+ * {@link AsyncDAO} running the calls of a blocking {@link DAO} on an executor. The default executor has a fixed number
+ * of threads and a bounded queue, calls made while the queue is full fail with a 503 instead of piling up.
+ */
+public class ExecutorAsyncDAO<IN extends TransientObject, OUT extends TransientObject> implements AsyncDAO<IN,OUT> {
+
+    public static final int DEFAULT_THREADS = 16;
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private final DAO<IN,OUT> dao;
+    private final ExecutorService executor;
+
+    public ExecutorAsyncDAO(DAO<IN,OUT> dao){
+        this(dao, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public ExecutorAsyncDAO(DAO<IN,OUT> dao, int threads, int queueCapacity){
+        this(dao, boundedExecutor(dao.getClass().getSimpleName(), threads, queueCapacity));
+    }
+
+    public ExecutorAsyncDAO(DAO<IN,OUT> dao, ExecutorService executor){
+        this.dao = dao;
+        this.executor = executor;
+    }
+
+    /**
+     * @return an executor of daemon threads which are started on demand and stopped after a minute idle. Tasks
+     * submitted while all threads are busy and queueCapacity tasks wait are rejected.
+     */
+    public static ExecutorService boundedExecutor(final String name, int threads, int queueCapacity){
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + "-async-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public ExecutorService getExecutor(){
+        return executor;
+    }
+
+    /**
+     * Stops taking calls, calls already submitted still complete.
+     */
+    public void shutdown(){
+        executor.shutdown();
+    }
+
+    @Override
+    public <O extends OUT> Future<List<O>> queryAsync(final Query query) throws DAOException {
+        return submit(new Callable<List<O>>() {
+            @Override
+            public List<O> call() throws Exception {
+                return dao.query(query);
+            }
+        });
+    }
+
+    @Override
+    public <O extends OUT> Future<Collection<O>> getAsync(final String type, final String... keys) throws DAOException {
+        return submit(new Callable<Collection<O>>() {
+            @Override
+            public Collection<O> call() throws Exception {
+                return dao.get(type, keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> saveAsync(final IN... objects) throws DAOException {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                dao.save(objects);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> deleteAsync(final IN... objects) throws DAOException {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                dao.delete(objects);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public Future<Integer> countAsync(final String objectType) throws DAOException {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return dao.count(objectType);
+            }
+        });
+    }
+
+    private <T> Future<T> submit(Callable<T> call){
+        try{
+            return executor.submit(call);
+        } catch (RejectedExecutionException e){
+            throw new DAOException(HttpStatus.SC_SERVICE_UNAVAILABLE, "Too many pending calls");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.server;
+
+import static io.divide.shared.server.DAO.DAOException;
+
+/**
+ * Implemented by DAOs which can reserve values of named, persistent sequences. Every reservation is atomic across
+ * all servers sharing the backend, so values handed out from different reservations never overlap.
+ */
+public interface SequenceAllocator {
+
+    /**
+     * Reserves size consecutive values of sequence.
+     * @param sequence name of the sequence.
+     * @param size number of values to reserve.
+     * @param initialValue first value of the sequence if it does not exist yet.
+     * @return the first reserved value, the reservation ends before first + size.
+     */
+    public long allocate(String sequence, int size, long initialValue) throws DAOException;
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.server;
+
+import static io.divide.shared.server.DAO.DAOException;
+
+/**
+ * Hands out unique values of named sequences, see {@link SequenceAllocator} for the backend side.
+ */
+public interface Sequences {
+
+    /**
+     * Initial value of a sequence which does not exist yet. Only asked for when the sequence is first used by a server.
+     */
+    public interface Seed {
+        long initialValue();
+    }
+
+    public long next(String sequence, Seed seed) throws DAOException;
+}
@@ -20,6 +20,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import io.divide.shared.logging.Logger;
 import io.divide.shared.transitory.query.Query;
+import io.divide.shared.transitory.query.RandomSampling;
 
 import java.util.*;
 
@@ -41,6 +42,7 @@ public class TransientObject {
     public static final MetaKey OBJECT_KEY        = new MetaKey("object_key");
     public static final MetaKey CREATE_DATE_KEY   = new MetaKey("create_date_key");
     public static final MetaKey MODIFIED_DATE_KEY = new MetaKey("modified_date_key");
+    public static final MetaKey RANDOM_INDEX_KEY  = new MetaKey("random_index");
     private static final MetaKey PERMISSIONS_KEY = new MetaKey("permissions_key");
 
     private static Gson gson = new GsonBuilder().serializeNulls().create();
@@ -341,6 +343,19 @@ public class TransientObject {
         return meta_get(String.class, OBJECT_TYPE_KEY);
     }
 
+    /**
+     * @return index random queries sample this object by, assigned the first time it is asked for.
+     * @see RandomSampling
+     */
+    public String getRandomIndex(){
+        String index = meta_data.get(RANDOM_INDEX_KEY.KEY);
+        if(index == null){
+            index = RandomSampling.newIndex();
+            meta_data.put(RANDOM_INDEX_KEY.KEY, index);
+        }
+        return index;
+    }
+
     // accessable to subclasses and this class, stupid java.
     protected void setOwnerId(Integer id){
         if(getOwnerId() != null){
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.transitory.query;
+
+import io.divide.shared.transitory.TransientObject;
+
+/**
+ * Result of a SUM, MIN, MAX or AVG select, one per group when the query is grouped.
+ */
+public class Aggregate extends TransientObject {
+
+    protected Aggregate(){}
+
+    public Aggregate(SelectOperation operation, String field, String from) {
+        put("operation",operation.name());
+        put("field",field);
+        put("from",from);
+    }
+
+    public SelectOperation getOperation(){
+        return SelectOperation.valueOf(get(String.class,"operation"));
+    }
+
+    public String getField(){
+        return get(String.class,"field");
+    }
+
+    public String getFrom(){
+        return get(String.class,"from");
+    }
+
+    /**
+     * @return aggregated value, a Double for SUM and AVG, the field value for MIN and MAX. Null if nothing matched.
+     */
+    public Object getValue(){
+        return get(Object.class,"value");
+    }
+
+    public void setValue(Object value){
+        put("value",value);
+    }
+
+    public Object getGroup(){
+        return get(Object.class,"group");
+    }
+
+    public void setGroup(Object group){
+        put("group",group);
+    }
+}
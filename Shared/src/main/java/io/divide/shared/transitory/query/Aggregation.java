@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.transitory.query;
+
+import io.divide.shared.transitory.TransientObject;
+
+import java.util.*;
+
+/**
+ * Aggregate selects, see {@link SelectOperation}. Backends which can not aggregate natively read the objects matching
+ * {@link #source(Query)} and {@link #fold(Query, Iterator) fold} them one at a time, only one accumulator per group is
+ * held in memory.
+ */
+public final class Aggregation {
+
+    private Aggregation(){}
+
+    public static boolean isAggregate(Query query){
+        return query.getSelect() != null;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the aggregate is missing the field it aggregates.
+     */
+    public static void check(Query query){
+        if(query.getSelect().requiresField() && query.getAggregate() == null){
+            throw new IllegalArgumentException(query.getSelect() + " requires a field");
+        }
+    }
+
+    /**
+     * @return plain select of the objects an aggregate is computed over, the aggregate limit applies to its groups.
+     */
+    public static Query source(Query query){
+        Query source = new Query();
+        source.action = QueryBuilder.QueryAction.SELECT;
+        source.from = query.getFrom();
+        source.where.putAll(query.getWhere());
+        source.after = query.getAfter();
+        return source;
+    }
+
+    public static List<TransientObject> fold(Query query, Iterator<? extends TransientObject> objects){
+        check(query);
+        Map<Object,Accumulator> groups = new HashMap<Object, Accumulator>();
+        while(objects.hasNext()){
+            TransientObject object = objects.next();
+            Object group = query.getGroupBy() == null ? null : Sorting.valueOf(object, query.getGroupBy());
+            Accumulator accumulator = groups.get(group);
+            if(accumulator == null){
+                accumulator = new Accumulator();
+                groups.put(group, accumulator);
+            }
+            accumulator.add(query.getAggregate() == null ? null : Sorting.valueOf(object, query.getAggregate()));
+        }
+
+        if(groups.isEmpty() && query.getGroupBy() == null){
+            groups.put(null, new Accumulator());
+        }
+
+        List<Object> keys = new ArrayList<Object>(groups.keySet());
+        Collections.sort(keys, new Comparator<Object>() {
+            @Override
+            public int compare(Object one, Object two) {
+                return Sorting.compareValues(one, two);
+            }
+        });
+        if(query.getLimit() != null && keys.size() > query.getLimit()){
+            keys = keys.subList(0, query.getLimit());
+        }
+
+        List<TransientObject> results = new ArrayList<TransientObject>(keys.size());
+        for(Object key : keys){
+            results.add(result(query, key, groups.get(key).value(query.getSelect())));
+        }
+        return results;
+    }
+
+    /**
+     * @return the result object for one group, value as read from a backend aggregate or fold.
+     */
+    public static TransientObject result(Query query, Object group, Object value){
+        SelectOperation operation = query.getSelect();
+        if(SelectOperation.COUNT.equals(operation)){
+            Count count = new Count(value == null ? 0 : ((Number) value).intValue(), query.getFrom());
+            if(query.getGroupBy() != null) count.setGroup(group);
+            return count;
+        }
+
+        Aggregate aggregate = new Aggregate(operation, query.getAggregate(), query.getFrom());
+        if(value instanceof Number && (SelectOperation.SUM.equals(operation) || SelectOperation.AVG.equals(operation))){
+            value = ((Number) value).doubleValue();
+        }
+        if(value == null && SelectOperation.SUM.equals(operation)){
+            value = 0d;
+        }
+        if(value != null) aggregate.setValue(value);
+        if(query.getGroupBy() != null) aggregate.setGroup(group);
+        return aggregate;
+    }
+
+    private static final class Accumulator {
+        private int count = 0;
+        private int numbers = 0;
+        private double sum = 0;
+        private Object min;
+        private Object max;
+
+        private void add(Object value){
+            count++;
+            if(value == null) return;
+
+            if(min == null || Sorting.compareValues(value, min) < 0) min = value;
+            if(max == null || Sorting.compareValues(value, max) > 0) max = value;
+
+            Double number = toNumber(value);
+            if(number != null){
+                numbers++;
+                sum += number;
+            }
+        }
+
+        private Object value(SelectOperation operation){
+            switch (operation){
+                case COUNT: return count;
+                case SUM: return sum;
+                case MIN: return min;
+                case MAX: return max;
+                case AVG: return numbers == 0 ? null : sum / numbers;
+            }
+            return null;
+        }
+
+        private static Double toNumber(Object value){
+            if(value instanceof Number) return ((Number) value).doubleValue();
+            try{
+                return Double.valueOf(String.valueOf(value));
+            } catch (NumberFormatException e){
+                return null;
+            }
+        }
+    }
+}
@@ -16,11 +16,61 @@
 
 package io.divide.shared.transitory.query;
 
+import io.divide.shared.server.DAO.DAOException;
+import org.apache.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
 public class Clause {
+
+    /**
+     * Type of a clause value, values are carried as strings and converted back by {@link #getValue()}.
+     */
+    public static enum ValueType{
+        STRING,
+        LONG,
+        DOUBLE,
+        BOOLEAN,
+        TIMESTAMP; // epoch milliseconds
+
+        public static ValueType of(Object value){
+            if(value == null || value instanceof String) return STRING;
+            if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) return LONG;
+            if(value instanceof Double || value instanceof Float) return DOUBLE;
+            if(value instanceof Boolean) return BOOLEAN;
+            if(value instanceof Date) return TIMESTAMP;
+            throw new IllegalArgumentException("Unsupported clause value " + value.getClass().getName());
+        }
+
+        /**
+         * @throws DAOException 400 if value is not a number of this type.
+         */
+        public Object parse(String value) throws DAOException {
+            if(value == null) return null;
+            try{
+                switch (this){
+                    case LONG:
+                    case TIMESTAMP: return Long.valueOf(value);
+                    case DOUBLE: return Double.valueOf(value);
+                    case BOOLEAN: return Boolean.valueOf(value);
+                    default: return value;
+                }
+            } catch (NumberFormatException e){
+                throw new DAOException(HttpStatus.SC_BAD_REQUEST, "Invalid " + this + " value: " + value);
+            }
+        }
+    }
+
     private String preOperator = "";
     private String before;
     private String operand;
     private String after;
+    private List<String> values; // IN and BETWEEN
+    private ValueType type;
 
     private Clause(){}
 
@@ -37,6 +87,51 @@ public class Clause {
         this.operand = operand.symbol;
     }
 
+    protected Clause(String before,OPERAND operand, Object value){
+        this(before, operand, (String) null);
+        setValue(operand, value);
+    }
+
+    protected Clause(OPERAND.Conditional preOperator, String before,OPERAND operand, Object value){
+        this(preOperator, before, operand, (String) null);
+        setValue(operand, value);
+    }
+
+    private void setValue(OPERAND operand, Object value){
+        if(!operand.isMultiValued()){
+            this.after = stringOf(value);
+            this.type = ValueType.of(value);
+            return;
+        }
+        if(!(value instanceof Collection)){
+            throw new IllegalArgumentException(operand + " needs a collection of values");
+        }
+        Collection<?> collection = (Collection<?>) value;
+        if(OPERAND.BETWEEN.equals(operand) && collection.size() != 2){
+            throw new IllegalArgumentException("BETWEEN needs a lower and an upper bound");
+        }
+        if(collection.isEmpty()){
+            throw new IllegalArgumentException(operand + " needs at least one value");
+        }
+        this.values = new ArrayList<String>(collection.size());
+        for(Object o : collection){
+            if(o == null){
+                throw new IllegalArgumentException(operand + " values can not be null");
+            }
+            ValueType t = ValueType.of(o);
+            if(this.type != null && !this.type.equals(t)){
+                throw new IllegalArgumentException(operand + " values must have one type, found " + this.type + " and " + t);
+            }
+            this.type = t;
+            this.values.add(stringOf(o));
+        }
+    }
+
+    private static String stringOf(Object value){
+        if(value instanceof Date) return String.valueOf(((Date) value).getTime());
+        return value == null ? null : String.valueOf(value);
+    }
+
     public String getBefore(){
         return before;
     }
@@ -45,10 +140,55 @@ public class Clause {
         return operand;
     }
 
+    /**
+     * @return the value in its string form, see {@link #getValue()} for the typed value. Null for IN and BETWEEN.
+     */
     public String getAfter(){
         return after;
     }
 
+    /**
+     * @return the values of an IN or BETWEEN clause in their string form, otherwise the single value.
+     */
+    public List<String> getAfterValues(){
+        if(values == null) return Collections.singletonList(after);
+        return Collections.unmodifiableList(values);
+    }
+
+    public ValueType getType(){
+        return type == null ? ValueType.STRING : type;
+    }
+
+    /**
+     * @return the value as Long, Double, Boolean or String. Timestamps are Long epoch milliseconds.
+     * @throws DAOException 400 if the value does not match the type.
+     */
+    public Object getValue() throws DAOException {
+        return getType().parse(after);
+    }
+
+    /**
+     * @return the typed values of an IN or BETWEEN clause, BETWEEN has the lower bound first. Otherwise the single
+     * value.
+     * @throws DAOException 400 if a value does not match the type.
+     */
+    public List<Object> getValues() throws DAOException {
+        List<String> strings = getAfterValues();
+        List<Object> typed = new ArrayList<Object>(strings.size());
+        for(String s : strings){
+            typed.add(getType().parse(s));
+        }
+        return typed;
+    }
+
+    /**
+     * Checks a decoded clause, whose values arrive as strings, can be converted to its type.
+     * @throws DAOException 400 if a value does not match the type.
+     */
+    public void validate() throws DAOException {
+        getValues();
+    }
+
     public void setBefore(String before){
         this.before = before;
     }
@@ -63,10 +203,59 @@ public class Clause {
 
     public void setAfter(String after){
         this.after = after;
+        this.values = null;
+        this.type = ValueType.STRING;
     }
 
     public String getCoded(){
-        return getBefore() + " " + getOperand() + " '" + getAfter() +"'";
+        if(values != null){
+            StringBuilder sb = new StringBuilder(getBefore()).append(' ').append(getOperand()).append(' ');
+            if(OPERAND.BETWEEN.symbol.equals(operand)){
+                return sb.append(coded(values.get(0))).append(" AND ").append(coded(values.get(1))).toString();
+            }
+            sb.append('[');
+            for(int x=0;x<values.size();x++){
+                if(x > 0) sb.append(", ");
+                sb.append(coded(values.get(x)));
+            }
+            return sb.append(']').toString();
+        }
+        return getBefore() + " " + getOperand() + " " + coded(getAfter());
+    }
+
+    private String coded(String value){
+        return ValueType.STRING.equals(getType()) ? "'" + value + "'" : value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || !(o instanceof Clause)) return false;
+
+        Clause clause = (Clause) o;
+
+        if (!preOperatorOf(this).equals(preOperatorOf(clause))) return false;
+        if (before != null ? !before.equals(clause.before) : clause.before != null) return false;
+        if (operand != null ? !operand.equals(clause.operand) : clause.operand != null) return false;
+        if (!getAfterValues().equals(clause.getAfterValues())) return false;
+        if (getType() != clause.getType()) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = preOperatorOf(this).hashCode();
+        result = 31 * result + (before != null ? before.hashCode() : 0);
+        result = 31 * result + (operand != null ? operand.hashCode() : 0);
+        result = 31 * result + getAfterValues().hashCode();
+        result = 31 * result + getType().hashCode();
+        return result;
+    }
+
+    // the first clause has no pre operator, which may arrive as empty or as null
+    private static String preOperatorOf(Clause clause){
+        return clause.preOperator == null ? "" : clause.preOperator;
     }
 
     @Override
@@ -75,6 +264,8 @@ public class Clause {
                 "before='" + before + '\'' +
                 ", operand='" + operand + '\'' +
                 ", after='" + after + '\'' +
+                ", values=" + values +
+                ", type=" + getType() +
                 '}';
     }
 }
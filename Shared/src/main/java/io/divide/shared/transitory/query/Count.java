@@ -19,6 +19,8 @@ package io.divide.shared.transitory.query;
 import io.divide.shared.transitory.TransientObject;
 
 public class Count extends TransientObject {
+    protected Count(){}
+
     public Count(int count, String from) {
         setCount(count);
         setFrom(from);
@@ -39,4 +41,15 @@ public class Count extends TransientObject {
     public void setFrom(String from){
         put("from",from);
     }
+
+    /**
+     * @return value of the group by key this count belongs to, null if the query was not grouped.
+     */
+    public Object getGroup(){
+        return get(Object.class,"group");
+    }
+
+    public void setGroup(Object group){
+        put("group",group);
+    }
 }
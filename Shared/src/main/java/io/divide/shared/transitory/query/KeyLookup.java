@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.transitory.query;
+
+import io.divide.shared.transitory.TransientObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Recognizes queries which only select objects by their object key, {@code where(OBJECT_KEY, IN, keys)} or
+ * {@code EQ}. Backends answer those with a keyed batch get instead of evaluating the clause against every object.
+ */
+public final class KeyLookup {
+
+    private static final String OBJECT_KEY = TransientObject.META_DATA + "." + TransientObject.OBJECT_KEY.KEY;
+
+    private KeyLookup(){}
+
+    /**
+     * @return the distinct keys selected by query, or null if query is anything but a plain select by object key.
+     * A limit and a projection are left to the caller.
+     */
+    public static List<String> keysOf(Query query){
+        if(!QueryBuilder.QueryAction.SELECT.equals(query.getAction()) ||
+           query.getSelect() != null ||
+           query.getWhere().size() != 1 ||
+           !query.getOrderBy().isEmpty() ||
+           query.getAfter() != null ||
+           query.getOffset() != null ||
+           Boolean.TRUE.equals(query.getRandom())){
+            return null;
+        }
+        Clause clause = query.getWhere().get(0);
+        if(clause == null || !OBJECT_KEY.equals(clause.getBefore())) return null;
+
+        OPERAND operand = OPERAND.from(clause.getOperand());
+        if(!OPERAND.EQ.equals(operand) && !OPERAND.IN.equals(operand)) return null;
+        return new ArrayList<String>(new LinkedHashSet<String>(clause.getAfterValues()));
+    }
+
+    /**
+     * Applies the limit and projection of query to the objects loaded for {@link #keysOf(Query)}.
+     */
+    public static <B extends TransientObject> List<B> finish(Query query, List<B> objects){
+        if(query.getLimit() != null && objects.size() > query.getLimit()){
+            objects = new ArrayList<B>(objects.subList(0, query.getLimit()));
+        }
+        List<String> fields = Projection.fieldsOf(query);
+        if(!fields.isEmpty()){
+            for(B b : objects) Projection.project(b, fields);
+        }
+        return objects;
+    }
+}
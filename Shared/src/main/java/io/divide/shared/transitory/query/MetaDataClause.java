@@ -27,4 +27,12 @@ public class MetaDataClause extends Clause
     protected MetaDataClause(OPERAND.Conditional conditional,String before, OPERAND operand, String after) {
         super(conditional,TransientObject.META_DATA + "." + before, operand, after);
     }
+
+    protected MetaDataClause(String before, OPERAND operand, Object value) {
+        super(TransientObject.META_DATA + "." + before, operand, value);
+    }
+
+    protected MetaDataClause(OPERAND.Conditional conditional,String before, OPERAND operand, Object value) {
+        super(conditional,TransientObject.META_DATA + "." + before, operand, value);
+    }
 }
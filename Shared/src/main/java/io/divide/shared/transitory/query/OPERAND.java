@@ -23,7 +23,10 @@ public enum OPERAND{
     GREATER_THAN_EQ(">="),
     LESS_THAN_EQ("<="),
     EQ("=="),
-    CONTAINS("CONTAINS");
+    NOT_EQ("!="),
+    CONTAINS("CONTAINS"),
+    IN("IN"), // value is a collection of candidates
+    BETWEEN("BETWEEN"); // value is a collection of the inclusive lower and upper bound
 
     String symbol;
 
@@ -42,13 +45,26 @@ public enum OPERAND{
             return LESS_THAN_EQ;
         } else if(EQ.symbol.equals(symbol)){
             return EQ;
+        } else if(NOT_EQ.symbol.equals(symbol)){
+            return NOT_EQ;
         } else if(CONTAINS.symbol.equals(symbol)){
             return CONTAINS;
+        } else if(IN.symbol.equals(symbol)){
+            return IN;
+        } else if(BETWEEN.symbol.equals(symbol)){
+            return BETWEEN;
         }else {
             return null;
         }
     }
 
+    /**
+     * @return true if the clause value is a collection, see {@link Clause#getValues()}.
+     */
+    public boolean isMultiValued(){
+        return this == IN || this == BETWEEN;
+    }
+
     public static enum Conditional{
         AND("AND"),
         OR("OR");
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.transitory.query;
+
+public class OrderBy {
+
+    public static enum Direction{
+        ASC,
+        DESC
+    }
+
+    private String field;
+    private Direction direction;
+
+    private OrderBy(){}
+
+    protected OrderBy(String field, Direction direction){
+        this.field = field;
+        this.direction = direction == null ? Direction.ASC : direction;
+    }
+
+    /**
+     * @return qualified field, prefixed with {@link io.divide.shared.transitory.TransientObject#USER_DATA} or
+     * {@link io.divide.shared.transitory.TransientObject#META_DATA} like {@link Clause#getBefore()}.
+     */
+    public String getField(){
+        return field;
+    }
+
+    public Direction getDirection(){
+        return direction;
+    }
+
+    public boolean isAscending(){
+        return !Direction.DESC.equals(direction);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        OrderBy orderBy = (OrderBy) o;
+
+        if (direction != orderBy.direction) return false;
+        if (field != null ? !field.equals(orderBy.field) : orderBy.field != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = field != null ? field.hashCode() : 0;
+        result = 31 * result + (direction != null ? direction.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return field + " " + direction;
+    }
+}
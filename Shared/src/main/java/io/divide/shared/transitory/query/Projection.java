@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.transitory.query;
+
+import io.divide.shared.transitory.TransientObject;
+import io.divide.shared.util.ReflectionUtils;
+
+import java.lang.reflect.Constructor;
+import java.util.*;
+
+/**
+ * Partial objects for queries which select fields, see {@link QueryBuilder#select(String, String...)}. A partial object
+ * only holds the selected fields plus the meta data needed to identify it, it must not be saved back as that would
+ * replace the stored object with the partial one.
+ */
+public final class Projection {
+
+    private static final List<String> REQUIRED = Collections.unmodifiableList(Arrays.asList(
+            TransientObject.META_DATA + "." + TransientObject.OBJECT_KEY.KEY,
+            TransientObject.META_DATA + "." + TransientObject.OBJECT_TYPE_KEY.KEY));
+
+    private Projection(){}
+
+    public static boolean isProjection(Query query){
+        return !query.getFields().isEmpty();
+    }
+
+    /**
+     * @return selected fields followed by the required meta data, or an empty list for queries without a projection.
+     */
+    public static List<String> fieldsOf(Query query){
+        if(!isProjection(query)) return Collections.emptyList();
+
+        List<String> fields = new ArrayList<String>(query.getFields());
+        for(String required : REQUIRED){
+            if(!fields.contains(required)) fields.add(required);
+        }
+        return fields;
+    }
+
+    /**
+     * Trims an already loaded object down to the given qualified fields.
+     */
+    public static <B extends TransientObject> B project(B object, List<String> fields){
+        Map<String,Object> user = new LinkedHashMap<String, Object>();
+        Map<String,String> meta = new LinkedHashMap<String, String>();
+        Map<String,Object> userData = object.getUserData();
+        Map<String,String> metaData = object.getMetaData();
+
+        for(String field : fields){
+            String key = keyOf(field);
+            if(isUserData(field)){
+                if(userData.containsKey(key)) user.put(key, userData.get(key));
+            } else if(metaData.containsKey(key)){
+                meta.put(key, metaData.get(key));
+            }
+        }
+        return replaceData(object, user, meta);
+    }
+
+    /**
+     * Creates a partial object from values read for each of the given qualified fields, null values are left out.
+     */
+    public static <B extends TransientObject> B partial(Class<B> type, List<String> fields, Object[] values){
+        Map<String,Object> user = new LinkedHashMap<String, Object>();
+        Map<String,String> meta = new LinkedHashMap<String, String>();
+
+        for(int x=0;x<fields.size();x++){
+            Object value = values[x];
+            if(value == null) continue;
+
+            String field = fields.get(x);
+            if(isUserData(field)){
+                user.put(keyOf(field), value);
+            } else {
+                meta.put(keyOf(field), String.valueOf(value));
+            }
+        }
+
+        try {
+            Constructor<B> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return replaceData(constructor.newInstance(), user, meta);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Can not create " + type, e);
+        }
+    }
+
+    public static boolean isUserData(String field){
+        return field.startsWith(TransientObject.USER_DATA + ".");
+    }
+
+    /**
+     * @return the key of a qualified field, without its user data or meta data prefix.
+     */
+    public static String keyOf(String field){
+        return field.substring(field.indexOf('.') + 1);
+    }
+
+    private static <B extends TransientObject> B replaceData(B object, Map<String,Object> user, Map<String,String> meta){
+        try {
+            ReflectionUtils.setObjectField(object, TransientObject.USER_DATA, user);
+            ReflectionUtils.setObjectField(object, TransientObject.META_DATA, meta);
+            return object;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -16,9 +16,12 @@
 
 package io.divide.shared.transitory.query;
 
+import io.divide.shared.server.DAO.DAOException;
 import io.divide.shared.transitory.TransientObject;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Query {
@@ -30,10 +33,15 @@ public class Query {
     protected QueryBuilder.QueryAction action;
     protected String from;
     protected final Map<Integer,Clause> where = new HashMap<Integer,Clause>();
+    protected final List<OrderBy> orderBy = new ArrayList<OrderBy>();
+    protected final List<String> fields = new ArrayList<String>();
     protected SelectOperation select = null;
+    protected String aggregate;
+    protected String groupBy;
     protected Integer limit;
     protected Integer offset;
     protected Boolean random;
+    protected String after;
 
     public QueryBuilder.QueryAction getAction() {
         return action;
@@ -47,10 +55,35 @@ public class Query {
         return where;
     }
 
+    public List<OrderBy> getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * @return qualified fields selected by a projection, empty when whole objects are selected.
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
     public SelectOperation getSelect() {
         return select;
     }
 
+    /**
+     * @return qualified field aggregated by {@link #getSelect()}, null for COUNT.
+     */
+    public String getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * @return qualified field the aggregate is grouped by, null if it is not grouped.
+     */
+    public String getGroupBy() {
+        return groupBy;
+    }
+
     public Integer getLimit() {
         return limit;
     }
@@ -61,6 +94,23 @@ public class Query {
 
     public Boolean getRandom() { return random; }
 
+    /**
+     * @return opaque cursor returned with a previous page, results start right after it.
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    /**
+     * Checks the values of every clause of a decoded query match their types.
+     * @throws DAOException 400 if a clause value does not.
+     */
+    public void validate() throws DAOException {
+        for(Clause clause : where.values()){
+            if(clause != null) clause.validate();
+        }
+    }
+
     public String getSQL(){
 
         String sql = "";
@@ -75,6 +125,10 @@ public class Query {
                         }
                     }
 
+                    if(!orderBy.isEmpty()){
+                        sql += buildOrderBy(orderBy);
+                    }
+
                     if(limit != null){
                         sql += " LIMIT " + limit;
                     }
@@ -122,6 +176,16 @@ public class Query {
         return sb.toString();
     }
 
+    private String buildOrderBy(List<OrderBy> orderBy){
+        StringBuilder sb = new StringBuilder();
+        sb.append(" ORDER BY ");
+        for(int x=0;x<orderBy.size();x++){
+            if(x > 0) sb.append(", ");
+            sb.append(orderBy.get(x));
+        }
+        return sb.toString();
+    }
+
     public static <T extends TransientObject> String safeTable(Class<T> type){
         return safeTable(type.getName());
     }
@@ -134,15 +198,64 @@ public class Query {
         return type.replace("_",".");
     }
 
+    /**
+     * Queries are equal when they would return the same result, so a query sent again by a client can be looked up in
+     * a cache. Clauses compare by position, operand and typed value.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Query query = (Query) o;
+
+        if (action != query.action) return false;
+        if (from != null ? !from.equals(query.from) : query.from != null) return false;
+        if (!where.equals(query.where)) return false;
+        if (!orderBy.equals(query.orderBy)) return false;
+        if (!fields.equals(query.fields)) return false;
+        if (select != query.select) return false;
+        if (aggregate != null ? !aggregate.equals(query.aggregate) : query.aggregate != null) return false;
+        if (groupBy != null ? !groupBy.equals(query.groupBy) : query.groupBy != null) return false;
+        if (limit != null ? !limit.equals(query.limit) : query.limit != null) return false;
+        if (offset != null ? !offset.equals(query.offset) : query.offset != null) return false;
+        if (Boolean.TRUE.equals(random) != Boolean.TRUE.equals(query.random)) return false;
+        if (after != null ? !after.equals(query.after) : query.after != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = action != null ? action.hashCode() : 0;
+        result = 31 * result + (from != null ? from.hashCode() : 0);
+        result = 31 * result + where.hashCode();
+        result = 31 * result + orderBy.hashCode();
+        result = 31 * result + fields.hashCode();
+        result = 31 * result + (select != null ? select.hashCode() : 0);
+        result = 31 * result + (aggregate != null ? aggregate.hashCode() : 0);
+        result = 31 * result + (groupBy != null ? groupBy.hashCode() : 0);
+        result = 31 * result + (limit != null ? limit.hashCode() : 0);
+        result = 31 * result + (offset != null ? offset.hashCode() : 0);
+        result = 31 * result + (Boolean.TRUE.equals(random) ? 1 : 0);
+        result = 31 * result + (after != null ? after.hashCode() : 0);
+        return result;
+    }
+
     @Override
     public String toString() {
         return "Query{" +
                 "action=" + action +
                 ", from='" + from + '\'' +
                 ", where=" + where +
+                ", orderBy=" + orderBy +
                 ", select=" + select +
+                ", fields=" + fields +
+                ", aggregate=" + aggregate +
+                ", groupBy=" + groupBy +
                 ", limit=" + limit +
                 ", offset=" + offset +
+                ", after='" + after + '\'' +
                 '}';
     }
 }
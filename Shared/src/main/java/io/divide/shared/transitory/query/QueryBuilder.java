@@ -40,6 +40,38 @@ public class QueryBuilder{
         return new SelectBuilder(this,select);
     }
 
+    /**
+     * Aggregates a user data key, see {@link Aggregation}.
+     */
+    public SelectBuilder select(SelectOperation operation, String field){
+        setAggregate(TransientObject.USER_DATA + "." + field);
+        return new SelectBuilder(this, operation);
+    }
+
+    /**
+     * Aggregates a meta data key, see {@link Aggregation}.
+     */
+    public SelectBuilder select(SelectOperation operation, TransientObject.MetaKey field){
+        setAggregate(TransientObject.META_DATA + "." + field.KEY);
+        return new SelectBuilder(this, operation);
+    }
+
+    /**
+     * Selects only the given user data keys, see {@link Projection}.
+     */
+    public SelectBuilder select(String field, String... fields){
+        SelectBuilder builder = new SelectBuilder(this);
+        return builder.select(field, fields);
+    }
+
+    /**
+     * Selects only the given meta data keys, see {@link Projection}.
+     */
+    public SelectBuilder select(TransientObject.MetaKey field, TransientObject.MetaKey... fields){
+        SelectBuilder builder = new SelectBuilder(this);
+        return builder.select(field, fields);
+    }
+
     public DeleteBuilder delete(){
         return new DeleteBuilder(this);
     }
@@ -48,22 +80,48 @@ public class QueryBuilder{
         return new UpdateBuilder(this);
     }
 
-    private void addWhere(String one, OPERAND operand, String two){
+    private void addWhere(String one, OPERAND operand, Object two){
         query.where.put(query.where.size(),new UserDataClause(one,operand,two));
     }
 
-    private void addWhere(TransientObject.MetaKey one, OPERAND operand, String two){
+    private void addWhere(TransientObject.MetaKey one, OPERAND operand, Object two){
         query.where.put(query.where.size(),new MetaDataClause(one.KEY,operand,two));
     }
 
-    private void addWhere(OPERAND.Conditional conditional,String one, OPERAND operand, String two){
+    private void addWhere(OPERAND.Conditional conditional,String one, OPERAND operand, Object two){
         query.where.put(query.where.size(),new UserDataClause(conditional,one,operand,two));
     }
 
-    private void addWhere(OPERAND.Conditional conditional,TransientObject.MetaKey one, OPERAND operand, String two){
+    private void addWhere(OPERAND.Conditional conditional,TransientObject.MetaKey one, OPERAND operand, Object two){
         query.where.put(query.where.size(),new MetaDataClause(conditional,one.KEY,operand,two));
     }
 
+    private void addOrderBy(String field, OrderBy.Direction direction){
+        query.orderBy.add(new OrderBy(TransientObject.USER_DATA + "." + field, direction));
+    }
+
+    private void addOrderBy(TransientObject.MetaKey field, OrderBy.Direction direction){
+        query.orderBy.add(new OrderBy(TransientObject.META_DATA + "." + field.KEY, direction));
+    }
+
+    private void addField(String field){
+        String qualified = TransientObject.USER_DATA + "." + field;
+        if(!query.fields.contains(qualified)) query.fields.add(qualified);
+    }
+
+    private void addField(TransientObject.MetaKey field){
+        String qualified = TransientObject.META_DATA + "." + field.KEY;
+        if(!query.fields.contains(qualified)) query.fields.add(qualified);
+    }
+
+    private void setAggregate(String field){
+        query.aggregate = field;
+    }
+
+    private void setGroupBy(String field){
+        query.groupBy = field;
+    }
+
     private void setFrom(Class from){
         query.from = Query.safeTable(from);
     }
@@ -81,6 +139,10 @@ public class QueryBuilder{
         query.offset = offset;
     }
 
+    private void setAfter(String after){
+        query.after = after;
+    }
+
     private void setAction(QueryAction action){
         query.action = action;
     }
@@ -99,6 +161,18 @@ public class QueryBuilder{
                 for (SelectOperation s : select)
                     builder.addSelect(s);
         }
+
+        public SelectBuilder select(String field, String... fields){
+            builder.addField(field);
+            for(String f : fields) builder.addField(f);
+            return this;
+        }
+
+        public SelectBuilder select(TransientObject.MetaKey field, TransientObject.MetaKey... fields){
+            builder.addField(field);
+            for(TransientObject.MetaKey f : fields) builder.addField(f);
+            return this;
+        }
     }
 
     public class DeleteBuilder extends QueryActionBuilder{
@@ -116,7 +190,7 @@ public class QueryBuilder{
     }
 
     public class QueryActionBuilder{
-        private QueryBuilder builder;
+        protected QueryBuilder builder;
 
         private QueryActionBuilder(QueryBuilder builder, QueryAction action){
             this.builder = builder;
@@ -136,16 +210,40 @@ public class QueryBuilder{
             this.builder = builder;
         }
 
-        public WhereMoreBuilder where(String one, OPERAND operand, String two){
+        /**
+         * @param two value to compare against, a String, Long, Integer, Double, Float, Boolean or Date. {@link OPERAND#IN}
+         *            takes a Collection of such values, {@link OPERAND#BETWEEN} a Collection of the lower and upper bound.
+         */
+        public WhereMoreBuilder where(String one, OPERAND operand, Object two){
             builder.addWhere(one,operand,two);
             return new WhereMoreBuilder(builder);
         }
 
-        public WhereMoreBuilder where(TransientObject.MetaKey one, OPERAND operand, String two){
+        public WhereMoreBuilder where(TransientObject.MetaKey one, OPERAND operand, Object two){
             builder.addWhere(one,operand,two);
             return new WhereMoreBuilder(builder);
         }
 
+        public GroupBuilder groupBy(String field){
+            builder.setGroupBy(TransientObject.USER_DATA + "." + field);
+            return new GroupBuilder(builder);
+        }
+
+        public GroupBuilder groupBy(TransientObject.MetaKey field){
+            builder.setGroupBy(TransientObject.META_DATA + "." + field.KEY);
+            return new GroupBuilder(builder);
+        }
+
+        public OrderBuilder orderBy(String field, OrderBy.Direction direction){
+            builder.addOrderBy(field, direction);
+            return new OrderBuilder(builder);
+        }
+
+        public OrderBuilder orderBy(TransientObject.MetaKey field, OrderBy.Direction direction){
+            builder.addOrderBy(field, direction);
+            return new OrderBuilder(builder);
+        }
+
         public LimitConstraintBuilder limit(Integer limit){
             return new LimitConstraintBuilder(builder,limit);
         }
@@ -158,6 +256,10 @@ public class QueryBuilder{
             return new RandomConstraintBuilder(builder,limit);
         }
 
+        public AfterConstraintBuilder after(String cursor){
+            return new AfterConstraintBuilder(builder,cursor);
+        }
+
         public Query build(){
             return builder.getQuery();
         }
@@ -170,27 +272,47 @@ public class QueryBuilder{
             this.builder = builder;
         }
 
-        public WhereMoreBuilder and(String one, OPERAND operand, String two){
+        public WhereMoreBuilder and(String one, OPERAND operand, Object two){
             builder.addWhere(OPERAND.Conditional.AND,one,operand,two);
             return this;
         }
 
-        public WhereMoreBuilder or(String one, OPERAND operand, String two){
+        public WhereMoreBuilder or(String one, OPERAND operand, Object two){
             builder.addWhere(OPERAND.Conditional.OR,one,operand,two);
             return this;
         }
 
-        public WhereMoreBuilder and(TransientObject.MetaKey one, OPERAND operand, String two){
+        public WhereMoreBuilder and(TransientObject.MetaKey one, OPERAND operand, Object two){
             builder.addWhere(OPERAND.Conditional.AND,one,operand,two);
             return this;
         }
 
-        public WhereMoreBuilder or(TransientObject.MetaKey one, OPERAND operand, String two){
+        public WhereMoreBuilder or(TransientObject.MetaKey one, OPERAND operand, Object two){
             builder.addWhere(OPERAND.Conditional.OR,one,operand,two);
             return this;
         }
 
 
+        public GroupBuilder groupBy(String field){
+            builder.setGroupBy(TransientObject.USER_DATA + "." + field);
+            return new GroupBuilder(builder);
+        }
+
+        public GroupBuilder groupBy(TransientObject.MetaKey field){
+            builder.setGroupBy(TransientObject.META_DATA + "." + field.KEY);
+            return new GroupBuilder(builder);
+        }
+
+        public OrderBuilder orderBy(String field, OrderBy.Direction direction){
+            builder.addOrderBy(field, direction);
+            return new OrderBuilder(builder);
+        }
+
+        public OrderBuilder orderBy(TransientObject.MetaKey field, OrderBy.Direction direction){
+            builder.addOrderBy(field, direction);
+            return new OrderBuilder(builder);
+        }
+
         public LimitConstraintBuilder limit(Integer limit){
             return new LimitConstraintBuilder(builder,limit);
         }
@@ -203,10 +325,64 @@ public class QueryBuilder{
             return new RandomConstraintBuilder(builder,limit);
         }
 
+        public AfterConstraintBuilder after(String cursor){
+            return new AfterConstraintBuilder(builder,cursor);
+        }
+
         public Query build(){
             return builder.getQuery();
         }    }
 
+    public class GroupBuilder{
+        private QueryBuilder builder;
+
+        private GroupBuilder(QueryBuilder builder){
+            this.builder = builder;
+        }
+
+        public LimitConstraintBuilder limit(Integer limit){
+            return new LimitConstraintBuilder(builder,limit);
+        }
+
+        public Query build(){
+            return builder.getQuery();
+        }
+    }
+
+    public class OrderBuilder{
+        private QueryBuilder builder;
+
+        private OrderBuilder(QueryBuilder builder){
+            this.builder = builder;
+        }
+
+        public OrderBuilder orderBy(String field, OrderBy.Direction direction){
+            builder.addOrderBy(field, direction);
+            return this;
+        }
+
+        public OrderBuilder orderBy(TransientObject.MetaKey field, OrderBy.Direction direction){
+            builder.addOrderBy(field, direction);
+            return this;
+        }
+
+        public LimitConstraintBuilder limit(Integer limit){
+            return new LimitConstraintBuilder(builder,limit);
+        }
+
+        public OffsetConstraintBuilder offset(Integer offset){
+            return new OffsetConstraintBuilder(builder,offset);
+        }
+
+        public AfterConstraintBuilder after(String cursor){
+            return new AfterConstraintBuilder(builder,cursor);
+        }
+
+        public Query build(){
+            return builder.getQuery();
+        }
+    }
+
     public class LimitConstraintBuilder extends ConstraintBuilder{
 
         private LimitConstraintBuilder(QueryBuilder builder, Integer limit){
@@ -214,6 +390,11 @@ public class QueryBuilder{
             this.builder.setLimit(limit);
         }
 
+        public ConstraintBuilder after(String cursor){
+            builder.setAfter(cursor);
+            return new ConstraintBuilder(builder);
+        }
+
         public ConstraintBuilder offset(Integer offset){
             if(bothSet()){
                 return new ConstraintBuilder(builder);
@@ -240,6 +421,19 @@ public class QueryBuilder{
         }
     }
 
+    public class AfterConstraintBuilder extends ConstraintBuilder{
+
+        private AfterConstraintBuilder(QueryBuilder builder, String cursor) {
+            super(builder);
+            builder.setAfter(cursor);
+        }
+
+        public ConstraintBuilder limit(Integer limit){
+            builder.setLimit(limit);
+            return new ConstraintBuilder(builder);
+        }
+    }
+
     public class RandomConstraintBuilder extends ConstraintBuilder{
 
         private RandomConstraintBuilder(QueryBuilder builder, Integer limit) {
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.transitory.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Query results which carry the cursor of the next page, pass it to {@link QueryBuilder.WhereBuilder#after(String)}
+ * to continue. The cursor is null when there are no further results.
+ */
+public class QueryResult<T> extends ArrayList<T> {
+
+    private String nextCursor;
+
+    public QueryResult(){
+        super();
+    }
+
+    public QueryResult(int initialCapacity){
+        super(initialCapacity);
+    }
+
+    public QueryResult(Collection<? extends T> results, String nextCursor){
+        super(results);
+        this.nextCursor = nextCursor;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the next cursor of results, or null if results do not carry one.
+     */
+    public static String nextCursorOf(Collection<?> results){
+        if(results instanceof QueryResult){
+            return ((QueryResult<?>) results).getNextCursor();
+        }
+        return null;
+    }
+}
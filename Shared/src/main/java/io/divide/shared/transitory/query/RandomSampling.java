@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.transitory.query;
+
+import io.divide.shared.transitory.TransientObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Samples random objects without counting or skipping over the objects of a type. Every stored object carries a
+ * random index, see {@link TransientObject#getRandomIndex()}, and a random query reads the objects following a random
+ * point of that index, wrapping around to its start when too few follow. A sample costs one or two range reads on the
+ * index however many objects are stored.
+ */
+public final class RandomSampling {
+
+    public static final String FIELD = TransientObject.META_DATA + "." + TransientObject.RANDOM_INDEX_KEY.KEY;
+
+    private static final Random RANDOM = new Random();
+    private static final String PADDING = "0000000000000000";
+
+    private RandomSampling(){}
+
+    /**
+     * @return a uniformly distributed index. Indexes are fixed width hex strings so they sort the same as text and
+     * as numbers, meta data is only stored as text.
+     */
+    public static String newIndex(){
+        String hex = Long.toHexString(RANDOM.nextLong() >>> 1);
+        return PADDING.substring(hex.length()) + hex;
+    }
+
+    /**
+     * @return true if query is a random select which can be answered by {@link #sample(Query, Sampler)}. Clauses
+     * joined by OR can not be narrowed to an index range and are left to the caller.
+     */
+    public static boolean canSample(Query query){
+        if(!QueryBuilder.QueryAction.SELECT.equals(query.getAction()) ||
+           query.getSelect() != null ||
+           !Boolean.TRUE.equals(query.getRandom())){
+            return false;
+        }
+        for(Map.Entry<Integer,Clause> entry : query.getWhere().entrySet()){
+            Clause clause = entry.getValue();
+            if(FIELD.equals(clause.getBefore())) return false;
+            if(entry.getKey() > 0 && OPERAND.Conditional.OR.symbol.equals(clause.getPreOperator())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads up to the limit of query random objects, a query without a limit samples one. Objects are returned in
+     * index order.
+     */
+    public static <B extends TransientObject> List<B> sample(Query query, Sampler<B> sampler){
+        int limit = query.getLimit() == null ? 1 : query.getLimit();
+        String from = newIndex();
+        List<B> results = new ArrayList<B>(sampler.query(probe(query, from, false, limit)));
+        if(results.size() < limit){
+            results.addAll(sampler.query(probe(query, from, true, limit - results.size())));
+        }
+        return results;
+    }
+
+    /**
+     * Runs a probe, a plain select of a range of the random index in index order.
+     */
+    public interface Sampler<B extends TransientObject> {
+        List<B> query(Query probe);
+    }
+
+    static Query probe(Query query, String from, boolean wrapped, int limit){
+        Query probe = new Query();
+        probe.action = QueryBuilder.QueryAction.SELECT;
+        probe.from = query.getFrom();
+        probe.where.putAll(query.getWhere());
+        probe.where.put(probe.where.size(),
+                new Clause(OPERAND.Conditional.AND, FIELD, wrapped ? OPERAND.LESS_THAN : OPERAND.GREATER_THAN_EQ, from));
+        probe.orderBy.add(new OrderBy(FIELD, OrderBy.Direction.ASC));
+        probe.fields.addAll(query.getFields());
+        probe.limit = limit;
+        return probe;
+    }
+}
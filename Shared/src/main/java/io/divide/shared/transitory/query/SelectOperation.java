@@ -19,7 +19,11 @@ package io.divide.shared.transitory.query;
 import io.divide.shared.transitory.TransientObject;
 
 public enum SelectOperation {
-    COUNT(Count.class);
+    COUNT(Count.class),
+    SUM(Aggregate.class),
+    MIN(Aggregate.class),
+    MAX(Aggregate.class),
+    AVG(Aggregate.class);
 
     private transient Class<?> type;
 
@@ -31,6 +35,13 @@ public enum SelectOperation {
         return type;
     }
 
+    /**
+     * @return whether this operation aggregates the values of a field, COUNT only counts objects.
+     */
+    public boolean requiresField(){
+        return this != COUNT;
+    }
+
     public String getErrorMessage(){
         return this.name() + " requires type " + type.getSimpleName();
     }
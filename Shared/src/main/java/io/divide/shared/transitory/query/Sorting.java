@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.transitory.query;
+
+import io.divide.shared.transitory.TransientObject;
+
+import java.util.*;
+
+/**
+ * In memory ordering for stores which can not sort natively. With a limit only the best {@code limit} objects are
+ * kept in a bounded heap, so the top of a large collection is found in O(n log limit) without sorting all of it.
+ */
+public final class Sorting {
+
+    private Sorting(){}
+
+    public static <T extends TransientObject> List<T> sort(Iterable<? extends T> objects, List<OrderBy> orderBy, Integer limit){
+        return sort(objects.iterator(), orderBy, limit);
+    }
+
+    public static <T extends TransientObject> List<T> sort(Iterator<? extends T> objects, List<OrderBy> orderBy, Integer limit){
+        if(limit != null && limit <= 0) return new ArrayList<T>();
+
+        final Comparator<Entry<T>> comparator = new EntryComparator<T>(orderBy);
+        PriorityQueue<Entry<T>> heap;
+        if(limit == null){
+            heap = new PriorityQueue<Entry<T>>(11, comparator);
+        } else {
+            // worst of the kept entries at the head, evicted whenever a better one arrives
+            heap = new PriorityQueue<Entry<T>>(limit + 1, Collections.reverseOrder(comparator));
+        }
+
+        long sequence = 0;
+        while(objects.hasNext()){
+            T object = objects.next();
+            heap.add(new Entry<T>(object, keysOf(object, orderBy), sequence++));
+            if(limit != null && heap.size() > limit){
+                heap.poll();
+            }
+        }
+
+        List<Entry<T>> entries = new ArrayList<Entry<T>>(heap);
+        Collections.sort(entries, comparator);
+        List<T> sorted = new ArrayList<T>(entries.size());
+        for(Entry<T> e : entries){
+            sorted.add(e.object);
+        }
+        return sorted;
+    }
+
+    /**
+     * @return the value of a qualified field, e.g. {@code user_data.score} or {@code meta_data.modified_date_key}.
+     */
+    public static Object valueOf(TransientObject object, String field){
+        if(field.startsWith(TransientObject.USER_DATA + ".")){
+            return object.get(Object.class, field.substring(TransientObject.USER_DATA.length() + 1));
+        }
+        if(field.startsWith(TransientObject.META_DATA + ".")){
+            return object.getMetaData().get(field.substring(TransientObject.META_DATA.length() + 1));
+        }
+        return null;
+    }
+
+    /**
+     * Null sorts first, numbers by value, also against numeric strings, comparables of the same type naturally and
+     * anything else by its string form.
+     */
+    @SuppressWarnings("unchecked")
+    public static int compareValues(Object one, Object two){
+        if(one == two) return 0;
+        if(one == null) return -1;
+        if(two == null) return 1;
+        if(one instanceof Number || two instanceof Number){
+            Double first = toDouble(one);
+            Double second = toDouble(two);
+            if(first != null && second != null){
+                return Double.compare(first, second);
+            }
+        }
+        if(one instanceof Comparable && one.getClass().equals(two.getClass())){
+            return ((Comparable<Object>) one).compareTo(two);
+        }
+        return String.valueOf(one).compareTo(String.valueOf(two));
+    }
+
+    private static Double toDouble(Object value){
+        if(value instanceof Number) return ((Number) value).doubleValue();
+        try{
+            return Double.valueOf(String.valueOf(value));
+        } catch (NumberFormatException e){
+            return null;
+        }
+    }
+
+    private static Object[] keysOf(TransientObject object, List<OrderBy> orderBy){
+        Object[] keys = new Object[orderBy.size()];
+        for(int x=0;x<keys.length;x++){
+            keys[x] = valueOf(object, orderBy.get(x).getField());
+        }
+        return keys;
+    }
+
+    private static final class Entry<T> {
+        private final T object;
+        private final Object[] keys;
+        private final long sequence;
+
+        private Entry(T object, Object[] keys, long sequence){
+            this.object = object;
+            this.keys = keys;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class EntryComparator<T> implements Comparator<Entry<T>> {
+        private final boolean[] ascending;
+
+        private EntryComparator(List<OrderBy> orderBy){
+            ascending = new boolean[orderBy.size()];
+            for(int x=0;x<ascending.length;x++){
+                ascending[x] = orderBy.get(x).isAscending();
+            }
+        }
+
+        @Override
+        public int compare(Entry<T> one, Entry<T> two) {
+            for(int x=0;x<ascending.length;x++){
+                int result = compareValues(one.keys[x], two.keys[x]);
+                if(result != 0) return ascending[x] ? result : -result;
+            }
+            // equal keys keep their arrival order
+            return one.sequence < two.sequence ? -1 : (one.sequence == two.sequence ? 0 : 1);
+        }
+    }
+}
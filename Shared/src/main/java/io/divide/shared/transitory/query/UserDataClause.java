@@ -26,4 +26,12 @@ public class UserDataClause extends Clause {
     protected UserDataClause(OPERAND.Conditional conditional,String before, OPERAND operand, String after) {
         super(conditional,TransientObject.USER_DATA + "." + before, operand, after);
     }
+
+    protected UserDataClause(String before, OPERAND operand, Object value) {
+        super(TransientObject.USER_DATA + "." + before, operand, value);
+    }
+
+    protected UserDataClause(OPERAND.Conditional conditional,String before, OPERAND operand, Object value) {
+        super(conditional,TransientObject.USER_DATA + "." + before, operand, value);
+    }
 }
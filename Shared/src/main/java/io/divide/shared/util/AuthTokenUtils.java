@@ -20,35 +20,112 @@ import io.divide.shared.transitory.Credentials;
 import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
 import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
 
-import java.util.HashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 public class AuthTokenUtils {
     static Logger logger = Logger.getLogger(AuthTokenUtils.class.getName());
-    static long expirateIn = (1000 * 60 * 60 * 24); // 1 day
+    static final long expirateIn = (1000 * 60 * 60 * 24); // 1 day
+
+    /*
+     * Signed tokens are "v2." followed by the url safe base64 of
+     * version(1) | ownerId(4) | expiration(8) | keyId(4) | nonce(16) | HmacSHA256(32 over the preceding bytes)
+     * Tokens without the prefix are the older PBE encrypted format.
+     */
+    static final String TOKEN_PREFIX = "v2.";
+    private static final byte VERSION = 2;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int PAYLOAD_LENGTH = 1 + 4 + 8 + 4 + 16;
+    private static final int MAC_LENGTH = 32;
 
     public static String getNewToken(String key, Credentials credentials){
 
-        String uuid = UUID.randomUUID().toString();
+        UUID nonce = UUID.randomUUID();
         Integer ownerId = credentials.getOwnerId();
-//        Long expireIn = (System.currentTimeMillis() + expirateIn );
-        Long expireIn = Long.MAX_VALUE; // 106,751,991,167 days
+        Long expireIn = (System.currentTimeMillis() + expirateIn );
 
         if(ownerId == null) throw new InternalError("ownerId returned null for receating auth token");
 
-        String token = uuid +
-//                "|" + someImportantProjectToken +
-                "|" + ownerId +
-                "|" + expireIn; // TODO grab this from credentials?
-        return encrypt(token,key);
+        ByteBuffer buffer = ByteBuffer.allocate(PAYLOAD_LENGTH + MAC_LENGTH);
+        buffer.put(VERSION);
+        buffer.putInt(ownerId);
+        buffer.putLong(expireIn);
+        buffer.putInt(keyId(key));
+        buffer.putLong(nonce.getMostSignificantBits());
+        buffer.putLong(nonce.getLeastSignificantBits());
+
+        Mac mac = getMac(key);
+        mac.update(buffer.array(), 0, PAYLOAD_LENGTH);
+        try {
+            mac.doFinal(buffer.array(), PAYLOAD_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to sign auth token", e);
+        }
+
+        return TOKEN_PREFIX + new String(Base64.encode(buffer.array()));
     }
 
     public static class AuthToken {
         public String userId;
         public Long expirationDate;
+        public UUID id;
+        private boolean legacy = false;
         public AuthToken(String key,String token) throws AuthenticationException {
+            if(token == null) throw new AuthenticationException("Missing AuthToken");
+            if(token.startsWith(TOKEN_PREFIX)) {
+                verify(key, token);
+            } else {
+                decryptLegacy(key, token);
+            }
+        }
+
+        private void verify(String key, String token) throws AuthenticationException {
+            byte[] bytes;
+            try {
+                bytes = Base64.decode(token.substring(TOKEN_PREFIX.length()).getBytes("US-ASCII"));
+            } catch (UnsupportedEncodingException e) {
+                throw new AuthenticationException("Failed to create AuthToken",e);
+            } catch (RuntimeException e) {
+                throw new AuthenticationException("Malformed AuthToken",e);
+            }
+
+            if(bytes == null || bytes.length < PAYLOAD_LENGTH + MAC_LENGTH || bytes[0] != VERSION)
+                throw new AuthenticationException("Malformed AuthToken");
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            buffer.get(); // version
+            int ownerId = buffer.getInt();
+            long expiration = buffer.getLong();
+            int keyId = buffer.getInt();
+            long mostSigBits = buffer.getLong();
+            long leastSigBits = buffer.getLong();
+
+            if(keyId != keyId(key)) throw new AuthenticationException("AuthToken signed with unknown key");
+
+            Mac mac = getMac(key);
+            mac.update(bytes, 0, PAYLOAD_LENGTH);
+            byte[] expected = mac.doFinal();
+            byte[] actual = new byte[MAC_LENGTH];
+            System.arraycopy(bytes, PAYLOAD_LENGTH, actual, 0, MAC_LENGTH);
+            if(!MessageDigest.isEqual(expected, actual)) throw new AuthenticationException("Invalid AuthToken signature");
+
+            userId = String.valueOf(ownerId);
+            expirationDate = expiration;
+            id = new UUID(mostSigBits, leastSigBits);
+        }
+
+        private void decryptLegacy(String key, String token) throws AuthenticationException {
             try {
                 logger.info("En: " + token);
                 token = decrypt(token, key);
@@ -59,34 +136,137 @@ public class AuthTokenUtils {
                 }
                 userId = parts[1];
                 expirationDate = Long.parseLong(parts[2]);
+                id = UUID.fromString(parts[0]);
+                legacy = true;
             } catch (EncryptionOperationNotPossibleException e){
                 e.printStackTrace();
                 throw new AuthenticationException("Failed to create AuthToken",e);
             }
         }
 
+        /**
+         * @return true if the token is past its expiration, or is a signed token claiming to outlive the token lifetime.
+         * Legacy tokens were issued without expiry and are accepted while clients migrate.
+         */
         public boolean isExpired(){
-            return expirationDate < System.currentTimeMillis();
+            long now = System.currentTimeMillis();
+            return expirationDate < now || (!legacy && expirationDate > now + expirateIn);
+        }
+
+        /**
+         * @return true if the token expires within half its lifetime or is a legacy token, and should be replaced.
+         */
+        public boolean isExpiring(){
+            return isExpired() || legacy || expirationDate - System.currentTimeMillis() < expirateIn / 2;
+        }
+
+        /**
+         * @return true if the token is in the older PBE encrypted format.
+         */
+        public boolean isLegacy(){
+            return legacy;
+        }
+
+        public boolean isRevoked(){
+            return AuthTokenUtils.isRevoked(this);
         }
     }
 
-    private static Map<String,StandardPBEStringEncryptor> encryptors = new HashMap<String,StandardPBEStringEncryptor>();
+    // ids of revoked tokens to their expiration, an entry is only dropped once its token expired. Signed tokens expire
+    // within expirateIn, legacy tokens never do but are replaced and revoked once per user at their next sign in.
+    // Revocations are kept in memory, they do not survive a restart and are not shared between servers.
+    private static final ConcurrentMap<UUID,Long> revoked = new ConcurrentHashMap<UUID, Long>();
+    private static final int MIN_PRUNE_SIZE = 1024;
+    private static final AtomicInteger nextPrune = new AtomicInteger(MIN_PRUNE_SIZE);
+
+    /**
+     * Revoke a token so it is rejected from now on even though its signature is still valid. Revocations are only
+     * known to this process until it restarts.
+     * @param key key the token was created with.
+     * @param token token to be revoked.
+     */
+    public static void revoke(String key, String token){
+        if(token == null) return;
+        try {
+            AuthToken authToken = new AuthToken(key, token);
+            if(!authToken.isExpired()){
+                revoked.put(authToken.id, authToken.expirationDate);
+                pruneRevoked();
+            }
+        } catch (AuthenticationException e) {
+            logger.warning("Ignoring revocation of invalid token: " + e.getMessage());
+        }
+    }
+
+    public static boolean isRevoked(AuthToken token){
+        return token.id != null && revoked.containsKey(token.id);
+    }
+
+    // drops revocations of expired tokens whenever the list doubled since the last sweep, so sweeps stay amortized O(1)
+    private static void pruneRevoked(){
+        int threshold = nextPrune.get();
+        if(revoked.size() < threshold || !nextPrune.compareAndSet(threshold, Integer.MAX_VALUE)) return;
+        long now = System.currentTimeMillis();
+        for(Iterator<Map.Entry<UUID,Long>> i = revoked.entrySet().iterator();i.hasNext();){
+            if(i.next().getValue() < now) i.remove();
+        }
+        nextPrune.set(Math.max(MIN_PRUNE_SIZE, revoked.size() * 2));
+    }
+
+    static int revokedCount(){
+        return revoked.size();
+    }
+
+    private static final class MacHolder {
+        private final String key;
+        private final int keyId;
+        private final Mac mac;
+
+        private MacHolder(String key){
+            this.key = key;
+            try {
+                byte[] keyBytes = key.getBytes("UTF-8");
+                this.mac = Mac.getInstance(MAC_ALGORITHM);
+                this.mac.init(new SecretKeySpec(keyBytes, MAC_ALGORITHM));
+                this.keyId = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(keyBytes)).getInt();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to create " + MAC_ALGORITHM, e);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException("Unable to create " + MAC_ALGORITHM, e);
+            }
+        }
+    }
+
+    private static final ThreadLocal<MacHolder> macs = new ThreadLocal<MacHolder>();
+    private static MacHolder getMacHolder(String key){
+        MacHolder holder = macs.get();
+        if(holder == null || !holder.key.equals(key)){
+            holder = new MacHolder(key);
+            macs.set(holder);
+        }
+        return holder;
+    }
+
+    private static Mac getMac(String key){
+        return getMacHolder(key).mac;
+    }
+
+    private static int keyId(String key){
+        return getMacHolder(key).keyId;
+    }
+
+    private static ConcurrentMap<String,StandardPBEStringEncryptor> encryptors = new ConcurrentHashMap<String,StandardPBEStringEncryptor>();
     private static StandardPBEStringEncryptor getEncryptor(String key){
-        StandardPBEStringEncryptor encryptor;
-        if(encryptors.containsKey(key)) encryptor = encryptors.get(key);
-        else {
+        StandardPBEStringEncryptor encryptor = encryptors.get(key);
+        if(encryptor == null) {
             encryptor = new StandardPBEStringEncryptor();
             encryptor.setPassword(key);
+            StandardPBEStringEncryptor existing = encryptors.putIfAbsent(key, encryptor);
+            if(existing != null) encryptor = existing;
         }
         return encryptor;
     }
 
-    private static String encrypt(String string, String key){
-        StandardPBEStringEncryptor encryptor = getEncryptor(key);
-        String encrypted = encryptor.encrypt(string);
-        return Base64.encode(encrypted);
-    }
-
     private static String decrypt(String string, String key){
         StandardPBEStringEncryptor encryptor = getEncryptor(key);
         String decoded = Base64.decode(string);
@@ -94,6 +274,10 @@ public class AuthTokenUtils {
     }
 
     public static class AuthenticationException extends Exception{
+        public AuthenticationException(String message){
+            super(message);
+        }
+
         public AuthenticationException(String message, Exception e){
             super(message,e);
         }
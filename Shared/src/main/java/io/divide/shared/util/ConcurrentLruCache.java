@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread safe LRU cache. Entries are spread over a number of independently locked segments so concurrent
+ * readers of different keys do not contend on a single lock. Each segment evicts its least recently used entry once
+ * it grows past its share of the maximum size, and entries older than the time to live are dropped on access. A cache
+ * created with a {@link Weigher} additionally evicts until each segment is within its share of the maximum weight.
+ * @param <K> key type.
+ * @param <V> value type.
+ */
+public class ConcurrentLruCache<K,V> {
+
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * Weight of a cached value, for instance its approximate size in bytes.
+     */
+    public interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    /**
+     * Told about every entry dropped because the cache was full or the entry expired, not about remove() or clear().
+     * Called while the entry's segment is locked, so it must not call back into the cache.
+     */
+    public interface EvictionListener<K,V> {
+        void onEviction(K key, V value);
+    }
+
+    private final Segment<K,V>[] segments;
+    private final long ttlNanos;
+    private final Weigher<? super V> weigher;
+    private final EvictionListener<? super K,? super V> listener;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ConcurrentLruCache(int maxSize){
+        this(maxSize, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public ConcurrentLruCache(int maxSize, long ttl, TimeUnit unit){
+        this(maxSize, ttl, unit, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maxSize maximum number of entries held by this cache.
+     * @param ttl time an entry stays valid after it was written, 0 or less to never expire.
+     * @param unit unit of ttl.
+     * @param concurrencyLevel number of segments, rounded up to a power of two.
+     */
+    public ConcurrentLruCache(int maxSize, long ttl, TimeUnit unit, int concurrencyLevel){
+        this(maxSize, 0, null, ttl, unit, concurrencyLevel);
+    }
+
+    /**
+     * @param maxSize maximum number of entries held by this cache.
+     * @param maxWeight maximum total weight of the cached values, ignored without a weigher.
+     * @param weigher weight of each value, null to only bound the number of entries.
+     * @param ttl time an entry stays valid after it was written, 0 or less to never expire.
+     * @param unit unit of ttl.
+     * @param concurrencyLevel number of segments, rounded up to a power of two.
+     */
+    public ConcurrentLruCache(int maxSize, long maxWeight, Weigher<? super V> weigher, long ttl, TimeUnit unit, int concurrencyLevel){
+        this(maxSize, maxWeight, weigher, ttl, unit, concurrencyLevel, null);
+    }
+
+    /**
+     * @param listener told about evicted and expired entries, may be null.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLruCache(int maxSize, long maxWeight, Weigher<? super V> weigher, long ttl, TimeUnit unit, int concurrencyLevel,
+                              EvictionListener<? super K,? super V> listener){
+        if(maxSize < 1) throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        if(weigher != null && maxWeight < 1) throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+
+        int count = 1;
+        while (count < concurrencyLevel && count < maxSize) count <<= 1;
+
+        int perSegment = (maxSize + count - 1) / count;
+        long weightPerSegment = (weigher == null) ? Long.MAX_VALUE : Math.max(1, maxWeight / count);
+        this.segments = new Segment[count];
+        for(int x=0;x<count;x++){
+            segments[x] = new Segment<K,V>(perSegment,weightPerSegment,evictions,listener);
+        }
+        this.ttlNanos = (ttl > 0) ? unit.toNanos(ttl) : 0;
+        this.weigher = weigher;
+        this.listener = listener;
+    }
+
+    /**
+     * @return cached value for key, or null if absent or expired.
+     */
+    public V get(K key){
+        Segment<K,V> segment = segmentFor(key);
+        synchronized (segment){
+            Entry<V> entry = segment.get(key);
+            if(entry != null && isExpired(entry)){
+                segment.delete(key);
+                if(listener != null) listener.onEviction(key, entry.value);
+                entry = null;
+            }
+            if(entry == null){
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value){
+        if(value == null) throw new NullPointerException("Cached value can not be null");
+        long weight = (weigher == null) ? 0 : weigher.weigh(value);
+        Segment<K,V> segment = segmentFor(key);
+        synchronized (segment){
+            segment.add(key, new Entry<V>(value, System.nanoTime(), weight));
+        }
+    }
+
+    /**
+     * @return the value previously cached for key, or null.
+     */
+    public V remove(K key){
+        Segment<K,V> segment = segmentFor(key);
+        synchronized (segment){
+            Entry<V> entry = segment.delete(key);
+            return (entry == null) ? null : entry.value;
+        }
+    }
+
+    public void clear(){
+        for(Segment<K,V> segment : segments){
+            synchronized (segment){
+                segment.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    public int size(){
+        int size = 0;
+        for(Segment<K,V> segment : segments){
+            synchronized (segment){
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return total weight of the cached values, 0 for a cache without a weigher.
+     */
+    public long weight(){
+        long weight = 0;
+        for(Segment<K,V> segment : segments){
+            synchronized (segment){
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    public long hitCount(){
+        return hits.get();
+    }
+
+    public long missCount(){
+        return misses.get();
+    }
+
+    public long evictionCount(){
+        return evictions.get();
+    }
+
+    public double hitRatio(){
+        long hit = hits.get();
+        long total = hit + misses.get();
+        return (total == 0) ? 0 : (double) hit / total;
+    }
+
+    private boolean isExpired(Entry<V> entry){
+        return ttlNanos > 0 && (System.nanoTime() - entry.written) > ttlNanos;
+    }
+
+    private Segment<K,V> segmentFor(K key){
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentLruCache{" +
+                "size=" + size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long written;
+        final long weight;
+
+        Entry(V value, long written, long weight){
+            this.value = value;
+            this.written = written;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Segment<K,V> extends LinkedHashMap<K,Entry<V>> {
+        private final int capacity;
+        private final long maxWeight;
+        private final AtomicLong evictions;
+        private final EvictionListener<? super K,? super V> listener;
+        private long weight;
+
+        Segment(int capacity, long maxWeight, AtomicLong evictions, EvictionListener<? super K,? super V> listener){
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.maxWeight = maxWeight;
+            this.evictions = evictions;
+            this.listener = listener;
+        }
+
+        private void evicted(Map.Entry<K,Entry<V>> eldest){
+            weight -= eldest.getValue().weight;
+            evictions.incrementAndGet();
+            if(listener != null) listener.onEviction(eldest.getKey(), eldest.getValue().value);
+        }
+
+        void add(K key, Entry<V> entry){
+            Entry<V> previous = put(key, entry);
+            weight += entry.weight - ((previous == null) ? 0 : previous.weight);
+
+            // the newest entry is kept even if it alone is heavier than the segment
+            Iterator<Map.Entry<K,Entry<V>>> eldest = entrySet().iterator();
+            while (weight > maxWeight && size() > 1){
+                Map.Entry<K,Entry<V>> next = eldest.next();
+                eldest.remove();
+                evicted(next);
+            }
+        }
+
+        Entry<V> delete(K key){
+            Entry<V> entry = remove(key);
+            if(entry != null) weight -= entry.weight;
+            return entry;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if(size() > capacity){
+                evicted(eldest);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BlockSequenceTest {
+
+    @Test
+    public void testBlocks() throws Exception {
+        CountingAllocator allocator = new CountingAllocator();
+        BlockSequence sequence = new BlockSequence(allocator, "test", 3, 10);
+
+        for(long x=10;x<17;x++){
+            assertEquals(x, sequence.next());
+        }
+        assertEquals(3, allocator.allocations.get());
+    }
+
+    @Test
+    public void testConcurrentValuesAreUnique() throws Exception {
+        final CountingAllocator allocator = new CountingAllocator();
+        final BlockSequence sequence = new BlockSequence(allocator, "test", 7, 1);
+        final ConcurrentHashMap<Long,Boolean> seen = new ConcurrentHashMap<Long, Boolean>();
+        final AtomicInteger duplicates = new AtomicInteger();
+        final int threads = 8;
+        final int perThread = 1000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for(int t=0;t<threads;t++){
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        start.await();
+                        for(int x=0;x<perThread;x++){
+                            if(seen.put(sequence.next(), Boolean.TRUE) != null) duplicates.incrementAndGet();
+                        }
+                    } catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+
+        assertEquals(0, duplicates.get());
+        assertEquals(threads * perThread, seen.size());
+        // every value of every reserved block but the last was handed out
+        assertEquals((threads * perThread + 6) / 7, allocator.allocations.get());
+    }
+
+    private static class CountingAllocator implements SequenceAllocator {
+        final AtomicInteger allocations = new AtomicInteger();
+        private long next = -1;
+
+        @Override
+        public synchronized long allocate(String sequence, int size, long initialValue) {
+            allocations.incrementAndGet();
+            if(next < 0) next = initialValue;
+            long first = next;
+            next += size;
+            return first;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.server;
+
+import org.apache.http.HttpStatus;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static io.divide.shared.server.DAO.DAOException;
+import static org.junit.Assert.*;
+
+public class ExecutorAsyncDAOTest {
+
+    @Test
+    public void testRejectsWhenSaturated() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorAsyncDAO async = new ExecutorAsyncDAO(countingDao(release), 1, 1);
+
+        Future<Integer> running = async.countAsync("a");
+        Future<Integer> queued = async.countAsync("b");
+        try{
+            async.countAsync("c");
+            fail("expected the call to be rejected");
+        } catch (DAOException e){
+            assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+        }
+
+        release.countDown();
+        assertEquals(1, running.get().intValue());
+        assertEquals(1, queued.get().intValue());
+        async.shutdown();
+    }
+
+    @Test
+    public void testFailureCompletesFuture() throws Exception {
+        ExecutorAsyncDAO async = new ExecutorAsyncDAO(countingDao(null), 1, 1);
+        try{
+            async.queryAsync(null).get();
+            fail("expected the call to fail");
+        } catch (ExecutionException e){
+            assertTrue(e.getCause() instanceof DAOException);
+        }
+        async.shutdown();
+    }
+
+    // counts 1 for every type once release opens, fails every other call
+    private static DAO countingDao(final CountDownLatch release){
+        return (DAO) Proxy.newProxyInstance(DAO.class.getClassLoader(), new Class[]{DAO.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if(!method.getName().equals("count")) throw new DAOException(HttpStatus.SC_BAD_REQUEST, method.getName());
+                release.await();
+                return 1;
+            }
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package io.divide.shared.transitory.query;
+
+import io.divide.shared.transitory.TransientObject;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class AggregationTest extends TestCase {
+
+    private final List<B> objects = Arrays.asList(new B("x", 5), new B("x", "7"), new B("y", 10), new B("y", null));
+
+    public void testFold() throws Exception {
+        Query count = new QueryBuilder().select(SelectOperation.COUNT).from(B.class).build();
+        assertEquals(4, ((Count) fold(count).get(0)).getCount());
+
+        Query sum = new QueryBuilder().select(SelectOperation.SUM, "amount").from(B.class).build();
+        assertEquals(22d, ((Aggregate) fold(sum).get(0)).getValue());
+
+        Query avg = new QueryBuilder().select(SelectOperation.AVG, "amount").from(B.class).build();
+        assertEquals(22d / 3, (Double) ((Aggregate) fold(avg).get(0)).getValue(), 0.0001);
+
+        Query max = new QueryBuilder().select(SelectOperation.MAX, "amount").from(B.class).build();
+        assertEquals(10, ((Aggregate) fold(max).get(0)).getValue());
+    }
+
+    public void testFoldGroups() throws Exception {
+        Query q = new QueryBuilder().select(SelectOperation.SUM, "amount").from(B.class).groupBy("cat").build();
+        List<TransientObject> results = fold(q);
+        assertEquals(2, results.size());
+        assertEquals("x", ((Aggregate) results.get(0)).getGroup());
+        assertEquals(12d, ((Aggregate) results.get(0)).getValue());
+        assertEquals(10d, ((Aggregate) results.get(1)).getValue());
+
+        q = new QueryBuilder().select(SelectOperation.COUNT).from(B.class).groupBy("cat").limit(1).build();
+        results = fold(q);
+        assertEquals(1, results.size());
+        assertEquals(2, ((Count) results.get(0)).getCount());
+    }
+
+    public void testEmpty() throws Exception {
+        Query q = new QueryBuilder().select(SelectOperation.SUM, "amount").from(B.class).build();
+        assertEquals(0d, ((Aggregate) Aggregation.fold(q, Collections.<B>emptyList().iterator()).get(0)).getValue());
+
+        q = new QueryBuilder().select(SelectOperation.SUM, "amount").from(B.class).groupBy("cat").build();
+        assertTrue(Aggregation.fold(q, Collections.<B>emptyList().iterator()).isEmpty());
+    }
+
+    public void testRequiresField() throws Exception {
+        Query q = new QueryBuilder().select(SelectOperation.SUM).from(B.class).build();
+        try{
+            Aggregation.check(q);
+            fail();
+        } catch (IllegalArgumentException e){
+            // expected
+        }
+    }
+
+    private List<TransientObject> fold(Query q){
+        return Aggregation.fold(q, objects.iterator());
+    }
+
+    private static class B extends TransientObject{
+        private B(String cat, Object amount){
+            put("cat", cat);
+            if(amount != null) put("amount", amount);
+        }
+    };
+}
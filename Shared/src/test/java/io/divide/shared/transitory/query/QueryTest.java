@@ -1,8 +1,13 @@
 package io.divide.shared.transitory.query;
 
+import com.google.gson.Gson;
+import io.divide.shared.server.DAO.DAOException;
 import io.divide.shared.transitory.TransientObject;
 import junit.framework.TestCase;
 
+import java.util.Arrays;
+import java.util.Date;
+
 public class QueryTest extends TestCase {
 
     public void testSafeTable() throws Exception {
@@ -17,5 +22,121 @@ public class QueryTest extends TestCase {
         assertEquals(A.class.getName(),Query.reverseTable(Query.safeTable(A.class)));
     }
 
+    public void testOrderBy() throws Exception {
+        Query q = new QueryBuilder().select().from(A.class)
+                .where("key", OPERAND.EQ, "1")
+                .orderBy(TransientObject.MODIFIED_DATE_KEY, OrderBy.Direction.DESC)
+                .orderBy("score", OrderBy.Direction.ASC)
+                .limit(20)
+                .build();
+
+        assertEquals(2, q.getOrderBy().size());
+        assertEquals("meta_data.modified_date_key", q.getOrderBy().get(0).getField());
+        assertFalse(q.getOrderBy().get(0).isAscending());
+        assertEquals(Integer.valueOf(20), q.getLimit());
+        assertTrue(q.getSQL(), q.getSQL().endsWith(" ORDER BY meta_data.modified_date_key DESC, user_data.score ASC LIMIT 20"));
+    }
+
+    public void testTypedClauses() throws Exception {
+        Date now = new Date();
+        Query q = new QueryBuilder().select().from(A.class)
+                .where("count", OPERAND.GREATER_THAN, 10)
+                .and("price", OPERAND.LESS_THAN, 2.5)
+                .and("active", OPERAND.EQ, true)
+                .and(TransientObject.MODIFIED_DATE_KEY, OPERAND.GREATER_THAN, now)
+                .and("name", OPERAND.EQ, "10")
+                .build();
+
+        Gson gson = new Gson();
+        Query copy = gson.fromJson(gson.toJson(q), Query.class);
+        assertEquals(10L, copy.getWhere().get(0).getValue());
+        assertEquals(2.5, copy.getWhere().get(1).getValue());
+        assertEquals(Boolean.TRUE, copy.getWhere().get(2).getValue());
+        assertEquals(Clause.ValueType.TIMESTAMP, copy.getWhere().get(3).getType());
+        assertEquals(now.getTime(), copy.getWhere().get(3).getValue());
+        assertEquals("10", copy.getWhere().get(4).getValue());
+        assertEquals("user_data.count > 10", copy.getWhere().get(0).getCoded());
+        assertEquals("user_data.name == '10'", copy.getWhere().get(4).getCoded());
+    }
+
+    public void testSetAndRangeClauses() throws Exception {
+        Query q = new QueryBuilder().select().from(A.class)
+                .where("name", OPERAND.IN, Arrays.asList("a", "b"))
+                .and("count", OPERAND.BETWEEN, Arrays.asList(1, 5))
+                .and("name", OPERAND.NOT_EQ, "c")
+                .build();
+
+        Gson gson = new Gson();
+        Query copy = gson.fromJson(gson.toJson(q), Query.class);
+        assertEquals(Arrays.<Object>asList("a", "b"), copy.getWhere().get(0).getValues());
+        assertEquals(Arrays.<Object>asList(1L, 5L), copy.getWhere().get(1).getValues());
+        assertEquals("user_data.name IN ['a', 'b']", copy.getWhere().get(0).getCoded());
+        assertEquals("user_data.count BETWEEN 1 AND 5", copy.getWhere().get(1).getCoded());
+        assertEquals("user_data.name != 'c'", copy.getWhere().get(2).getCoded());
+
+        try{
+            new QueryBuilder().select().from(A.class).where("count", OPERAND.BETWEEN, Arrays.asList(1, 2, 3));
+            fail("BETWEEN takes two bounds");
+        } catch (IllegalArgumentException expected){}
+        try{
+            new QueryBuilder().select().from(A.class).where("count", OPERAND.IN, Arrays.asList(1, "2"));
+            fail("IN values have one type");
+        } catch (IllegalArgumentException expected){}
+    }
+
+    public void testInvalidTypedValue() throws Exception {
+        Query q = new QueryBuilder().select().from(A.class)
+                .where("count", OPERAND.GREATER_THAN, 10)
+                .and("price", OPERAND.IN, Arrays.asList(1.5, 2.5))
+                .build();
+
+        Gson gson = new Gson();
+        String json = gson.toJson(q);
+        gson.fromJson(json, Query.class).validate();
+
+        Query badLong = gson.fromJson(json.replace("\"10\"", "\"ten\""), Query.class);
+        try{
+            badLong.validate();
+            fail("LONG value is not a number");
+        } catch (DAOException e){
+            assertEquals(400, e.getStatusCode());
+        }
+        try{
+            badLong.getWhere().get(0).getValue();
+            fail("LONG value is not a number");
+        } catch (DAOException e){
+            assertEquals(400, e.getStatusCode());
+        }
+
+        Query badDouble = gson.fromJson(json.replace("\"2.5\"", "\"2,5\""), Query.class);
+        try{
+            badDouble.validate();
+            fail("DOUBLE value is not a number");
+        } catch (DAOException e){
+            assertEquals(400, e.getStatusCode());
+        }
+    }
+
+    public void testEquality() throws Exception {
+        Query q = new QueryBuilder().select().from(A.class)
+                .where("name", OPERAND.IN, Arrays.asList("a", "b"))
+                .and("count", OPERAND.GREATER_THAN, 10)
+                .orderBy("count", OrderBy.Direction.DESC)
+                .limit(5)
+                .build();
+        Gson gson = new Gson();
+        Query copy = gson.fromJson(gson.toJson(q), Query.class);
+        assertEquals(q, copy);
+        assertEquals(q.hashCode(), copy.hashCode());
+
+        Query other = new QueryBuilder().select().from(A.class)
+                .where("name", OPERAND.IN, Arrays.asList("a", "b"))
+                .and("count", OPERAND.GREATER_THAN, "10")
+                .orderBy("count", OrderBy.Direction.DESC)
+                .limit(5)
+                .build();
+        assertFalse(q.equals(other));
+    }
+
     private static class A extends TransientObject{};
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package io.divide.shared.transitory.query;
+
+import io.divide.shared.transitory.TransientObject;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SortingTest extends TestCase {
+
+    public void testTopK() throws Exception {
+        List<B> objects = new ArrayList<B>();
+        for(int x : new int[]{5, 3, 9, 1, 7, 3}){
+            objects.add(new B(x));
+        }
+        List<OrderBy> desc = new QueryBuilder().select().from(B.class)
+                .orderBy("score", OrderBy.Direction.DESC).build().getOrderBy();
+
+        assertEquals(Arrays.asList(9, 7, 5), scores(Sorting.sort(objects, desc, 3)));
+        assertEquals(Arrays.asList(9, 7, 5, 3, 3, 1), scores(Sorting.sort(objects, desc, null)));
+        assertTrue(Sorting.sort(objects, desc, 0).isEmpty());
+
+        List<OrderBy> asc = new QueryBuilder().select().from(B.class)
+                .orderBy("score", OrderBy.Direction.ASC).build().getOrderBy();
+        List<B> lowest = Sorting.sort(objects, asc, 2);
+        assertEquals(Arrays.asList(1, 3), scores(lowest));
+        assertSame("ties keep arrival order", objects.get(1), lowest.get(1));
+    }
+
+    public void testCompareValues() throws Exception {
+        assertTrue(Sorting.compareValues(null, 1) < 0);
+        assertTrue(Sorting.compareValues(2, 10.5) < 0);
+        assertTrue(Sorting.compareValues("b", "a") > 0);
+        assertEquals(0, Sorting.compareValues(3L, 3));
+        assertTrue(Sorting.compareValues("7", 10) < 0);
+    }
+
+    private static List<Integer> scores(List<B> objects){
+        List<Integer> scores = new ArrayList<Integer>();
+        for(B b : objects) scores.add(b.get(Integer.class, "score"));
+        return scores;
+    }
+
+    private static class B extends TransientObject{
+        private B(int score){
+            put("score", score);
+        }
+    };
+}
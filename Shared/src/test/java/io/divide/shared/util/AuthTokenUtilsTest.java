@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.util;
+
+import io.divide.shared.transitory.Credentials;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AuthTokenUtilsTest {
+
+    private static final String KEY = "someKey";
+
+    @Test
+    public void testNewToken() throws Exception {
+        long before = System.currentTimeMillis();
+        String token = AuthTokenUtils.getNewToken(KEY, getUser(5));
+        AuthTokenUtils.AuthToken authToken = new AuthTokenUtils.AuthToken(KEY, token);
+
+        assertEquals("5", authToken.userId);
+        assertTrue(authToken.expirationDate >= before + AuthTokenUtils.expirateIn);
+        assertTrue(authToken.expirationDate <= System.currentTimeMillis() + AuthTokenUtils.expirateIn);
+        assertFalse(authToken.isExpired());
+        assertFalse(authToken.isExpiring());
+        assertFalse(authToken.isRevoked());
+        assertNotEquals(token, AuthTokenUtils.getNewToken(KEY, getUser(5)));
+    }
+
+    @Test(expected = AuthTokenUtils.AuthenticationException.class)
+    public void testWrongKey() throws Exception {
+        String token = AuthTokenUtils.getNewToken(KEY, getUser(5));
+        new AuthTokenUtils.AuthToken("otherKey", token);
+    }
+
+    @Test(expected = AuthTokenUtils.AuthenticationException.class)
+    public void testTampered() throws Exception {
+        String token = AuthTokenUtils.getNewToken(KEY, getUser(5));
+        char[] chars = token.toCharArray();
+        int x = AuthTokenUtils.TOKEN_PREFIX.length() + 3;
+        chars[x] = (chars[x] == 'A') ? 'B' : 'A';
+        new AuthTokenUtils.AuthToken(KEY, new String(chars));
+    }
+
+    @Test
+    public void testRevoke() throws Exception {
+        String token = AuthTokenUtils.getNewToken(KEY, getUser(6));
+        String other = AuthTokenUtils.getNewToken(KEY, getUser(6));
+        AuthTokenUtils.revoke(KEY, token);
+
+        assertTrue(new AuthTokenUtils.AuthToken(KEY, token).isRevoked());
+        assertFalse(new AuthTokenUtils.AuthToken(KEY, other).isRevoked());
+    }
+
+    @Test
+    public void testLegacyToken() throws Exception {
+        StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+        encryptor.setPassword(KEY);
+        UUID id = UUID.randomUUID();
+        long expiration = System.currentTimeMillis() + 60000;
+        String token = Base64.encode(encryptor.encrypt(id + "|7|" + expiration));
+
+        AuthTokenUtils.AuthToken authToken = new AuthTokenUtils.AuthToken(KEY, token);
+        assertEquals("7", authToken.userId);
+        assertEquals(id, authToken.id);
+        assertFalse(authToken.isExpired());
+        assertTrue(authToken.isExpiring());
+    }
+
+    @Test
+    public void testBaselineToken() throws Exception {
+        // as issued before tokens expired
+        StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+        encryptor.setPassword(KEY);
+        UUID id = UUID.randomUUID();
+        String token = Base64.encode(encryptor.encrypt(id + "|7|" + Long.MAX_VALUE));
+
+        AuthTokenUtils.AuthToken authToken = new AuthTokenUtils.AuthToken(KEY, token);
+        assertEquals("7", authToken.userId);
+        assertTrue(authToken.isLegacy());
+        assertFalse(authToken.isExpired());
+        assertTrue(authToken.isExpiring());
+
+        AuthTokenUtils.revoke(KEY, token);
+        assertTrue(new AuthTokenUtils.AuthToken(KEY, token).isRevoked());
+    }
+
+    @Test
+    public void testSignedTokenOutlivingLifetimeIsExpired() throws Exception {
+        String token = AuthTokenUtils.getNewToken(KEY, getUser(5));
+        AuthTokenUtils.AuthToken authToken = new AuthTokenUtils.AuthToken(KEY, token);
+        authToken.expirationDate = Long.MAX_VALUE;
+        assertTrue(authToken.isExpired());
+    }
+
+    @Test
+    public void testRevocationsAreNotForgotten() throws Exception {
+        String token = AuthTokenUtils.getNewToken(KEY, getUser(8));
+        AuthTokenUtils.revoke(KEY, token);
+        // far more revocations than ever triggered a sweep, none of them expired
+        for(int x=0;x<5000;x++){
+            AuthTokenUtils.revoke(KEY, AuthTokenUtils.getNewToken(KEY, getUser(9)));
+        }
+        assertTrue(AuthTokenUtils.revokedCount() > 5000);
+        assertTrue(new AuthTokenUtils.AuthToken(KEY, token).isRevoked());
+    }
+
+    private static Credentials getUser(int ownerId){
+        return new OwnedCredentials(ownerId);
+    }
+
+    private static class OwnedCredentials extends Credentials {
+        OwnedCredentials(int ownerId){
+            super("username","email","password");
+            setOwnerId(ownerId);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Divide.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.divide.shared.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentLruCacheTest {
+
+    @Test
+    public void testGetPut() throws Exception {
+        ConcurrentLruCache<String,String> cache = new ConcurrentLruCache<String, String>(10);
+        assertNull(cache.get("key1"));
+        cache.put("key1","value1");
+        assertEquals("value1", cache.get("key1"));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        assertEquals("value1", cache.remove("key1"));
+        assertNull(cache.get("key1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ConcurrentLruCache<Integer,Integer> cache = new ConcurrentLruCache<Integer, Integer>(2, 0, TimeUnit.SECONDS, 1);
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.get(1); // 2 is now least recently used
+        cache.put(3, 3);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertNull(cache.get(2));
+        assertEquals(Integer.valueOf(1), cache.get(1));
+        assertEquals(Integer.valueOf(3), cache.get(3));
+    }
+
+    @Test
+    public void testWeightEviction() throws Exception {
+        ConcurrentLruCache<Integer,String> cache = new ConcurrentLruCache<Integer, String>(10, 10,
+                new ConcurrentLruCache.Weigher<String>() {
+                    @Override
+                    public long weigh(String value) {
+                        return value.length();
+                    }
+                }, 0, TimeUnit.SECONDS, 1);
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        assertEquals(8, cache.weight());
+        cache.put(3, "cccccc"); // evicts 1
+
+        assertEquals(2, cache.size());
+        assertEquals(10, cache.weight());
+        assertEquals(1, cache.evictionCount());
+        assertNull(cache.get(1));
+
+        cache.put(3, "cc");
+        assertEquals(6, cache.weight());
+        cache.remove(3);
+        assertEquals(4, cache.weight());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        ConcurrentLruCache<String,String> cache = new ConcurrentLruCache<String, String>(10, 1, TimeUnit.MILLISECONDS);
+        cache.put("key1","value1");
+        Thread.sleep(5);
+        assertNull(cache.get("key1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictionListener() throws Exception {
+        final List<Integer> evicted = new ArrayList<Integer>();
+        ConcurrentLruCache<Integer,Integer> cache = new ConcurrentLruCache<Integer, Integer>(2, 0, null, 1, TimeUnit.MILLISECONDS, 1,
+                new ConcurrentLruCache.EvictionListener<Integer, Integer>() {
+                    @Override
+                    public void onEviction(Integer key, Integer value) {
+                        evicted.add(key);
+                    }
+                });
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.put(3, 3); // evicts 1
+        cache.remove(2);
+        assertEquals(1, evicted.size());
+        assertEquals(Integer.valueOf(1), evicted.get(0));
+
+        Thread.sleep(5);
+        assertNull(cache.get(3));
+        assertEquals(2, evicted.size());
+        assertEquals(Integer.valueOf(3), evicted.get(1));
+    }
+
+}